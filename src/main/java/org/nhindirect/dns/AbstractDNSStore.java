@@ -6,6 +6,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.nhindirect.policy.PolicyExpression;
 import org.nhindirect.policy.PolicyFilter;
@@ -19,6 +26,7 @@ import org.xbill.DNS.Opcode;
 import org.xbill.DNS.RRset;
 import org.xbill.DNS.Rcode;
 import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
 import org.xbill.DNS.Section;
 import org.xbill.DNS.Type;
 
@@ -33,11 +41,21 @@ public abstract class AbstractDNSStore implements DNSStore
 	protected static final String DEFAULT_JCE_PROVIDER_STRING = "BC";
 	protected static final String JCE_PROVIDER_STRING_SYS_PARAM = "org.nhindirect.dns.JCEProviderName";	
 	
+	/**
+	 * @deprecated SOA records are held in an immutable {@link DNSSOAIndex} by the stores in this package.  This map is no longer populated.
+	 */
+	@Deprecated
 	protected Map<String, Record> soaRecords = null;
 	
 	protected PolicyFilter polFilter = null;
 	protected PolicyExpression polExpression = null;
 	
+	protected DNSNegativeCache negativeCache = null;
+	
+	protected Executor lookupExecutor = null;
+	
+	private final AtomicLong rejectedLookupCount = new AtomicLong();
+	
 	static
 	{
 		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
@@ -72,6 +90,125 @@ public abstract class AbstractDNSStore implements DNSStore
 			System.setProperty(JCE_PROVIDER_STRING_SYS_PARAM, name);
 	}
 	
+	/**
+	 * Sets the executor that runs asynchronous lookups.  The lookup methods of a store block while they call the backing medium, so 
+	 * {@link #getAsync(Message)} runs them on this executor to free up the caller's thread.  Requests answered from the negative cache
+	 * complete on the calling thread.  The caller's request permits are released as soon as the lookup is handed off, so the executor 
+	 * should have a bounded queue; lookups it rejects are answered with SERVFAIL.
+	 * @param lookupExecutor The executor that runs asynchronous lookups.  If null, asynchronous lookups are run on the calling thread.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setLookupExecutor(Executor lookupExecutor)
+	{
+		this.lookupExecutor = lookupExecutor;
+	}
+	
+	/**
+	 * Gets the number of asynchronous lookups that were answered with SERVFAIL because the lookup executor rejected them.
+	 * @return The number of rejected asynchronous lookups.
+	 * 
+	 * @since 8.2.0
+	 */
+	public long getRejectedLookupCount()
+	{
+		return rejectedLookupCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CompletionStage<Message> getAsync(Message request)
+	{
+		if (lookupExecutor == null || isNegativeCacheHit(request))
+			return DNSStore.super.getAsync(request);
+		
+		final CompletableFuture<Message> retVal = new CompletableFuture<Message>();
+		try
+		{
+			lookupExecutor.execute(() ->
+			{
+				try
+				{
+					retVal.complete(get(request));
+				}
+				catch (Throwable e)
+				{
+					retVal.completeExceptionally(e);
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the lookup executor is saturated... fail fast rather than let lookups pile up
+			rejectedLookupCount.incrementAndGet();
+			retVal.completeExceptionally(new DNSException(DNSError.newError(Rcode.SERVFAIL), "Lookup rejected: " + e.getMessage(), e));
+		}
+		
+		return retVal;
+	}
+	
+	/*
+	 * Checks if the negative cache can answer a request without calling the backing medium
+	 */
+	private boolean isNegativeCacheHit(Message request)
+	{
+		final Record question = (negativeCache == null) ? null : request.getQuestion();
+		return question != null && negativeCache.contains(question.getName(), question.getType());
+	}
+	
+	/**
+	 * Sets the maximum number of negative lookup results that are cached.  Lookups that find no records in a zone that the store has an SOA record 
+	 * for are cached for the zone's negative TTL as described in RFC 2308, so repeated queries for missing records do not reach the backing medium.  
+	 * Records added to the medium may not be seen until a cached negative result expires.
+	 * @param negativeCacheSize The maximum number of cached negative results.  0 disables the negative cache.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setNegativeCacheSize(int negativeCacheSize)
+	{
+		negativeCache = (negativeCacheSize > 0) ? new DNSNegativeCache(negativeCacheSize) : null;
+	}
+	
+	/**
+	 * Gets the negative cache.
+	 * @return The negative cache, or null if negative caching is disabled.
+	 * 
+	 * @since 8.2.0
+	 */
+	public DNSNegativeCache getNegativeCache()
+	{
+		return negativeCache;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isSupportedQuery(int opcode, int type, int dclass)
+	{
+		if (opcode != Opcode.QUERY || dclass != DClass.IN)
+			return false;
+		
+		switch (type)
+		{
+			case Type.A:
+			case Type.MX:
+			case Type.SOA:
+			case Type.SRV:
+			case Type.NS:
+			case Type.CNAME: 
+			case Type.TXT:
+			case Type.CAA:
+			case Type.CERT:
+			case Type.ANY:
+				return true;
+			default:
+				return false;
+		}
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -114,6 +251,7 @@ public abstract class AbstractDNSStore implements DNSStore
     	} catch(InvalidTypeException e) {
     	}
         
+    	// received queries are recorded by the responder's query log, so per request details are only logged for debugging
     	if (log.isDebugEnabled())
     	{
     		StringBuilder builder = new StringBuilder("Received Query Request:");
@@ -122,8 +260,16 @@ public abstract class AbstractDNSStore implements DNSStore
     		builder.append("\r\n\tDClass: " + queryRecord.getDClass());
     		log.debug(builder.toString());
     	}
-
-    	log.info("Process record for DNS request type " + (typeString == null ? type : typeString) + " and name " + name.toString());
+    	
+    	if (negativeCache != null)
+    	{
+    		final DNSNegativeCache.NegativeResult cached = negativeCache.get(name, type);
+    		if (cached != null)
+    		{
+    			log.debug("Negative result found in cache.");
+    			return createNegativeResponse(request, queryRecord, cached.getSOA(), cached.getRcode());
+    		}
+    	}
     	
     	Collection<Record> lookupRecords= null;
         switch (type)
@@ -139,7 +285,7 @@ public abstract class AbstractDNSStore implements DNSStore
         	{
         		try
         		{
-        			final RRset set = processGenericRecordRequest(name.toString(), type);
+        			final RRset set = processGenericRecordRequest(name, type);
         			
         			if (set != null)
         			{
@@ -166,22 +312,8 @@ public abstract class AbstractDNSStore implements DNSStore
         	}
         	case Type.ANY:
         	{
+        		lookupRecords = processANYRecordRequest(name.toString());
         		
-        		Collection<Record> genRecs = processGenericANYRecordRequest(name.toString());
-        		RRset certRecs = processCERTRecordRequest(name.toString());
-
-        		if (genRecs != null || certRecs != null)
-        		{
-        			lookupRecords = new ArrayList<Record>();
-        			if (genRecs != null)
-        				lookupRecords.addAll(genRecs);
-        			
-        			if (certRecs != null)
-        			{
-        				lookupRecords = certRecs.rrs();
-        			}
-        		}
- 
         		break;
         	}
         	default:
@@ -195,7 +327,7 @@ public abstract class AbstractDNSStore implements DNSStore
         if (lookupRecords == null || lookupRecords.size() == 0)
         {
         	log.debug("No records found.");
-        	return null;
+        	return processNoRecordsFound(request, queryRecord);
         }
         	
         final Message response = new Message(request.getHeader().getID());
@@ -212,7 +344,7 @@ public abstract class AbstractDNSStore implements DNSStore
     	// we are authoritative only
     	response.getHeader().setFlag(Flags.AA);
     	// look for an SOA record
-    	final Record soaRecord = checkForSoaRecord(name.toString());
+    	final Record soaRecord = checkForSoaRecord(name);
     	if (soaRecord != null)
     		response.addRecord(soaRecord, Section.AUTHORITY);		
 		
@@ -221,6 +353,162 @@ public abstract class AbstractDNSStore implements DNSStore
     	return response;
 	}
 	
+	/**
+	 * Creates the response to a request that found no records.  If the store has an SOA record for the zone that encloses the question name,
+	 * the response holds the SOA record in the authority section with the zone's negative TTL, and the result is added to the negative cache.
+	 * The response is NXDOMAIN only if {@link #isExistingName(Name, SOARecord)} proves the name does not exist, and NODATA otherwise.
+	 * @param request The DNS request.
+	 * @param queryRecord The request's question.
+	 * @return The negative response, or null if the store has no SOA record for the question name.
+	 * 
+	 * @since 8.2.0
+	 */
+	protected Message processNoRecordsFound(Message request, Record queryRecord)
+	{
+		final Record soaRecord = checkForSoaRecord(queryRecord.getName());
+		if (!(soaRecord instanceof SOARecord))
+			return null;
+		
+		final SOARecord soa = (SOARecord)soaRecord;
+		final int rcode = isExistingName(queryRecord.getName(), soa) ? Rcode.NOERROR : Rcode.NXDOMAIN;
+		if (negativeCache != null)
+			negativeCache.put(queryRecord.getName(), queryRecord.getType(), soa, rcode);
+		
+		return createNegativeResponse(request, queryRecord, DNSNegativeCache.withTTL(soa, DNSNegativeCache.getNegativeTTL(soa)), rcode);
+	}
+	
+	/**
+	 * Creates an authoritative negative response as described in RFC 2308.
+	 * @param request The DNS request.
+	 * @param queryRecord The request's question.
+	 * @param soa The SOA record placed in the authority section.
+	 * @param rcode The response code.  NOERROR makes the response NODATA, and NXDOMAIN states that the name does not exist.
+	 * @return The negative response.
+	 * 
+	 * @since 8.2.0
+	 */
+	protected Message createNegativeResponse(Message request, Record queryRecord, SOARecord soa, int rcode)
+	{
+        final Message response = new Message(request.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+    	if (request.getHeader().getFlag(Flags.RD))
+    		response.getHeader().setFlag(Flags.RD);
+    	response.getHeader().setFlag(Flags.AA);
+    	response.getHeader().setRcode(rcode);
+    	
+    	response.addRecord(queryRecord, Section.QUESTION);
+    	response.addRecord(soa, Section.AUTHORITY);
+    	
+    	return response;
+	}
+	
+	/**
+	 * Indicates if a name that has no records of the requested type may exist.  A negative response is NXDOMAIN only if this method 
+	 * returns false, and NODATA otherwise.  NXDOMAIN tells resolvers that the name and every name beneath it do not exist (RFC 8020), so 
+	 * it must only be returned when the store can prove it.  The default implementation can't tell which names hold records of other 
+	 * types without additional lookups against the backing medium, so it always returns true.
+	 * @param name The question name.
+	 * @param soa The SOA record of the zone that encloses the name.
+	 * @return False if the name is known not to exist, and true otherwise.
+	 * 
+	 * @since 8.2.0
+	 */
+	protected boolean isExistingName(Name name, SOARecord soa)
+	{
+		return true;
+	}
+	
+	/**
+	 * Processes DNS ANY requests by combining the generic records and CERT records of a name.  The two lookups are independent, so if a 
+	 * lookup executor is set the CERT lookup is run on the executor while the calling thread does the generic lookup.  If no executor 
+	 * thread has started the CERT lookup by the time the generic lookup is done, the calling thread runs it itself.  This keeps a saturated 
+	 * executor from deadlocking lookups that are themselves running on the executor.
+	 * @param name The record name.
+	 * @return The records of the name, or null if the name has no records.
+	 * @throws DNSException
+	 * 
+	 * @since 8.2.0
+	 */
+	protected Collection<Record> processANYRecordRequest(String name) throws DNSException
+	{
+		final Collection<Record> genRecs;
+		final RRset certRecs;
+		
+		if (lookupExecutor == null)
+		{
+			genRecs = processGenericANYRecordRequest(name);
+			certRecs = processCERTRecordRequest(name);
+		}
+		else
+		{
+			final AtomicBoolean certLookupClaimed = new AtomicBoolean();
+			final CompletableFuture<RRset> certLookupResult = new CompletableFuture<RRset>();
+			final Runnable certLookup = () ->
+			{
+				if (!certLookupClaimed.compareAndSet(false, true))
+					return;
+				
+				try
+				{
+					certLookupResult.complete(processCERTRecordRequest(name));
+				}
+				catch (Throwable e)
+				{
+					certLookupResult.completeExceptionally(e);
+				}
+			};
+			
+			try
+			{
+				lookupExecutor.execute(certLookup);
+			}
+			catch (RejectedExecutionException e)
+			{
+				/* no-op... the lookup is run below on this thread */
+			}
+			
+			genRecs = processGenericANYRecordRequest(name);
+			
+			certLookup.run();
+			certRecs = getLookupResult(certLookupResult);
+		}
+		
+		if (genRecs == null && certRecs == null)
+			return null;
+		
+		final Collection<Record> retVal = new ArrayList<Record>();
+		if (genRecs != null)
+			retVal.addAll(genRecs);
+		
+		if (certRecs != null)
+			retVal.addAll(certRecs.rrs());
+		
+		return retVal;
+	}
+	
+	/*
+	 * Waits for a lookup running on another thread and rethrows its failure
+	 */
+	private static <T> T getLookupResult(CompletableFuture<T> lookup) throws DNSException
+	{
+		try
+		{
+			return lookup.get();
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof DNSException)
+				throw (DNSException)e.getCause();
+			
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Lookup failed: " + e.getCause().getMessage(), e);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Interrupted waiting for lookup.", e);
+		}
+	}
+	
 	/**
 	 * Processes all DNS requests except CERT records.
 	 * @param name The record name.
@@ -230,6 +518,21 @@ public abstract class AbstractDNSStore implements DNSStore
 	 */
 	protected abstract RRset processGenericRecordRequest(String name, int type) throws DNSException;
 	
+	/**
+	 * Processes all DNS requests except CERT records.  Stores that index names by label can override this method to avoid converting 
+	 * the name to a string.
+	 * @param name The record name.
+	 * @param type The record type.
+	 * @return Returns a set of record responses to the request.
+	 * @throws DNSException
+	 * 
+	 * @since 8.2.0
+	 */
+	protected RRset processGenericRecordRequest(Name name, int type) throws DNSException
+	{
+		return processGenericRecordRequest(name.toString(), type);
+	}
+	
 	/**
 	 * Processes all DNS CERT requests.
 	 * @param name The record name.  In many cases this a email address.
@@ -242,6 +545,19 @@ public abstract class AbstractDNSStore implements DNSStore
 	
 	protected abstract Record checkForSoaRecord(String questionName);
 	
+	/**
+	 * Gets the SOA record of the closest zone that encloses a name.  Stores that index names by label can override this method to avoid 
+	 * converting the name to a string.
+	 * @param questionName The record name.
+	 * @return The SOA record of the closest enclosing zone, or null if the store has no zone for the name.
+	 * 
+	 * @since 8.2.0
+	 */
+	protected Record checkForSoaRecord(Name questionName)
+	{
+		return checkForSoaRecord(questionName.toString());
+	}
+	
 	protected boolean isCertCompliantWithPolicy(X509Certificate cert)
 	{
 		// if no policy has been set, then always return true
@@ -0,0 +1,113 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of fixed size byte buffers that are recycled between requests instead of allocating a new buffer for each incoming packet.  
+ * If the pool is empty when a buffer is requested, a new buffer is allocated.  Buffers that are returned to a full pool are left
+ * for the garbage collector.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class ByteBufferPool
+{
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers;
+	private final AtomicInteger pooledCount;
+	private final int bufferSize;
+	private final int maxPooledBuffers;
+	private final boolean direct;
+	
+	private final AtomicLong hitCount;
+	private final AtomicLong missCount;
+	
+	/**
+	 * Creates a buffer pool.
+	 * @param bufferSize The size in bytes of each buffer.
+	 * @param maxPooledBuffers The maximum number of idle buffers held by the pool.
+	 * @param direct Indicates if the pool allocates direct buffers.  Direct buffers avoid an extra copy when used with NIO channels, but
+	 * are not backed by an accessible array.
+	 */
+	public ByteBufferPool(int bufferSize, int maxPooledBuffers, boolean direct)
+	{
+		this.buffers = new ConcurrentLinkedQueue<>();
+		this.pooledCount = new AtomicInteger(0);
+		this.bufferSize = bufferSize;
+		this.maxPooledBuffers = maxPooledBuffers;
+		this.direct = direct;
+		this.hitCount = new AtomicLong(0);
+		this.missCount = new AtomicLong(0);
+	}
+	
+	/**
+	 * Gets a cleared buffer from the pool or allocates a new one if the pool is empty.
+	 * @return A cleared buffer.
+	 */
+	public ByteBuffer acquire()
+	{
+		final ByteBuffer retVal = buffers.poll();
+		if (retVal != null)
+		{
+			pooledCount.decrementAndGet();
+			hitCount.incrementAndGet();
+			retVal.clear();
+			return retVal;
+		}
+		
+		missCount.incrementAndGet();
+		return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+	}
+	
+	/**
+	 * Returns a buffer to the pool.  The buffer must not be used by the caller after it has been released.
+	 * @param buffer The buffer to return.  Null buffers and buffers that were not allocated by this pool are ignored.
+	 */
+	public void release(ByteBuffer buffer)
+	{
+		if (buffer == null || buffer.capacity() != bufferSize || buffer.isDirect() != direct)
+			return;
+		
+		if (pooledCount.incrementAndGet() > maxPooledBuffers)
+		{
+			pooledCount.decrementAndGet();
+			return;
+		}
+		
+		buffers.offer(buffer);
+	}
+	
+	/**
+	 * Gets the number of requests that were satisfied with a recycled buffer.
+	 * @return The number of requests that were satisfied with a recycled buffer.
+	 */
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+	
+	/**
+	 * Gets the number of requests that required a new buffer to be allocated.
+	 * @return The number of requests that required a new buffer to be allocated.
+	 */
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+}
@@ -0,0 +1,157 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xbill.DNS.RRset;
+
+/**
+ * Cache of fully built CERT record sets keyed by owner name.  Building a CERT record set decodes every certificate of the owner, evaluates 
+ * the certificate policy, and derives the key tag and algorithm from the certificate, so a cache hit avoids all X509 parsing.  Entries expire
+ * after a fixed time and can be invalidated by owner when certificates change.  The number of entries is bounded and the least recently
+ * used entries are evicted first.  Expired entries are removed when they are next looked up or when they are evicted.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSCertCache 
+{
+	private final int maxEntries;
+	private final long ttlNanos;
+	
+	private final DNSLRUMap<String, CertEntry> entries;
+	private final AtomicLong hitCount;
+	private final AtomicLong missCount;
+	
+	/**
+	 * Creates a CERT record set cache.
+	 * @param maxEntries The maximum number of owners held in the cache.
+	 * @param ttl The time in seconds that a record set is cached.
+	 */
+	public DNSCertCache(int maxEntries, int ttl)
+	{
+		this.maxEntries = maxEntries;
+		this.ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
+		
+		entries = (maxEntries > 0) ? new DNSLRUMap<String, CertEntry>(maxEntries) : null;
+		hitCount = new AtomicLong(0);
+		missCount = new AtomicLong(0);
+	}
+	
+	/**
+	 * Gets the cached CERT record set of an owner.
+	 * @param name The owner name as it appears in the query.  Owners that are email addresses appear with the "@" replaced by a ".".
+	 * @return The cached record set, or null if no unexpired record set is cached.
+	 */
+	public RRset get(String name)
+	{
+		final String key = toKey(name);
+		final CertEntry entry = (entries == null) ? null : entries.get(key);
+		if (entry == null || entry.expiresAt - System.nanoTime() <= 0)
+		{
+			if (entry != null)
+				entries.remove(key, entry);
+			
+			missCount.incrementAndGet();
+			return null;
+		}
+		
+		hitCount.incrementAndGet();
+		return entry.certs;
+	}
+	
+	/**
+	 * Caches the CERT record set of an owner.  The record set must not be modified once it is cached.
+	 * @param name The owner name as it appears in the query.
+	 * @param certs The record set.
+	 */
+	public void put(String name, RRset certs)
+	{
+		if (maxEntries <= 0 || ttlNanos <= 0)
+			return;
+		
+		entries.put(toKey(name), new CertEntry(certs, System.nanoTime() + ttlNanos));
+	}
+	
+	/**
+	 * Removes the cached CERT record set of an owner.  This should be called when certificates of the owner are added or removed.
+	 * @param owner The owner name or email address.
+	 */
+	public void invalidate(String owner)
+	{
+		if (entries != null)
+			entries.remove(toKey(owner.replace('@', '.')));
+	}
+	
+	/**
+	 * Removes all cached record sets.
+	 */
+	public void clear()
+	{
+		if (entries != null)
+			entries.clear();
+	}
+	
+	/**
+	 * Gets the number of lookups answered from the cache.
+	 * @return The number of lookups answered from the cache.
+	 */
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+	
+	/**
+	 * Gets the number of lookups that were not found in the cache.
+	 * @return The number of lookups that were not found in the cache.
+	 */
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+	
+	/**
+	 * Gets the number of cached record sets.
+	 * @return The number of cached record sets.
+	 */
+	public int getSize()
+	{
+		return (entries == null) ? 0 : entries.size();
+	}
+	
+	/*
+	 * Keys are lower case names without the trailing root label
+	 */
+	private static String toKey(String name)
+	{
+		final String retVal = name.toLowerCase(Locale.ROOT);
+		return retVal.endsWith(".") ? retVal.substring(0, retVal.length() - 1) : retVal;
+	}
+	
+	private static class CertEntry
+	{
+		private final RRset certs;
+		private final long expiresAt;
+		
+		public CertEntry(RRset certs, long expiresAt)
+		{
+			this.certs = certs;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.nhindirect.config.model.Certificate;
+
+/**
+ * Immutable index of certificate owners keyed by their DNS encoded names.  Certificate owners are stored with an "@" for email addresses, 
+ * but CERT queries carry the address with the "@" replaced by a ".", so the index maps the DNS encoded name straight to the owner string 
+ * that the certificate service expects.
+ * <p>
+ * When several owners encode to the same name, the owner chosen is the one the configuration service probing would have found first: an 
+ * owner without an "@" is preferred, followed by the owner whose "@" is closest to the start of the name.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSCertOwnerIndex
+{
+	private final Map<String, String> owners;
+	private final long createTime;
+	
+	/**
+	 * Creates an index from the certificates held by the configuration service.
+	 * @param certs The certificates.  Only the owners of the certificates are used.
+	 */
+	public DNSCertOwnerIndex(Collection<Certificate> certs)
+	{
+		final Map<String, String> index = new HashMap<>();
+		if (certs != null)
+		{
+			for (Certificate cert : certs)
+				addOwner(index, cert.getOwner());
+		}
+		
+		owners = Collections.unmodifiableMap(index);
+		createTime = System.currentTimeMillis();
+	}
+	
+	/*
+	 * Creates an index from owner strings
+	 */
+	private DNSCertOwnerIndex(Map<String, String> index)
+	{
+		owners = Collections.unmodifiableMap(index);
+		createTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Creates an index from certificate owners that are already known, such as the owners of a loaded snapshot, without downloading
+	 * any certificates.
+	 * @param owners The certificate owners as they are stored in the configuration service.
+	 * @return The owner index.
+	 */
+	public static DNSCertOwnerIndex fromOwners(Collection<String> owners)
+	{
+		final Map<String, String> index = new HashMap<>();
+		for (String owner : owners)
+			addOwner(index, owner);
+		
+		return new DNSCertOwnerIndex(index);
+	}
+	
+	private static void addOwner(Map<String, String> index, String owner)
+	{
+		if (owner == null || owner.isEmpty())
+			return;
+		
+		index.merge(toKey(owner), owner, DNSCertOwnerIndex::getPreferredOwner);
+	}
+	
+	/**
+	 * Gets the owner of the certificates published under a name.
+	 * @param name The owner name as it appears in the query, with or without the trailing root label.
+	 * @return The owner string held by the certificate service, or null if no certificate owner encodes to the name.
+	 */
+	public String getOwner(String name)
+	{
+		return owners.get(toKey(name));
+	}
+	
+	/**
+	 * Gets the number of names in the index.
+	 * @return The number of names in the index.
+	 */
+	public int getSize()
+	{
+		return owners.size();
+	}
+	
+	/**
+	 * Gets the time the index was created.
+	 * @return The time in milliseconds since the epoch that the index was created.
+	 */
+	public long getCreateTime()
+	{
+		return createTime;
+	}
+	
+	/*
+	 * Keys are lower case DNS encoded names without the trailing root label
+	 */
+	private static String toKey(String name)
+	{
+		final String retVal = name.replace('@', '.').toLowerCase(Locale.ROOT);
+		return retVal.endsWith(".") ? retVal.substring(0, retVal.length() - 1) : retVal;
+	}
+	
+	private static String getPreferredOwner(String existing, String owner)
+	{
+		final int existingIndex = existing.indexOf('@');
+		final int ownerIndex = owner.indexOf('@');
+		if (existingIndex < 0)
+			return existing;
+		else if (ownerIndex < 0)
+			return owner;
+		
+		return (ownerIndex < existingIndex) ? owner : existing;
+	}
+}
@@ -0,0 +1,222 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded map that evicts its least recently used entries.  The map is split into segments that are each an access ordered 
+ * {@link LinkedHashMap} guarded by its own lock, so lookups on different segments do not contend and evicting an entry never scans
+ * the map.  Each entry has a weight, and each segment holds an equal share of the maximum total weight.
+ * @author Greg Meyer
+ * @since 8.2.0
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+public class DNSLRUMap<K, V>
+{
+	private static final int MAX_SEGMENTS = 16;
+	
+	private final Segment<K, V>[] segments;
+	private final ToLongFunction<V> weigher;
+	private final AtomicLong weight;
+	
+	/**
+	 * Creates a map where every entry has a weight of 1, which bounds the number of entries.
+	 * @param maxEntries The maximum number of entries.
+	 */
+	public DNSLRUMap(int maxEntries)
+	{
+		this(maxEntries, 64, value -> 1);
+	}
+	
+	/**
+	 * Creates a map bounded by the total weight of its entries.
+	 * @param maxWeight The maximum total weight of the entries.
+	 * @param minSegmentWeight The smallest share of the maximum weight given to a segment.  Small maps use fewer segments so that
+	 * each segment can still hold a useful number of entries.
+	 * @param weigher Gets the weight of a value.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public DNSLRUMap(long maxWeight, long minSegmentWeight, ToLongFunction<V> weigher)
+	{
+		int numSegments = 1;
+		while (numSegments < MAX_SEGMENTS && maxWeight / (numSegments * 2) >= minSegmentWeight)
+			numSegments <<= 1;
+		
+		this.segments = new Segment[numSegments];
+		for (int i = 0; i < numSegments; ++i)
+			segments[i] = new Segment<K, V>(maxWeight / numSegments);
+		
+		this.weigher = weigher;
+		this.weight = new AtomicLong(0);
+	}
+	
+	/**
+	 * Gets the value of a key and marks the entry as the most recently used entry.
+	 * @param key The key.
+	 * @return The value of the key, or null if the key is not in the map.
+	 */
+	public V get(K key)
+	{
+		final Segment<K, V> segment = getSegment(key);
+		synchronized (segment)
+		{
+			return segment.entries.get(key);
+		}
+	}
+	
+	/**
+	 * Adds or replaces the value of a key and then evicts least recently used entries of the key's segment until the segment is back
+	 * within its share of the maximum weight.  A value that is heavier than a segment's share is not added.
+	 * @param key The key.
+	 * @param value The value.
+	 */
+	public void put(K key, V value)
+	{
+		final long valueWeight = weigher.applyAsLong(value);
+		final Segment<K, V> segment = getSegment(key);
+		if (valueWeight > segment.maxWeight)
+			return;
+		
+		synchronized (segment)
+		{
+			final V previous = segment.entries.put(key, value);
+			long added = valueWeight - ((previous == null) ? 0 : weigher.applyAsLong(previous));
+			
+			// the eldest entry of an access ordered map is the least recently used one
+			final Iterator<V> iter = segment.entries.values().iterator();
+			while (segment.weight + added > segment.maxWeight && iter.hasNext())
+			{
+				added -= weigher.applyAsLong(iter.next());
+				iter.remove();
+			}
+			
+			segment.weight += added;
+			weight.addAndGet(added);
+		}
+	}
+	
+	/**
+	 * Removes a key.
+	 * @param key The key.
+	 * @return The value the key was mapped to, or null if the key was not in the map.
+	 */
+	public V remove(K key)
+	{
+		final Segment<K, V> segment = getSegment(key);
+		synchronized (segment)
+		{
+			final V value = segment.entries.remove(key);
+			if (value != null)
+			{
+				final long removed = weigher.applyAsLong(value);
+				segment.weight -= removed;
+				weight.addAndGet(-removed);
+			}
+			
+			return value;
+		}
+	}
+	
+	/**
+	 * Removes a key only if it is mapped to a given value.
+	 * @param key The key.
+	 * @param value The value the key must be mapped to.
+	 * @return True if the entry was removed.
+	 */
+	public boolean remove(K key, V value)
+	{
+		final Segment<K, V> segment = getSegment(key);
+		synchronized (segment)
+		{
+			if (!segment.entries.remove(key, value))
+				return false;
+			
+			final long removed = weigher.applyAsLong(value);
+			segment.weight -= removed;
+			weight.addAndGet(-removed);
+			return true;
+		}
+	}
+	
+	/**
+	 * Removes all entries.
+	 */
+	public void clear()
+	{
+		for (Segment<K, V> segment : segments)
+		{
+			synchronized (segment)
+			{
+				segment.entries.clear();
+				weight.addAndGet(-segment.weight);
+				segment.weight = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the number of entries.
+	 * @return The number of entries.
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (Segment<K, V> segment : segments)
+		{
+			synchronized (segment)
+			{
+				size += segment.entries.size();
+			}
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Gets the total weight of the entries.
+	 * @return The total weight of the entries.
+	 */
+	public long getWeight()
+	{
+		return weight.get();
+	}
+	
+	private Segment<K, V> getSegment(K key)
+	{
+		final int hash = key.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+	}
+	
+	private static class Segment<K, V>
+	{
+		private final Map<K, V> entries;
+		private final long maxWeight;
+		private long weight;
+		
+		public Segment(long maxWeight)
+		{
+			this.entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+			this.maxWeight = maxWeight;
+		}
+	}
+}
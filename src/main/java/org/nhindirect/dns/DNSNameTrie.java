@@ -0,0 +1,257 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import org.xbill.DNS.Name;
+
+/**
+ * Index of values keyed by DNS name and stored as a trie of labels ordered from the root down.  Labels are held in canonical lower case 
+ * wire format, so a lookup converts the query name to wire format once and then walks one trie level per label without creating any 
+ * strings.  Both exact matches and the closest enclosing name are found in time proportional to the number of labels in the query name, 
+ * regardless of how many names are indexed.
+ * <p>
+ * Values are added with {@link #put(Name, Object)} while the trie is being built.  A trie is not safe for concurrent modification, so 
+ * stores build a new trie and publish it to readers once it is complete, after which any number of threads may read it.
+ * @author Greg Meyer
+ * @since 8.2.0
+ * 
+ * @param <V> The type of the indexed values.
+ */
+public class DNSNameTrie<V>
+{
+	private final Node<V> root = new Node<>(0, null);
+	private int size;
+	
+	/**
+	 * Adds a value to the trie, replacing any value already held for the name.
+	 * @param name The absolute name.
+	 * @param value The value.
+	 */
+	public void put(Name name, V value)
+	{
+		final byte[] wire = name.toWireCanonical();
+		final Node<V> node = getOrAddNode(wire, 0);
+		if (node.value == null)
+			++size;
+		
+		node.setValue(value);
+	}
+	
+	/**
+	 * Gets the value held for a name.
+	 * @param name The absolute name.
+	 * @return The value held for the name, or null if the name is not in the trie.
+	 */
+	public V get(Name name)
+	{
+		final Node<V> node = findDeepestNode(name.toWireCanonical(), 0, name.labels() - 1);
+		return (node.depth == name.labels() - 1) ? node.value : null;
+	}
+	
+	/**
+	 * Gets the value of the closest name that encloses a name, including the name itself.
+	 * @param name The absolute name.
+	 * @return The value of the closest enclosing name, or null if no indexed name encloses the name.
+	 */
+	public V getClosestEnclosing(Name name)
+	{
+		return findDeepestNode(name.toWireCanonical(), 0, name.labels() - 1).enclosingValue;
+	}
+	
+	/**
+	 * Indicates if a name exists in the trie, either because it holds a value or because a name beneath it does.  A name with no value 
+	 * of its own whose descendants have values is an empty non-terminal as described in RFC 8020, and still exists.
+	 * @param name The absolute name.
+	 * @return True if the name or any name beneath it is in the trie.
+	 */
+	public boolean containsName(Name name)
+	{
+		return findDeepestNode(name.toWireCanonical(), 0, name.labels() - 1).depth == name.labels() - 1;
+	}
+	
+	/**
+	 * Gets the number of names in the trie.
+	 * @return The number of names in the trie.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/*
+	 * Finds the node of the name suffix starting at the offset, adding nodes that don't exist yet.
+	 * Labels are walked from the root, so the recursion reaches the end of the name before descending.
+	 */
+	private Node<V> getOrAddNode(byte[] wire, int offset)
+	{
+		final int length = wire[offset] & 0xFF;
+		if (length == 0)
+			return root;
+		
+		return getOrAddNode(wire, offset + 1 + length).getOrAddChild(wire, offset + 1, length);
+	}
+	
+	/*
+	 * Finds the deepest node along the path of the name suffix starting at the offset.  The depth is the number of
+	 * labels in the suffix excluding the root.  If a node's depth doesn't match the depth of its suffix, the path
+	 * ended above it and every deeper label is unmatched.
+	 */
+	private Node<V> findDeepestNode(byte[] wire, int offset, int depth)
+	{
+		final int length = wire[offset] & 0xFF;
+		if (length == 0)
+			return root;
+		
+		final Node<V> parent = findDeepestNode(wire, offset + 1 + length, depth - 1);
+		if (parent.depth != depth - 1)
+			return parent;
+		
+		final Node<V> child = parent.getChild(wire, offset + 1, length);
+		return (child == null) ? parent : child;
+	}
+	
+	/*
+	 * A single label of the trie.  Children are held in an open addressed hash table keyed by label bytes.
+	 */
+	private static final class Node<V>
+	{
+		private final int depth;
+		private byte[][] childLabels;
+		private Node<V>[] children;
+		private int childCount;
+		private V value;
+		// the value of this node or of its closest ancestor that has one
+		private V enclosingValue;
+		
+		public Node(int depth, Node<V> parent)
+		{
+			this.depth = depth;
+			this.enclosingValue = (parent == null) ? null : parent.enclosingValue;
+		}
+		
+		public Node<V> getChild(byte[] wire, int offset, int length)
+		{
+			if (children == null)
+				return null;
+			
+			final int mask = children.length - 1;
+			for (int slot = hash(wire, offset, length) & mask; childLabels[slot] != null; slot = (slot + 1) & mask)
+			{
+				if (labelEquals(childLabels[slot], wire, offset, length))
+					return children[slot];
+			}
+			
+			return null;
+		}
+		
+		public Node<V> getOrAddChild(byte[] wire, int offset, int length)
+		{
+			final Node<V> existing = getChild(wire, offset, length);
+			if (existing != null)
+				return existing;
+			
+			if (children == null)
+			{
+				childLabels = new byte[4][];
+				children = newChildren(4);
+			}
+			else if ((childCount + 1) * 2 > children.length)
+			{
+				final byte[][] oldLabels = childLabels;
+				final Node<V>[] oldChildren = children;
+				childLabels = new byte[oldLabels.length * 2][];
+				children = newChildren(oldChildren.length * 2);
+				for (int i = 0; i < oldLabels.length; ++i)
+				{
+					if (oldLabels[i] != null)
+						insert(oldLabels[i], oldChildren[i]);
+				}
+			}
+			
+			final byte[] label = new byte[length];
+			System.arraycopy(wire, offset, label, 0, length);
+			final Node<V> child = new Node<>(depth + 1, this);
+			insert(label, child);
+			++childCount;
+			
+			return child;
+		}
+		
+		/*
+		 * Sets the value of the node and passes it down to descendants that are enclosed by this node
+		 * rather than by a closer name of their own
+		 */
+		public void setValue(V value)
+		{
+			this.value = value;
+			updateEnclosingValue(value);
+		}
+		
+		private void updateEnclosingValue(V value)
+		{
+			enclosingValue = value;
+			if (children == null)
+				return;
+			
+			for (Node<V> child : children)
+			{
+				if (child != null && child.value == null)
+					child.updateEnclosingValue(value);
+			}
+		}
+		
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private static <V> Node<V>[] newChildren(int size)
+		{
+			// generic arrays can't be created directly
+			return new Node[size];
+		}
+		
+		private void insert(byte[] label, Node<V> child)
+		{
+			final int mask = children.length - 1;
+			int slot = hash(label, 0, label.length) & mask;
+			while (childLabels[slot] != null)
+				slot = (slot + 1) & mask;
+			
+			childLabels[slot] = label;
+			children[slot] = child;
+		}
+		
+		private static int hash(byte[] bytes, int offset, int length)
+		{
+			int retVal = 0x811C9DC5;
+			for (int i = offset; i < offset + length; ++i)
+				retVal = (retVal ^ bytes[i]) * 0x01000193;
+			
+			return retVal ^ (retVal >>> 16);
+		}
+		
+		private static boolean labelEquals(byte[] label, byte[] wire, int offset, int length)
+		{
+			if (label.length != length)
+				return false;
+			
+			for (int i = 0; i < length; ++i)
+			{
+				if (label[i] != wire[offset + i])
+					return false;
+			}
+			
+			return true;
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xbill.DNS.Name;
+import org.xbill.DNS.SOARecord;
+
+/**
+ * Cache of negative lookup results as described in RFC 2308.  A lookup that found no records is remembered by question name and type along 
+ * with the SOA record of the enclosing zone and whether the response was NXDOMAIN or NODATA.  Entries expire after the smaller of the SOA 
+ * record's TTL and its minimum field.  The number of entries is bounded and the least recently used entries are evicted first.  Expired
+ * entries are removed when they are next looked up or when they are evicted.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSNegativeCache 
+{
+	/**
+	 * A cached negative result.
+	 */
+	public static class NegativeResult
+	{
+		private final SOARecord soa;
+		private final int rcode;
+		
+		public NegativeResult(SOARecord soa, int rcode)
+		{
+			this.soa = soa;
+			this.rcode = rcode;
+		}
+		
+		/**
+		 * Gets the SOA record to place in the authority section of the negative response.
+		 * @return The SOA record with its TTL set to the remaining time that the result may be cached.
+		 */
+		public SOARecord getSOA()
+		{
+			return soa;
+		}
+		
+		/**
+		 * Gets the response code of the negative response.
+		 * @return NXDOMAIN if the name does not exist, or NOERROR if the name exists without records of the question type.
+		 */
+		public int getRcode()
+		{
+			return rcode;
+		}
+	}
+	
+	private final int maxEntries;
+	
+	private final DNSLRUMap<NegativeKey, NegativeEntry> entries;
+	private final AtomicLong hitCount;
+	private final AtomicLong missCount;
+	
+	/**
+	 * Creates a negative cache.
+	 * @param maxEntries The maximum number of negative results held in the cache.
+	 */
+	public DNSNegativeCache(int maxEntries)
+	{
+		this.maxEntries = maxEntries;
+		
+		entries = (maxEntries > 0) ? new DNSLRUMap<NegativeKey, NegativeEntry>(maxEntries) : null;
+		hitCount = new AtomicLong(0);
+		missCount = new AtomicLong(0);
+	}
+	
+	/**
+	 * Gets the negative TTL of a zone, which is the smaller of the SOA record's TTL and its minimum field.
+	 * @param soa The SOA record of the zone.
+	 * @return The negative TTL in seconds.
+	 */
+	public static long getNegativeTTL(SOARecord soa)
+	{
+		return Math.min(soa.getTTL(), soa.getMinimum());
+	}
+	
+	/**
+	 * Creates a copy of an SOA record with a different TTL.
+	 * @param soa The SOA record to copy.
+	 * @param ttl The TTL of the copy.
+	 * @return The copy of the SOA record.
+	 */
+	public static SOARecord withTTL(SOARecord soa, long ttl)
+	{
+		return new SOARecord(soa.getName(), soa.getDClass(), ttl, soa.getHost(), soa.getAdmin(), soa.getSerial(), 
+				soa.getRefresh(), soa.getRetry(), soa.getExpire(), soa.getMinimum());
+	}
+	
+	/**
+	 * Gets a cached negative result.
+	 * @param name The question name.
+	 * @param type The question type.
+	 * @return The negative result with the SOA record's TTL set to the remaining time that the result may be cached, or null if no unexpired 
+	 * negative result is cached.
+	 */
+	public NegativeResult get(Name name, int type)
+	{
+		final NegativeKey key = new NegativeKey(name, type);
+		final NegativeEntry entry = (entries == null) ? null : entries.get(key);
+		if (entry == null)
+		{
+			missCount.incrementAndGet();
+			return null;
+		}
+		
+		final long remaining = TimeUnit.NANOSECONDS.toSeconds(entry.expiresAt - System.nanoTime());
+		if (remaining <= 0)
+		{
+			entries.remove(key, entry);
+			missCount.incrementAndGet();
+			return null;
+		}
+		
+		hitCount.incrementAndGet();
+		return new NegativeResult(withTTL(entry.soa, remaining), entry.rcode);
+	}
+	
+	/**
+	 * Indicates if an unexpired negative result is cached.  Hit and miss counts are not updated.
+	 * @param name The question name.
+	 * @param type The question type.
+	 * @return True if an unexpired negative result is cached.
+	 */
+	public boolean contains(Name name, int type)
+	{
+		final NegativeEntry entry = (entries == null) ? null : entries.get(new NegativeKey(name, type));
+		return entry != null && entry.expiresAt - System.nanoTime() > 0;
+	}
+	
+	/**
+	 * Caches a negative result.  Nothing is cached if the negative TTL of the zone is 0.
+	 * @param name The question name.
+	 * @param type The question type.
+	 * @param soa The SOA record of the zone that encloses the question name.
+	 * @param rcode The response code of the negative response, which is NXDOMAIN if the name does not exist or NOERROR for NODATA.
+	 */
+	public void put(Name name, int type, SOARecord soa, int rcode)
+	{
+		final long ttl = getNegativeTTL(soa);
+		if (ttl <= 0 || maxEntries <= 0)
+			return;
+		
+		entries.put(new NegativeKey(name, type), new NegativeEntry(soa, rcode, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttl)));
+	}
+	
+	/**
+	 * Removes all cached negative results.
+	 */
+	public void clear()
+	{
+		if (entries != null)
+			entries.clear();
+	}
+	
+	/**
+	 * Gets the number of lookups answered from the cache.
+	 * @return The number of lookups answered from the cache.
+	 */
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+	
+	/**
+	 * Gets the number of lookups that were not found in the cache.
+	 * @return The number of lookups that were not found in the cache.
+	 */
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+	
+	/**
+	 * Gets the number of cached negative results.
+	 * @return The number of cached negative results.
+	 */
+	public int getSize()
+	{
+		return (entries == null) ? 0 : entries.size();
+	}
+	
+	private static class NegativeKey
+	{
+		private final Name name;
+		private final int type;
+		
+		public NegativeKey(Name name, int type)
+		{
+			this.name = name;
+			this.type = type;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			// Name hashes and compares without regard to case
+			return 31 * name.hashCode() + type;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof NegativeKey))
+				return false;
+			
+			final NegativeKey other = (NegativeKey)obj;
+			return type == other.type && name.equals(other.name);
+		}
+	}
+	
+	private static class NegativeEntry
+	{
+		private final SOARecord soa;
+		private final int rcode;
+		private final long expiresAt;
+		
+		public NegativeEntry(SOARecord soa, int rcode, long expiresAt)
+		{
+			this.soa = soa;
+			this.rcode = rcode;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
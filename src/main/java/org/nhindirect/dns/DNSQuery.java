@@ -0,0 +1,325 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.nio.ByteBuffer;
+
+import org.xbill.DNS.Type;
+
+/**
+ * Lightweight view of a DNS query read directly from its raw wire protocol format.  Only the header, the question, and an OPT record that 
+ * immediately follows the question are decoded, which is enough to reject malformed or unsupported queries and to look up cached responses 
+ * without building a full {@link org.xbill.DNS.Message}.
+ * <p>
+ * Instances are not thread safe, but may be reused for any number of queries by calling {@link #parse(ByteBuffer)} again.  The 
+ * query holds on to the parsed buffer until {@link #clear()} is called.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSQuery 
+{
+	private static final int MAX_NAME_LENGTH = 255;
+	private ByteBuffer buffer;
+	private int start;
+	private int length;
+	
+	private int id;
+	private int flags;
+	private int qdCount;
+	private int anCount;
+	private int nsCount;
+	private int arCount;
+	
+	private int nameLength;
+	private int questionEnd;
+	private int type;
+	private int dclass;
+	
+	private boolean edns;
+	private int ednsPayloadSize;
+	private int ednsVersion;
+	private int ednsFlags;
+	
+	private boolean simple;
+	
+	/**
+	 * Creates an empty query.  Call {@link #parse(ByteBuffer)} to read a query.
+	 */
+	public DNSQuery()
+	{
+		clear();
+	}
+	
+	/**
+	 * Reads the header, question, and EDNS0 OPT record of a query.
+	 * @param buffer The query in raw wire protocol format.  The query starts at the buffer's position and ends at its limit.  The buffer's 
+	 * position is not changed.
+	 * @return False if the header or question is malformed or the message does not hold exactly one question.  True otherwise.
+	 */
+	public boolean parse(ByteBuffer buffer)
+	{
+		clear();
+		
+		this.buffer = buffer;
+		this.start = buffer.position();
+		this.length = buffer.remaining();
+		
+		if (length < DNSWireUtils.HEADER_LENGTH)
+			return false;
+		
+		id = getUnsignedShort(0);
+		flags = getUnsignedShort(DNSWireUtils.FLAGS_OFFSET);
+		qdCount = getUnsignedShort(DNSWireUtils.QDCOUNT_OFFSET);
+		anCount = getUnsignedShort(DNSWireUtils.QDCOUNT_OFFSET + 2);
+		nsCount = getUnsignedShort(DNSWireUtils.QDCOUNT_OFFSET + 4);
+		arCount = getUnsignedShort(DNSWireUtils.QDCOUNT_OFFSET + 6);
+		
+		if (qdCount != 1)
+			return false;
+		
+		// only uncompressed names are simple... a compression pointer in the question is legal but never seen in practice
+		boolean compressed = false;
+		int offset = DNSWireUtils.HEADER_LENGTH;
+		while (true)
+		{
+			if (offset >= length)
+				return false;
+			
+			final int labelLength = buffer.get(start + offset) & 0xFF;
+			if (labelLength == 0)
+			{
+				++offset;
+				break;
+			}
+			else if ((labelLength & 0xC0) == 0xC0)
+			{
+				compressed = true;
+				offset += 2;
+				break;
+			}
+			else if (labelLength > 63)
+				return false;
+			
+			offset += labelLength + 1;
+		}
+		
+		nameLength = offset - DNSWireUtils.HEADER_LENGTH;
+		if (nameLength > MAX_NAME_LENGTH || offset + 4 > length)
+			return false;
+		
+		type = getUnsignedShort(offset);
+		dclass = getUnsignedShort(offset + 2);
+		questionEnd = offset + 4;
+		
+		simple = !compressed && anCount == 0 && nsCount == 0;
+		if (simple)
+		{
+			if (arCount == 0)
+				simple = (questionEnd == length);
+			else if (arCount == 1)
+				simple = parseOPT(questionEnd);
+			else
+				simple = false;
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * Reads an OPT record with an empty owner name that makes up the rest of the message
+	 */
+	private boolean parseOPT(int offset)
+	{
+		if (offset + DNSWireUtils.OPT_RECORD_LENGTH > length || buffer.get(start + offset) != 0 || getUnsignedShort(offset + 1) != Type.OPT)
+			return false;
+		
+		final int rdLength = getUnsignedShort(offset + 9);
+		if (offset + DNSWireUtils.OPT_RECORD_LENGTH + rdLength != length)
+			return false;
+		
+		edns = true;
+		ednsPayloadSize = getUnsignedShort(offset + 3);
+		ednsVersion = buffer.get(start + offset + 6) & 0xFF;
+		ednsFlags = getUnsignedShort(offset + 7);
+		
+		return true;
+	}
+	
+	private int getUnsignedShort(int offset)
+	{
+		return ((buffer.get(start + offset) & 0xFF) << 8) | (buffer.get(start + offset + 1) & 0xFF);
+	}
+	
+	/**
+	 * Resets the query and releases the parsed buffer.
+	 */
+	public void clear()
+	{
+		buffer = null;
+		start = 0;
+		length = 0;
+		id = 0;
+		flags = 0;
+		qdCount = 0;
+		anCount = 0;
+		nsCount = 0;
+		arCount = 0;
+		nameLength = 0;
+		questionEnd = 0;
+		type = 0;
+		dclass = 0;
+		edns = false;
+		ednsPayloadSize = 0;
+		ednsVersion = 0;
+		ednsFlags = 0;
+		simple = false;
+	}
+	
+	/**
+	 * Indicates if the query only holds a header, a single uncompressed question, and optionally an OPT record.  Anything else in a query,
+	 * such as a TSIG record, requires a full message to be built to be handled correctly.
+	 * @return True if the query is simple.
+	 */
+	public boolean isSimple()
+	{
+		return simple;
+	}
+	
+	/**
+	 * Gets the message ID.
+	 * @return The message ID.
+	 */
+	public int getID()
+	{
+		return id;
+	}
+	
+	/**
+	 * Indicates if the QR flag is set, meaning that the message is a response and not a query.
+	 * @return True if the QR flag is set.
+	 */
+	public boolean isResponse()
+	{
+		return ((flags >>> 8) & DNSWireUtils.QR_FLAG) != 0;
+	}
+	
+	/**
+	 * Gets the opcode.
+	 * @return The opcode.
+	 */
+	public int getOpcode()
+	{
+		return ((flags >>> 8) & DNSWireUtils.OPCODE_MASK) >>> 3;
+	}
+	
+	/**
+	 * Gets the response code held in the header.
+	 * @return The response code held in the header.
+	 */
+	public int getRcode()
+	{
+		return flags & DNSWireUtils.RCODE_MASK;
+	}
+	
+	/**
+	 * Gets the question type.
+	 * @return The question type.
+	 */
+	public int getType()
+	{
+		return type;
+	}
+	
+	/**
+	 * Gets the question class.
+	 * @return The question class.
+	 */
+	public int getDClass()
+	{
+		return dclass;
+	}
+	
+	/**
+	 * Gets the length in bytes of the question name in wire format.
+	 * @return The length in bytes of the question name.
+	 */
+	public int getNameLength()
+	{
+		return nameLength;
+	}
+	
+	/**
+	 * Gets the offset relative to the start of the message of the first byte after the question.
+	 * @return The offset of the first byte after the question.
+	 */
+	public int getQuestionEnd()
+	{
+		return questionEnd;
+	}
+	
+	/**
+	 * Copies the question name in wire format into a new array with ASCII letters converted to lower case.  Names that only differ 
+	 * by case produce the same bytes.
+	 * @return The lower case question name in wire format.
+	 */
+	public byte[] getCanonicalName()
+	{
+		final byte[] retVal = new byte[nameLength];
+		for (int i = 0; i < nameLength; ++i)
+		{
+			final byte b = buffer.get(start + DNSWireUtils.HEADER_LENGTH + i);
+			retVal[i] = (b >= 'A' && b <= 'Z') ? (byte)(b + ('a' - 'A')) : b;
+		}
+		
+		return retVal;
+	}
+	
+	/**
+	 * Indicates if the query holds an EDNS0 OPT record.
+	 * @return True if the query holds an EDNS0 OPT record.
+	 */
+	public boolean isEDNS()
+	{
+		return edns;
+	}
+	
+	/**
+	 * Gets the UDP payload size advertised in the query's OPT record.
+	 * @return The advertised UDP payload size, or 0 if the query does not hold an OPT record.
+	 */
+	public int getEDNSPayloadSize()
+	{
+		return ednsPayloadSize;
+	}
+	
+	/**
+	 * Gets the EDNS version of the query's OPT record.
+	 * @return The EDNS version, or 0 if the query does not hold an OPT record.
+	 */
+	public int getEDNSVersion()
+	{
+		return ednsVersion;
+	}
+	
+	/**
+	 * Indicates if the DO flag is set in the query's OPT record.
+	 * @return True if the DO flag is set.
+	 */
+	public boolean isDNSSECOK()
+	{
+		return (ednsFlags & DNSWireUtils.EDNS_DO_FLAG) != 0;
+	}
+}
@@ -0,0 +1,94 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.util.Arrays;
+
+import org.xbill.DNS.Opcode;
+
+/**
+ * Identifies requests that can be answered with the same response apart from the message ID, the RD flag, and the case of the question name.
+ * Keys are made of the lower case question name, type, and class, the EDNS0 state of the request, and the maximum response size.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public final class DNSQueryKey 
+{
+	private final byte[] name;
+	private final int type;
+	private final int dclass;
+	private final int ednsState;
+	private final int maxLength;
+	private final int hash;
+	
+	/**
+	 * Creates the key of a request.
+	 * @param query The request's header and question.
+	 * @param maxLength The maximum length of the response, or 0 if the response is not limited.
+	 * @return The key of the request, or null if the request is not a standard query that only holds a question and optionally an OPT record.
+	 */
+	public static DNSQueryKey create(DNSQuery query, int maxLength)
+	{
+		if (query.getOpcode() != Opcode.QUERY || query.isResponse() || !query.isSimple())
+			return null;
+		
+		final int ednsState = query.isEDNS() ? (1 | (query.isDNSSECOK() ? 2 : 0) | (query.getEDNSVersion() << 2)) : 0;
+		
+		return new DNSQueryKey(query.getCanonicalName(), query.getType(), query.getDClass(), ednsState, maxLength);
+	}
+	
+	private DNSQueryKey(byte[] name, int type, int dclass, int ednsState, int maxLength)
+	{
+		this.name = name;
+		this.type = type;
+		this.dclass = dclass;
+		this.ednsState = ednsState;
+		this.maxLength = maxLength;
+		
+		// the name is already in lower case
+		int h = Arrays.hashCode(name);
+		h = 31 * h + type;
+		h = 31 * h + dclass;
+		h = 31 * h + ednsState;
+		h = 31 * h + maxLength;
+		this.hash = h;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode()
+	{
+		return hash;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof DNSQueryKey))
+			return false;
+		
+		final DNSQueryKey other = (DNSQueryKey)obj;
+		return hash == other.hash && type == other.type && dclass == other.dclass && ednsState == other.ednsState && 
+				maxLength == other.maxLength && Arrays.equals(name, other.name);
+	}
+}
@@ -0,0 +1,433 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Type;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Asynchronous log of received queries.  Request threads copy each query into a fixed size binary entry in a lock free ring buffer, and a
+ * background thread formats the entries and writes them in batches to a rolling file.  Request threads never format text or block on file I/O.
+ * If the ring buffer is full, the entry is dropped and counted rather than making the request thread wait.
+ * <p>
+ * Each line of the log holds the time the query was received, the question name, class, and type, for example:
+ * <pre>
+ * 2026-01-01T12:00:00.123Z query: example.domain.com. IN CERT
+ * </pre>
+ * When the log file reaches its maximum size it is renamed with a .1 suffix, older files are shifted up by one, and the oldest file is deleted.
+ * If writing to the file fails, the file is reopened.  If writing keeps failing, the log stops and later queries are counted as dropped.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+@Slf4j
+public class DNSQueryLog
+{
+	private static final int MAX_NAME_LENGTH = 255;
+	
+	// time, class, type, name length, name
+	private static final int TIME_OFFSET = 0;
+	private static final int CLASS_OFFSET = 8;
+	private static final int TYPE_OFFSET = 10;
+	private static final int NAME_LENGTH_OFFSET = 12;
+	private static final int NAME_OFFSET = 14;
+	private static final int ENTRY_SIZE = NAME_OFFSET + MAX_NAME_LENGTH;
+	
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	
+	// consecutive write failures after which the log gives up reopening its file
+	private static final int MAX_WRITE_FAILURES = 3;
+	
+	private final File file;
+	private final long maxFileSize;
+	private final int maxFiles;
+	
+	private final int capacity;
+	private final int slotMask;
+	private final byte[] entries;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong(0);
+	private long head = 0;
+	
+	private final AtomicLong loggedCount = new AtomicLong(0);
+	private final AtomicLong droppedCount = new AtomicLong(0);
+	
+	private final AtomicBoolean running = new AtomicBoolean(false);
+	private Thread writerThread;
+	private Writer writer;
+	private long fileSize;
+	
+	/**
+	 * Creates a query log.  Queries are not written until {@link #start()} is called.
+	 * @param file The log file.
+	 * @param bufferSize The number of entries held by the ring buffer.  The size is rounded up to a power of two.
+	 * @param maxFileSize The size in bytes at which the log file is rolled.
+	 * @param maxFiles The number of rolled files that are kept in addition to the current log file.
+	 */
+	public DNSQueryLog(File file, int bufferSize, long maxFileSize, int maxFiles)
+	{
+		this.file = file;
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = Math.max(maxFiles, 0);
+		
+		int size = 2;
+		while (size < bufferSize && size < (1 << 24))
+			size <<= 1;
+		
+		capacity = size;
+		slotMask = size - 1;
+		entries = new byte[size * ENTRY_SIZE];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; ++i)
+			sequences.set(i, i);
+	}
+	
+	/**
+	 * Opens the log file and starts the background writer.
+	 * @throws DNSException Thrown if the log file cannot be opened.
+	 */
+	public synchronized void start() throws DNSException
+	{
+		if (running.get())
+			return;
+		
+		try
+		{
+			openFile();
+		}
+		catch (IOException e)
+		{
+			throw new DNSException(null, "Failed to open DNS query log " + file + ": " + e.getMessage(), e);
+		}
+		
+		running.set(true);
+		writerThread = new Thread(this::writeEntries, "dns-query-log");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+	
+	/**
+	 * Stops the background writer once all logged entries have been written and closes the log file.
+	 */
+	public synchronized void stop()
+	{
+		if (!running.getAndSet(false))
+			return;
+		
+		LockSupport.unpark(writerThread);
+		try
+		{
+			writerThread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		writerThread = null;
+	}
+	
+	/**
+	 * Logs a query that has been read with {@link DNSQuery#parse(ByteBuffer)}.
+	 * @param query The parsed query.
+	 * @param request The raw query that was parsed.
+	 * @return False if the entry was dropped because the ring buffer is full.
+	 */
+	public boolean log(DNSQuery query, ByteBuffer request)
+	{
+		final long seq = claim();
+		if (seq < 0)
+			return false;
+		
+		final int offset = (int)(seq & slotMask) * ENTRY_SIZE;
+		final int nameLength = Math.min(query.getNameLength(), MAX_NAME_LENGTH);
+		final int nameStart = request.position() + DNSWireUtils.HEADER_LENGTH;
+		for (int i = 0; i < nameLength; ++i)
+			entries[offset + NAME_OFFSET + i] = request.get(nameStart + i);
+		
+		publish(seq, offset, query.getDClass(), query.getType(), nameLength);
+		return true;
+	}
+	
+	/**
+	 * Logs a query that has been parsed into a {@link org.xbill.DNS.Message}.
+	 * @param name The question name.
+	 * @param dclass The question class.
+	 * @param type The question type.
+	 * @return False if the entry was dropped because the ring buffer is full.
+	 */
+	public boolean log(Name name, int dclass, int type)
+	{
+		final long seq = claim();
+		if (seq < 0)
+			return false;
+		
+		final int offset = (int)(seq & slotMask) * ENTRY_SIZE;
+		final byte[] wire = name.toWire();
+		final int nameLength = Math.min(wire.length, MAX_NAME_LENGTH);
+		System.arraycopy(wire, 0, entries, offset + NAME_OFFSET, nameLength);
+		
+		publish(seq, offset, dclass, type, nameLength);
+		return true;
+	}
+	
+	/**
+	 * Gets the number of queries written to the ring buffer.
+	 * @return The number of logged queries.
+	 */
+	public long getLoggedCount()
+	{
+		return loggedCount.get();
+	}
+	
+	/**
+	 * Gets the number of queries that were not logged because the ring buffer was full.
+	 * @return The number of dropped queries.
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+	
+	/*
+	 * Claims the next slot in the ring buffer, or returns -1 if the buffer is full
+	 */
+	private long claim()
+	{
+		while (true)
+		{
+			final long seq = tail.get();
+			final long slotSeq = sequences.get((int)(seq & slotMask));
+			if (slotSeq == seq)
+			{
+				if (tail.compareAndSet(seq, seq + 1))
+					return seq;
+			}
+			else if (slotSeq < seq)
+			{
+				// the writer has not consumed the entry a full lap behind us
+				droppedCount.incrementAndGet();
+				return -1;
+			}
+		}
+	}
+	
+	/*
+	 * Fills in the fixed fields of a claimed entry and hands it to the writer
+	 */
+	private void publish(long seq, int offset, int dclass, int type, int nameLength)
+	{
+		final long now = System.currentTimeMillis();
+		for (int i = 0; i < 8; ++i)
+			entries[offset + TIME_OFFSET + i] = (byte)(now >>> (56 - i * 8));
+		
+		putShort(offset + CLASS_OFFSET, dclass);
+		putShort(offset + TYPE_OFFSET, type);
+		putShort(offset + NAME_LENGTH_OFFSET, nameLength);
+		
+		loggedCount.incrementAndGet();
+		sequences.lazySet((int)(seq & slotMask), seq + 1);
+	}
+	
+	private void putShort(int offset, int value)
+	{
+		entries[offset] = (byte)(value >>> 8);
+		entries[offset + 1] = (byte)value;
+	}
+	
+	private int getShort(int offset)
+	{
+		return ((entries[offset] & 0xFF) << 8) | (entries[offset + 1] & 0xFF);
+	}
+	
+	/*
+	 * Background writer loop
+	 */
+	private void writeEntries()
+	{
+		final StringBuilder line = new StringBuilder(512);
+		int failures = 0;
+		while (true)
+		{
+			try
+			{
+				final boolean wasRunning = running.get();
+				final int written = drain(line);
+				
+				if (written > 0)
+				{
+					writer.flush();
+					failures = 0;
+				}
+				else if (!wasRunning)
+					break;
+				else
+					LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+			catch (IOException e)
+			{
+				log.error("DNS query log writer failed to write to " + file + ": " + e.getMessage(), e);
+				if (++failures >= MAX_WRITE_FAILURES || !reopenFile())
+				{
+					// nothing drains the ring buffer from here on, so later queries are counted as dropped
+					log.error("DNS query log stopped after repeated write failures.");
+					running.set(false);
+					break;
+				}
+			}
+		}
+		
+		closeWriter();
+	}
+	
+	/*
+	 * Formats and writes all published entries
+	 */
+	private int drain(StringBuilder line) throws IOException
+	{
+		int count = 0;
+		while (true)
+		{
+			final int slot = (int)(head & slotMask);
+			if (sequences.get(slot) != head + 1)
+				return count;
+			
+			final int offset = slot * ENTRY_SIZE;
+			line.setLength(0);
+			format(offset, line);
+			
+			// the entry can be reused as soon as it has been formatted
+			sequences.lazySet(slot, head + capacity);
+			++head;
+			++count;
+			
+			writer.append(line);
+			fileSize += line.length();
+			if (maxFileSize > 0 && fileSize >= maxFileSize)
+				rollFile();
+		}
+	}
+	
+	private void format(int offset, StringBuilder line)
+	{
+		long time = 0;
+		for (int i = 0; i < 8; ++i)
+			time = (time << 8) | (entries[offset + TIME_OFFSET + i] & 0xFF);
+		
+		line.append(DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(time))).append(" query: ");
+		
+		final int nameEnd = offset + NAME_OFFSET + getShort(offset + NAME_LENGTH_OFFSET);
+		int pos = offset + NAME_OFFSET;
+		while (pos < nameEnd)
+		{
+			final int labelLength = entries[pos] & 0xFF;
+			if (labelLength == 0 || (labelLength & 0xC0) != 0)
+				break;
+			
+			for (int i = pos + 1; i <= pos + labelLength && i < nameEnd; ++i)
+			{
+				final char c = (char)(entries[i] & 0xFF);
+				if (c == '.' || c == '\\' || c <= ' ' || c > '~')
+					line.append('\\').append(String.format("%03d", (int)c));
+				else
+					line.append(c);
+			}
+			line.append('.');
+			pos += labelLength + 1;
+		}
+		if (pos == offset + NAME_OFFSET)
+			line.append('.');
+		
+		line.append(' ').append(DClass.string(getShort(offset + CLASS_OFFSET)));
+		line.append(' ').append(Type.string(getShort(offset + TYPE_OFFSET))).append('\n');
+	}
+	
+	private boolean reopenFile()
+	{
+		closeWriter();
+		try
+		{
+			openFile();
+			return true;
+		}
+		catch (IOException e)
+		{
+			log.error("Failed to reopen DNS query log " + file + ": " + e.getMessage(), e);
+			writer = null;
+			return false;
+		}
+	}
+	
+	private void closeWriter()
+	{
+		if (writer == null)
+			return;
+		
+		try
+		{
+			writer.close();
+		}
+		catch (IOException e) {/* no-op */}
+	}
+	
+	private void openFile() throws IOException
+	{
+		final File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists())
+			parent.mkdirs();
+		
+		fileSize = file.length();
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.US_ASCII), 64 * 1024);
+	}
+	
+	private void rollFile() throws IOException
+	{
+		writer.close();
+		
+		if (maxFiles == 0)
+			file.delete();
+		else
+		{
+			new File(file.getPath() + "." + maxFiles).delete();
+			for (int i = maxFiles - 1; i >= 1; --i)
+			{
+				final File rolled = new File(file.getPath() + "." + i);
+				if (rolled.exists())
+					rolled.renameTo(new File(file.getPath() + "." + (i + 1)));
+			}
+			file.renameTo(new File(file.getPath() + ".1"));
+		}
+		
+		openFile();
+	}
+}
@@ -0,0 +1,151 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical requests that are processed at the same time.  The first request for a {@link DNSQueryKey} performs the lookup,
+ * and every identical request that arrives before the lookup completes attaches to it and receives a copy of the same response with 
+ * its own message ID, RD flag, and question name case.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSRequestCoalescer 
+{
+	/**
+	 * Lookup performed on behalf of all coalesced requests.
+	 */
+	@FunctionalInterface
+	public static interface Lookup
+	{
+		/**
+		 * Starts the lookup.
+		 * @return A stage that completes with the response in wire format, or null if no response should be sent.
+		 */
+		public CompletionStage<byte[]> execute();
+	}
+	
+	private final ConcurrentMap<DNSQueryKey, CompletableFuture<byte[]>> inFlight;
+	private final AtomicLong lookupCount;
+	private final AtomicLong coalescedCount;
+	
+	/**
+	 * Creates a request coalescer.
+	 */
+	public DNSRequestCoalescer()
+	{
+		inFlight = new ConcurrentHashMap<DNSQueryKey, CompletableFuture<byte[]>>();
+		lookupCount = new AtomicLong(0);
+		coalescedCount = new AtomicLong(0);
+	}
+	
+	/**
+	 * Gets the response to a request, either by starting the lookup or by attaching to an identical request that has already started it.
+	 * Waiting requests do not hold a thread; their responses are completed by the thread that completes the lookup.
+	 * @param key The key of the request.
+	 * @param request The request in wire format.  The request starts at the buffer's position and ends at its limit.  The buffer's position 
+	 * is not changed.  The buffer must not be modified or reused until the returned stage completes.
+	 * @param lookup The lookup that creates the response to the request.  The lookup is started on the calling thread if no identical 
+	 * request is in flight.
+	 * @return A stage that completes with the response in wire format, or null if no response should be sent.
+	 */
+	public CompletionStage<byte[]> execute(DNSQueryKey key, ByteBuffer request, Lookup lookup)
+	{
+		final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+		final CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, future);
+		
+		if (existing == null)
+		{
+			lookupCount.incrementAndGet();
+			start(lookup).whenComplete((response, e) ->
+			{
+				inFlight.remove(key, future);
+				if (e != null)
+					future.completeExceptionally(e);
+				else
+					future.complete(response);
+			});
+			
+			return future;
+		}
+		
+		return existing.<CompletionStage<byte[]>>handle((response, e) ->
+		{
+			if (e != null)
+			{
+				// the failure may have been specific to the other request, so try on our own
+				lookupCount.incrementAndGet();
+				return start(lookup);
+			}
+			
+			coalescedCount.incrementAndGet();
+			return CompletableFuture.completedFuture((response == null) ? null : DNSWireUtils.patchResponse(response, request));
+		}).thenCompose(stage -> stage);
+	}
+	
+	/*
+	 * Starts a lookup, turning a failure to start into a failed stage
+	 */
+	private static CompletionStage<byte[]> start(Lookup lookup)
+	{
+		try
+		{
+			return lookup.execute();
+		}
+		catch (RuntimeException e)
+		{
+			final CompletableFuture<byte[]> retVal = new CompletableFuture<byte[]>();
+			retVal.completeExceptionally(e);
+			return retVal;
+		}
+	}
+	
+	/**
+	 * Gets the number of lookups that were performed.
+	 * @return The number of lookups that were performed.
+	 */
+	public long getLookupCount()
+	{
+		return lookupCount.get();
+	}
+	
+	/**
+	 * Gets the number of requests that were answered by another request's lookup.
+	 * @return The number of requests that were answered by another request's lookup.
+	 */
+	public long getCoalescedCount()
+	{
+		return coalescedCount.get();
+	}
+	
+	/**
+	 * Gets the fraction of requests that were answered by another request's lookup.
+	 * @return The fraction of requests that were answered by another request's lookup, or 0 if no requests have been processed.
+	 */
+	public double getCoalesceRatio()
+	{
+		final long coalesced = coalescedCount.get();
+		final long total = coalesced + lookupCount.get();
+		
+		return (total == 0) ? 0 : (double)coalesced / total;
+	}
+}
@@ -18,12 +18,24 @@ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
 package org.nhindirect.dns;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 
+import org.xbill.DNS.DNSInput;
+import org.xbill.DNS.ExtendedFlags;
 import org.xbill.DNS.Flags;
 import org.xbill.DNS.Header;
 import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.OPTRecord;
 import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
 import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+import org.xbill.DNS.WireParseException;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -36,8 +48,21 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public abstract class DNSResponder
 {
+	/**
+	 * The highest EDNS version supported by the responder.
+	 * 
+	 * @since 8.2.0
+	 */
+	public static final int EDNS_VERSION = 0;
+	
 	protected DNSServerSettings settings;
 	protected DNSStore store;
+	protected DNSResponseCache responseCache;
+	protected DNSRequestCoalescer requestCoalescer;
+	protected DNSQueryLog queryLog;
+	
+	// queries are parsed on the server's worker threads, so each thread reuses its own query
+	private final ThreadLocal<DNSQuery> queries = ThreadLocal.withInitial(DNSQuery::new);
 
 	/**
 	 * Creates a DNS responder using the provided settings and DNS store.  The responder will not handle requests
@@ -50,8 +75,36 @@ public abstract class DNSResponder
 	{
 		this.settings = settings;
 		this.store = store;
+		
+		if (settings.getResponseCacheSize() > 0)
+			responseCache = new DNSResponseCache(settings.getResponseCacheSize(), settings.getResponseCacheMaxTTL());
+		
+		if (settings.isRequestCoalescing())
+			requestCoalescer = new DNSRequestCoalescer();
 	}
 
+	/**
+	 * Sets the log that received queries are written to.
+	 * @param queryLog The query log, or null if queries are not logged.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setQueryLog(DNSQueryLog queryLog)
+	{
+		this.queryLog = queryLog;
+	}
+	
+	/**
+	 * Gets the log that received queries are written to.
+	 * @return The query log, or null if queries are not logged.
+	 * 
+	 * @since 8.2.0
+	 */
+	public DNSQueryLog getQueryLog()
+	{
+		return queryLog;
+	}
+	
 	/**
 	 * Starts the responder.  Concrete implementation bind their protocol specific handlers and start accepting DNS requests.
 	 * @throws DNSException
@@ -98,17 +151,43 @@ public abstract class DNSResponder
 		if (request == null)
 			throw new IllegalArgumentException("Missing request.  Request cannot be null.");
 
-		Message response;
+		final Record question = request.getQuestion();
+		if (question != null)
+		{
+			if (queryLog != null)
+				queryLog.log(question.getName(), question.getDClass(), question.getType());
+			else if (log.isInfoEnabled())
+				logQuery(question.getName(), question.getType());
+		}
+		
+		final OPTRecord requestOPT = request.getOPT();
+		if (requestOPT != null && requestOPT.getVersion() > EDNS_VERSION)
+			return processError(request, DNSError.newError(Rcode.BADVERS));
+		
 		try
 		{
-			response = store.get(request);
-            if (response == null || response.getHeader() == null)
-            {
-
-            	response = processError(request, DNSError.newError(Rcode.NXDOMAIN));
-            }
-            else if (response.getHeader().getRcode() != Rcode.NOERROR)
-            	response = processError(request, DNSError.newError(response.getHeader().getRcode()));
+			final Message response = queryStore(request);
+			final int rcode = getRcode(response);
+			if (!isAnswer(response, rcode))
+				return processError(request, DNSError.newError(rcode));
+			
+			setResponseOPT(request, response, rcode);
+			return response;
+		}
+		catch (DNSException e)
+		{
+			return processError(request, e.getError());
+		}
+	}
+	
+	/*
+	 * Gets the store's response to a request, logging any errors other than unsupported queries
+	 */
+	private Message queryStore(Message request) throws DNSException
+	{
+		try
+		{
+			return store.get(request);
 		}
 		catch (DNSException e)
 		{
@@ -117,12 +196,282 @@ public abstract class DNSResponder
 			{
 				log.error("Error processing DNS request: " + e.getMessage(), e);
 			}
-			response = processError(request, e.getError());
+			throw e;
 		}
-
-		return response;
+	}
+	
+	/*
+	 * Response code of a store response... no response means the name does not exist
+	 */
+	private static int getRcode(Message response)
+	{
+		return (response == null || response.getHeader() == null) ? Rcode.NXDOMAIN : response.getHeader().getRcode();
+	}
+	
+	/*
+	 * Successful responses and negative responses built by the store, which carry the zone's SOA record, are sent as is.  Everything
+	 * else is turned into a bare error response.
+	 */
+	private static boolean isAnswer(Message response, int rcode)
+	{
+		return response != null && (rcode == Rcode.NOERROR || rcode == Rcode.NXDOMAIN);
+	}
+	
+	/*
+	 * Numeric response code of an error
+	 */
+	private static int getRcode(DNSError<?> error)
+	{
+		final Object rcode = error.getError();
+		return (rcode instanceof Number) ? ((Number)rcode).intValue() : Integer.parseInt(rcode.toString());
 	}
 
+	/**
+	 * Processes a DNS request in raw wire protocol format and returns the response in raw wire protocol format.  The header and question
+	 * are first read directly from the buffer, and malformed requests are dropped and unsupported requests are rejected without building 
+	 * a request message.  If the response cache is enabled, cached responses are returned without building or serializing a response message, 
+	 * and new cacheable responses are added to the cache.  If request coalescing is enabled, identical requests that arrive while a lookup
+	 * is in flight share its response.
+	 * @param request The raw DNS wire protocol format of the request.  The request starts at the buffer's position and ends at its limit.  
+	 * The buffer's position is not changed.
+	 * @param udp Indicates if the response will be sent over UDP and must be limited to {@link #getMaxUDPResponseSize(Message)}.
+	 * @return The raw DNS wire protocol format of the response, or null if no response should be sent.
+	 * @throws DNSException If the request cannot be parsed.
+	 * 
+	 * @since 8.2.0
+	 */
+	public byte[] processRequest(ByteBuffer request, boolean udp) throws DNSException
+	{
+		try
+		{
+			return processRequestAsync(request, udp).toCompletableFuture().get();
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof DNSException)
+				throw (DNSException)e.getCause();
+			
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failed to process request: " + e.getCause().getMessage(), e);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Interrupted processing request.", e);
+		}
+	}
+	
+	/**
+	 * Asynchronously processes a DNS request in raw wire protocol format.  Requests that can be answered without the DNS store, such as
+	 * malformed, unsupported, and cached requests, complete before the method returns.  All other requests complete when the store's
+	 * {@link DNSStore#getAsync(Message)} lookup completes, so the calling thread is not held for the duration of the lookup.
+	 * @param request The raw DNS wire protocol format of the request.  The request starts at the buffer's position and ends at its limit.  
+	 * The buffer's position is not changed.  The buffer must not be modified or reused until the returned stage completes.
+	 * @param udp Indicates if the response will be sent over UDP and must be limited to {@link #getMaxUDPResponseSize(Message)}.
+	 * @return A stage that completes with the raw DNS wire protocol format of the response, or null if no response should be sent.  The stage 
+	 * completes exceptionally with a {@link DNSException} if the request cannot be parsed.
+	 * 
+	 * @since 8.2.0
+	 */
+	public CompletionStage<byte[]> processRequestAsync(ByteBuffer request, boolean udp)
+	{
+    	if (request.remaining() <= 0 || request.remaining() > settings.getMaxRequestSize())
+    		return failedStage(new DNSException(DNSError.newError(Rcode.REFUSED), "Invalid request size " + request.remaining()));
+		
+		final DNSQuery query = queries.get();
+		try
+		{
+			if (!query.parse(request))
+				return failedStage(new DNSException(DNSError.newError(Rcode.FORMERR), "Malformed request header or question."));
+			
+			// never answer a response
+			if (query.isResponse())
+				return CompletableFuture.completedFuture(null);
+			
+			if (queryLog != null)
+				queryLog.log(query, request);
+			else if (log.isInfoEnabled())
+				logQuery(request, query);
+			
+			if (!store.isSupportedQuery(query.getOpcode(), query.getType(), query.getDClass()))
+				return CompletableFuture.completedFuture(createErrorResponse(request, query, Rcode.NOTIMP));
+			
+			// anything beyond a plain question and OPT record, such as a TSIG record, needs the full message
+			if (!query.isSimple())
+				return processFullRequest(request, udp, null);
+			
+			if (query.isEDNS() && query.getEDNSVersion() > EDNS_VERSION)
+				return CompletableFuture.completedFuture(createErrorResponse(request, query, Rcode.BADVERS));
+			
+			final DNSQueryKey key = DNSQueryKey.create(query, udp ? getMaxUDPResponseSize(query) : 0);
+			if (key == null)
+				return processFullRequest(request, udp, null);
+			
+			if (responseCache != null)
+			{
+				final byte[] cached = responseCache.get(key, request);
+				if (cached != null)
+					return CompletableFuture.completedFuture(cached);
+			}
+			
+			if (requestCoalescer != null)
+				return requestCoalescer.execute(key, request, () -> processFullRequest(request, udp, key));
+			
+			return processFullRequest(request, udp, key);
+		}
+		finally
+		{
+			query.clear();
+		}
+	}
+	
+	/*
+	 * Builds the full request message and asynchronously processes it.  Error responses are written directly from the request bytes, and 
+	 * successful responses are cached if the request's key is provided.
+	 */
+	private CompletionStage<byte[]> processFullRequest(ByteBuffer request, boolean udp, DNSQueryKey key)
+	{
+		final Message msg;
+		try
+		{
+			msg = toMessage(request);
+		}
+		catch (DNSException e)
+		{
+			return failedStage(e);
+		}
+		
+		final OPTRecord requestOPT = msg.getOPT();
+		if (requestOPT != null && requestOPT.getVersion() > EDNS_VERSION)
+			return CompletableFuture.completedFuture(createErrorResponse(request, requestOPT, Rcode.BADVERS));
+		
+		return queryStoreAsync(msg).handle((response, e) ->
+		{
+			final int rcode = (e == null) ? getRcode(response) : getRcode(e);
+			if (e != null || !isAnswer(response, rcode))
+				return createErrorResponse(request, requestOPT, rcode);
+			
+			setResponseOPT(msg, response, rcode);
+			
+			final int maxLength = udp ? getMaxUDPResponseSize(msg) : 0;
+			final byte[] wire = (maxLength > 0) ? response.toWire(maxLength) : response.toWire();
+			
+			if (responseCache != null && key != null)
+				responseCache.put(key, response, wire);
+			
+			return wire;
+		});
+	}
+	
+	/*
+	 * Asynchronously gets the store's response to a request, logging any errors other than unsupported queries
+	 */
+	private CompletionStage<Message> queryStoreAsync(Message request)
+	{
+		CompletionStage<Message> retVal;
+		try
+		{
+			retVal = store.getAsync(request);
+		}
+		catch (RuntimeException e)
+		{
+			retVal = failedStage(e);
+		}
+		
+		return retVal.whenComplete((response, e) -> 
+		{
+			final Throwable cause = unwrap(e);
+			// don't log as an error if it's just a non implemented query type
+			if (cause instanceof DNSException && ((DNSException)cause).getError().getError().equals(Rcode.NOTIMP))
+				return;
+			
+			if (cause != null)
+				log.error("Error processing DNS request: " + cause.getMessage(), cause);
+		});
+	}
+	
+	/*
+	 * Logs a query at INFO when no query log is configured, so deployments without a query log keep their per query logging
+	 */
+	private void logQuery(Name name, int type)
+	{
+		log.info("Process record for DNS request type " + Type.string(type) + " and name " + name);
+	}
+	
+	private void logQuery(ByteBuffer request, DNSQuery query)
+	{
+		final ByteBuffer question = request.duplicate();
+		question.position(request.position() + DNSWireUtils.HEADER_LENGTH);
+		try
+		{
+			logQuery(new Name(new DNSInput(question)), query.getType());
+		}
+		catch (WireParseException e) {/* the question was already parsed, so this can't happen */}
+	}
+	
+	/*
+	 * Response code of a failed store lookup
+	 */
+	private static int getRcode(Throwable e)
+	{
+		final Throwable cause = unwrap(e);
+		return (cause instanceof DNSException) ? getRcode(((DNSException)cause).getError()) : Rcode.SERVFAIL;
+	}
+	
+	/*
+	 * Stages that are completed by other stages wrap their failures
+	 */
+	private static Throwable unwrap(Throwable e)
+	{
+		return (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+	}
+	
+	private static <T> CompletionStage<T> failedStage(Throwable e)
+	{
+		final CompletableFuture<T> retVal = new CompletableFuture<T>();
+		retVal.completeExceptionally(e);
+		return retVal;
+	}
+	
+	/*
+	 * Creates an error response directly from the request's wire format, with an OPT record if the request has one
+	 */
+	private byte[] createErrorResponse(ByteBuffer request, DNSQuery query, int rcode)
+	{
+		return DNSWireUtils.createErrorResponse(request, rcode, query.isEDNS() ? settings.getMaxUDPPayloadSize() : 0, 
+				query.isEDNS() && query.isDNSSECOK());
+	}
+	
+	/*
+	 * Same as createErrorResponse(ByteBuffer, DNSQuery, int) for a request that was fully parsed
+	 */
+	private byte[] createErrorResponse(ByteBuffer request, OPTRecord requestOPT, int rcode)
+	{
+		return DNSWireUtils.createErrorResponse(request, rcode, (requestOPT != null) ? settings.getMaxUDPPayloadSize() : 0, 
+				requestOPT != null && (requestOPT.getFlags() & ExtendedFlags.DO) != 0);
+	}
+	
+	/**
+	 * Gets the coalescer that merges identical concurrent requests into a single lookup.
+	 * @return The request coalescer, or null if request coalescing is disabled.
+	 * 
+	 * @since 8.2.0
+	 */
+	public DNSRequestCoalescer getRequestCoalescer()
+	{
+		return requestCoalescer;
+	}
+	
+	/**
+	 * Gets the response cache.
+	 * @return The response cache, or null if the cache is disabled.
+	 * 
+	 * @since 8.2.0
+	 */
+	public DNSResponseCache getResponseCache()
+	{
+		return responseCache;
+	}
+	
 	/**
 	 * Processes a DNS error condition and creates an appropriate DNS response.
 	 * @param request The original DNS request.
@@ -131,30 +480,79 @@ public abstract class DNSResponder
 	 */
     protected Message processError(Message request, DNSError<?> error)
     {
-    	Message errorResponse = null;
-    	try
-    	{
-    		Header respHeader = new Header(request.toWire());
-    		Message response = new Message();
-    		response.setHeader(respHeader);
-
-    		for (int i = 0; i < 4; i++)
-    			response.removeAllRecords(i);
-
-    		response.addRecord(request.getQuestion(), Section.QUESTION);
-
-            response.getHeader().setFlag(Flags.QR);
-        	if (request.getHeader().getFlag(Flags.RD))
-        		response.getHeader().setFlag(Flags.RD);
-    		respHeader.setRcode(Integer.parseInt(error.getError().toString()));
-
-    		return response;
-    	}
-    	catch (IOException e) {}
+    	final Header requestHeader = request.getHeader();
+    	final Message response = new Message(requestHeader.getID());
+    	final Header respHeader = response.getHeader();
+    	
+    	respHeader.setOpcode(requestHeader.getOpcode());
+    	respHeader.setFlag(Flags.QR);
+    	if (requestHeader.getFlag(Flags.RD))
+    		respHeader.setFlag(Flags.RD);
+    	
+    	final Record question = request.getQuestion();
+    	if (question != null)
+    		response.addRecord(question, Section.QUESTION);
+    	
+    	// extended response codes carry their upper bits in the OPT record
+    	final int rcode = getRcode(error);
+    	respHeader.setRcode(rcode & 0xF);
+    	setResponseOPT(request, response, rcode);
 
-    	return errorResponse;
+    	return response;
     }
 
+    /**
+     * Sets the EDNS0 OPT record of a response.  If the request holds an OPT record, the response gets an OPT record that advertises 
+     * the server's maximum UDP payload size, holds the upper bits of the response code, and echoes the request's DO flag.  Otherwise any 
+     * OPT record in the response is removed, as a client that does not use EDNS0 must not receive one.
+     * @param request The DNS request.
+     * @param response The DNS response.
+     * @param rcode The full response code, including any extended response code bits.
+     * 
+     * @since 8.2.0
+     */
+    protected void setResponseOPT(Message request, Message response, int rcode)
+    {
+    	// the store may have copied an OPT record from the request or an upstream server
+    	final OPTRecord responseOPT = response.getOPT();
+    	if (responseOPT != null)
+    		response.removeRecord(responseOPT, Section.ADDITIONAL);
+    	
+    	final OPTRecord requestOPT = request.getOPT();
+    	if (requestOPT != null)
+    		response.addRecord(new OPTRecord(settings.getMaxUDPPayloadSize(), rcode >>> 4, EDNS_VERSION, 
+    				requestOPT.getFlags() & ExtendedFlags.DO), Section.ADDITIONAL);
+    }
+    
+    /**
+     * Gets the largest response in bytes that may be sent to the client over UDP.  Clients that advertise an EDNS0 buffer size
+     * may receive up to the smaller of their buffer size and {@link DNSServerSettings#getMaxUDPPayloadSize()}.  All other clients
+     * are limited to 512 bytes.
+     * @param request The DNS request.  May be null if the request could not be parsed.
+     * @return The largest response in bytes that may be sent to the client over UDP.
+     * 
+     * @since 8.2.0
+     */
+    public int getMaxUDPResponseSize(Message request)
+    {
+    	final OPTRecord requestOPT = (request == null) ? null : request.getOPT();
+    	if (requestOPT == null)
+    		return DNSServerSettings.MIN_UDP_PAYLOAD_SIZE;
+    	
+    	return Math.max(DNSServerSettings.MIN_UDP_PAYLOAD_SIZE, Math.min(requestOPT.getPayloadSize(), settings.getMaxUDPPayloadSize()));
+    }
+    
+    /*
+     * Same as getMaxUDPResponseSize(Message) for a request that was read directly from its wire format
+     */
+    private int getMaxUDPResponseSize(DNSQuery query)
+    {
+    	if (!query.isEDNS())
+    		return DNSServerSettings.MIN_UDP_PAYLOAD_SIZE;
+    	
+    	return Math.max(DNSServerSettings.MIN_UDP_PAYLOAD_SIZE, Math.min(query.getEDNSPayloadSize(), settings.getMaxUDPPayloadSize()));
+    }
+    
     /**
      * Converts a raw DNS wire protocol format message to a Message structure.
      * @param buffer The raw DNS wire protocol format.
@@ -176,6 +574,30 @@ public abstract class DNSResponder
     	}
     }
 
+    /**
+     * Converts the remaining bytes of a buffer in raw DNS wire protocol format to a Message structure.  Only the bytes between the
+     * buffer's position and limit are parsed.  The buffer's position is not changed.
+     * @param buffer The buffer holding the raw DNS wire protocol format.
+     * @return A Message object converted from the buffer.
+     * @throws DNSException
+     * 
+     * @since 8.2.0
+     */
+    protected Message toMessage(ByteBuffer buffer) throws DNSException
+    {
+    	if (buffer.remaining() <= 0 || buffer.remaining() > settings.getMaxRequestSize())
+    		throw new DNSException(DNSError.newError(Rcode.REFUSED), "Invalid request size " + buffer.remaining());
+
+    	try
+    	{
+    		return new Message(buffer.duplicate());
+    	}
+    	catch (IOException e)
+    	{
+    		throw new DNSException(DNSError.newError(Rcode.FORMERR), "Failed to deserialize raw byte message.");
+    	}
+    }
+    
     /**
      * Converts a Message object to a raw DNS wire format byte array.
      * @param msg The message to convert.
@@ -17,15 +17,19 @@ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
 
 package org.nhindirect.dns;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * UDP/IP implementation of the {@link DNSReponser) interface.  The responder binds to the addresses and port
- * provided in the {@link DNSServerSettings} object.
+ * provided in the {@link DNSServerSettings} object and runs an independent socket server for each address.  The socket servers
+ * are created by the {@link DNSTransportProvider} selected in the settings.
  * @author Greg Meyer
  * @since 1.0
  */
 public class DNSResponderUDP extends DNSResponder
 {
-	private final DNSSocketServer socketServer;
+	private final List<DNSSocketServer> socketServers;
 	
 	/**
 	 * {@inheritDoc}}
@@ -33,7 +37,11 @@ public class DNSResponderUDP extends DNSResponder
 	public DNSResponderUDP(DNSServerSettings settings, DNSStore store) throws DNSException
 	{
 		super(settings, store);
-		socketServer = new UDPServer(settings, this);
+		
+		final DNSTransportProvider transport = DNSTransportProviders.getProvider(settings.getTransport());
+		socketServers = new ArrayList<DNSSocketServer>();
+		for (String bindAddress : settings.getBindAddresses())
+			socketServers.add(transport.createUDPServer(settings, this, bindAddress));
 	}
 
 	
@@ -43,7 +51,8 @@ public class DNSResponderUDP extends DNSResponder
 	@Override
 	public void start() throws DNSException 
 	{
-		socketServer.start();
+		for (DNSSocketServer socketServer : socketServers)
+			socketServer.start();
 	}
 
 	
@@ -53,6 +62,7 @@ public class DNSResponderUDP extends DNSResponder
 	@Override
 	public void stop() throws DNSException 
 	{
-		socketServer.stop();
+		for (DNSSocketServer socketServer : socketServers)
+			socketServer.stop();
 	}	
 }
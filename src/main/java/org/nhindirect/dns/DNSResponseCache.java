@@ -0,0 +1,182 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+/**
+ * Cache of fully serialized DNS responses.  Responses are keyed by {@link DNSQueryKey}, so a cached response is byte for byte what the 
+ * store and serializer would have produced for the request.  On a hit the cached bytes are copied and only the message ID, the RD flag, 
+ * and the case of the question name are rewritten to match the request.
+ * <p>
+ * Entries expire after the smallest TTL of the records in the response, bounded by a configurable maximum, and the total size of the cached 
+ * responses is bounded by a byte limit.  The least recently used responses are evicted first, and expired responses are removed when they
+ * are next looked up or when they are evicted.  Only successful and NXDOMAIN responses that hold at least one record are cached.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSResponseCache 
+{
+	// rough per entry overhead of the key, entry, and map node
+	private static final int ENTRY_OVERHEAD = 128;
+	
+	// smallest share of the byte limit given to a segment of the cache
+	private static final long MIN_SEGMENT_BYTES = 64 * 1024;
+	
+	private final long maxTTLNanos;
+	
+	private final DNSLRUMap<DNSQueryKey, CacheEntry> entries;
+	private final AtomicLong hitCount;
+	private final AtomicLong missCount;
+	
+	/**
+	 * Creates a response cache.
+	 * @param maxBytes The maximum total size in bytes of the cached responses.
+	 * @param maxTTL The maximum time in seconds that a response is cached, regardless of the TTLs of its records.
+	 */
+	public DNSResponseCache(long maxBytes, int maxTTL)
+	{
+		this.maxTTLNanos = TimeUnit.SECONDS.toNanos(maxTTL);
+		
+		entries = new DNSLRUMap<DNSQueryKey, CacheEntry>(maxBytes, MIN_SEGMENT_BYTES, entry -> entry.size);
+		hitCount = new AtomicLong(0);
+		missCount = new AtomicLong(0);
+	}
+	
+	/**
+	 * Gets the cached response to a request.
+	 * @param key The key of the request.
+	 * @param request The request in wire format.  The request starts at the buffer's position and ends at its limit.  The buffer's position is not changed.
+	 * @return A copy of the cached response patched to match the request, or null if no response is cached.
+	 */
+	public byte[] get(DNSQueryKey key, ByteBuffer request)
+	{
+		final CacheEntry entry = entries.get(key);
+		if (entry == null)
+		{
+			missCount.incrementAndGet();
+			return null;
+		}
+		
+		if (entry.expiresAt - System.nanoTime() <= 0)
+		{
+			entries.remove(key, entry);
+			missCount.incrementAndGet();
+			return null;
+		}
+		
+		final byte[] response = DNSWireUtils.patchResponse(entry.wire, request);
+		if (response == null)
+		{
+			missCount.incrementAndGet();
+			return null;
+		}
+		
+		hitCount.incrementAndGet();
+		return response;
+	}
+	
+	/**
+	 * Caches the response to a request if the response is cacheable.
+	 * @param key The key of the request.
+	 * @param response The response to the request.
+	 * @param wire The response in wire format.
+	 */
+	public void put(DNSQueryKey key, Message response, byte[] wire)
+	{
+		final int rcode = response.getRcode();
+		if (rcode != Rcode.NOERROR && rcode != Rcode.NXDOMAIN)
+			return;
+		
+		final long ttl = getMinTTL(response);
+		if (ttl <= 0)
+			return;
+		
+		// responses that are too large for the cache are not added
+		entries.put(key, new CacheEntry(wire, System.nanoTime() + Math.min(TimeUnit.SECONDS.toNanos(ttl), maxTTLNanos)));
+	}
+	
+	/**
+	 * Removes all cached responses.
+	 */
+	public void clear()
+	{
+		entries.clear();
+	}
+	
+	/**
+	 * Gets the number of requests answered from the cache.
+	 * @return The number of requests answered from the cache.
+	 */
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+	
+	/**
+	 * Gets the number of cacheable requests that were not found in the cache.
+	 * @return The number of cacheable requests that were not found in the cache.
+	 */
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+	
+	/**
+	 * Gets the approximate total size in bytes of the cached responses.
+	 * @return The approximate total size in bytes of the cached responses.
+	 */
+	public long getSize()
+	{
+		return entries.getWeight();
+	}
+	
+	/*
+	 * Smallest TTL of the records in the response
+	 */
+	private static long getMinTTL(Message response)
+	{
+		long minTTL = Long.MAX_VALUE;
+		for (int section : new int[] {Section.ANSWER, Section.AUTHORITY, Section.ADDITIONAL})
+			for (Record rec : response.getSection(section))
+				if (rec.getType() != Type.OPT)
+					minTTL = Math.min(minTTL, rec.getTTL());
+		
+		return (minTTL == Long.MAX_VALUE) ? 0 : minTTL;
+	}
+	
+	private static class CacheEntry
+	{
+		private final byte[] wire;
+		private final long expiresAt;
+		private final int size;
+		
+		public CacheEntry(byte[] wire, long expiresAt)
+		{
+			this.wire = wire;
+			this.expiresAt = expiresAt;
+			this.size = wire.length + ENTRY_OVERHEAD;
+		}
+	}
+}
@@ -0,0 +1,400 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xbill.DNS.Rcode;
+
+/**
+ * Response rate limiter for UDP responses as described by the DNS Response Rate Limiting (RRL) technique.  UDP source addresses are easily
+ * spoofed, and responses such as ANY and CERT answers can be many times larger than the request, so an unlimited server can be used to reflect 
+ * and amplify traffic towards a victim.  The limiter caps the rate of identical responses sent to a single client network.
+ * <p>
+ * Each response is assigned to a token bucket keyed by the client's network prefix (a /24 for IPv4 and a /56 for IPv6 by default) and the 
+ * response's identity.  The identity of a positive or NODATA response is its question name and type, the identity of an NXDOMAIN response is
+ * the zone named by its SOA record so that random sub domains share a bucket, and all other errors to a client network share a single bucket. 
+ * When a bucket is empty the response is either dropped or slipped: a slipped response is a truncated response that carries only the header
+ * and question with the TC flag set, which is too small to amplify anything but still tells a legitimate client to retry over TCP.
+ * <p>
+ * Buckets live in a fixed size table that is allocated once and is split into small sets.  A key can live in any bucket of the set it hashes
+ * to, and a set is kept in most recently used order, so a key that is not in its set replaces the least recently used bucket of the set.  
+ * The new key inherits the replaced bucket's tokens rather than a full bucket, so keys that collide cannot refill each other's buckets by
+ * taking turns.  Keys are hashed with a random seed chosen when the limiter is created so that colliding keys cannot be predicted. 
+ * The table never grows, checking a response does not allocate any bucket state, and the sets are guarded by striped locks.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSResponseRateLimiter
+{
+	/**
+	 * The action to take for a response.
+	 * @author Greg Meyer
+	 * @since 8.2.0
+	 */
+	public enum Action
+	{
+		/**
+		 * The response is within the rate limit and is sent.
+		 */
+		SEND,
+		
+		/**
+		 * The response is over the rate limit and is dropped.
+		 */
+		DROP,
+		
+		/**
+		 * The response is over the rate limit and a truncated response is sent in its place.
+		 */
+		SLIP;
+	}
+	
+	private static final int NUM_STRIPES = 64;
+	
+	// buckets per set
+	private static final int NUM_WAYS = 4;
+	
+	// tokens are held in thousandths of a response so that buckets can be refilled with millisecond precision
+	private static final long TOKEN_SCALE = 1000;
+	
+	private static final int MAX_COMPRESSION_POINTERS = 16;
+	
+	private static final int IDENTITY_ANSWER = 1;
+	private static final int IDENTITY_NODATA = 2;
+	private static final int IDENTITY_NXDOMAIN = 3;
+	private static final int IDENTITY_ERROR = 4;
+	
+	private final int responsesPerSecond;
+	private final int slip;
+	private final int ipv4Mask;
+	private final int ipv6PrefixLength;
+	private final long capacity;
+	
+	private final long hashSeed;
+	private final long hashMultiplier;
+	
+	private final int setMask;
+	private final long[] keys;
+	private final long[] tokens;
+	private final long[] refillTimes;
+	private final int[] limitedCounts;
+	private final Object[] stripes;
+	
+	private final AtomicLong droppedCount = new AtomicLong(0);
+	private final AtomicLong slippedCount = new AtomicLong(0);
+	
+	/**
+	 * Creates a response rate limiter from server settings.
+	 * @param settings The server settings holding the response rate limiting configuration.
+	 */
+	public DNSResponseRateLimiter(DNSServerSettings settings)
+	{
+		this(settings.getResponseRateLimit(), settings.getResponseRateLimitSlip(), settings.getResponseRateLimitTableSize(),
+				settings.getResponseRateLimitIPv4PrefixLength(), settings.getResponseRateLimitIPv6PrefixLength());
+	}
+	
+	/**
+	 * Creates a response rate limiter.
+	 * @param responsesPerSecond The number of identical responses per second sent to a single client network.  This is also the size of
+	 * the burst allowed after a quiet period.
+	 * @param slip The slip interval.  Every Nth limited response is slipped, or none if the interval is 0.
+	 * @param tableSize The number of buckets in the table.  The size is rounded up to a power of two.
+	 * @param ipv4PrefixLength The prefix length used to group IPv4 clients.
+	 * @param ipv6PrefixLength The prefix length used to group IPv6 clients.
+	 */
+	public DNSResponseRateLimiter(int responsesPerSecond, int slip, int tableSize, int ipv4PrefixLength, int ipv6PrefixLength)
+	{
+		if (responsesPerSecond <= 0)
+			throw new IllegalArgumentException("Responses per second must be greater than 0");
+		if (ipv4PrefixLength < 0 || ipv4PrefixLength > 32)
+			throw new IllegalArgumentException("IPv4 prefix length must be between 0 and 32");
+		if (ipv6PrefixLength < 0 || ipv6PrefixLength > 128)
+			throw new IllegalArgumentException("IPv6 prefix length must be between 0 and 128");
+		
+		this.responsesPerSecond = responsesPerSecond;
+		this.slip = Math.max(slip, 0);
+		this.ipv4Mask = (ipv4PrefixLength == 0) ? 0 : -1 << (32 - ipv4PrefixLength);
+		this.ipv6PrefixLength = ipv6PrefixLength;
+		this.capacity = responsesPerSecond * TOKEN_SCALE;
+		
+		final Random random = new SecureRandom();
+		this.hashSeed = random.nextLong();
+		// an odd multiplier keeps every step of the name hash reversible
+		this.hashMultiplier = random.nextLong() | 1;
+		
+		int size = NUM_STRIPES * NUM_WAYS;
+		while (size < tableSize && size < (1 << 30))
+			size <<= 1;
+		
+		setMask = size / NUM_WAYS - 1;
+		keys = new long[size];
+		tokens = new long[size];
+		refillTimes = new long[size];
+		limitedCounts = new int[size];
+		
+		stripes = new Object[NUM_STRIPES];
+		for (int i = 0; i < NUM_STRIPES; ++i)
+			stripes[i] = new Object();
+	}
+	
+	/**
+	 * Checks a response against the rate limit and takes a token from the response's bucket.
+	 * @param client The address of the client the response will be sent to.
+	 * @param response The response in wire format.
+	 * @return The action to take for the response.
+	 */
+	public Action check(InetAddress client, byte[] response)
+	{
+		if (client == null || response.length < DNSWireUtils.HEADER_LENGTH)
+			return Action.SEND;
+		
+		long key = mix(hashSeed ^ (getClientHash(client) * hashMultiplier + getResponseIdentityHash(response)));
+		// 0 marks an unused bucket
+		if (key == 0)
+			key = 1;
+		
+		final int set = (int)(key ^ (key >>> 32)) & setMask;
+		final int first = set * NUM_WAYS;
+		final long now = getCurrentTime();
+		
+		synchronized (stripes[set & (NUM_STRIPES - 1)])
+		{
+			int way = 0;
+			while (way < NUM_WAYS - 1 && keys[first + way] != key)
+				++way;
+			
+			// the bucket for the key is always at the front of the set from here on
+			final int slot = first;
+			if (keys[first + way] == key)
+			{
+				moveToFront(first, way);
+				tokens[slot] = refill(slot, now);
+			}
+			else
+			{
+				// replace the least recently used bucket, keeping whatever it has refilled to
+				moveToFront(first, NUM_WAYS - 1);
+				tokens[slot] = (keys[slot] == 0) ? capacity : refill(slot, now);
+				keys[slot] = key;
+				limitedCounts[slot] = 0;
+			}
+			
+			refillTimes[slot] = now;
+			
+			if (tokens[slot] >= TOKEN_SCALE)
+			{
+				tokens[slot] -= TOKEN_SCALE;
+				return Action.SEND;
+			}
+			
+			++limitedCounts[slot];
+			if (slip > 0 && limitedCounts[slot] % slip == 0)
+			{
+				slippedCount.incrementAndGet();
+				return Action.SLIP;
+			}
+		}
+		
+		droppedCount.incrementAndGet();
+		return Action.DROP;
+	}
+	
+	/*
+	 * Gets the tokens of a bucket refilled up to the current time
+	 */
+	private long refill(int slot, long now)
+	{
+		return Math.min(capacity, tokens[slot] + Math.max(now - refillTimes[slot], 0) * responsesPerSecond);
+	}
+	
+	/*
+	 * Moves a bucket to the front of its set, shifting the more recently used buckets back by one
+	 */
+	private void moveToFront(int first, int way)
+	{
+		if (way == 0)
+			return;
+		
+		final int slot = first + way;
+		final long key = keys[slot];
+		final long slotTokens = tokens[slot];
+		final long refillTime = refillTimes[slot];
+		final int limitedCount = limitedCounts[slot];
+		
+		System.arraycopy(keys, first, keys, first + 1, way);
+		System.arraycopy(tokens, first, tokens, first + 1, way);
+		System.arraycopy(refillTimes, first, refillTimes, first + 1, way);
+		System.arraycopy(limitedCounts, first, limitedCounts, first + 1, way);
+		
+		keys[first] = key;
+		tokens[first] = slotTokens;
+		refillTimes[first] = refillTime;
+		limitedCounts[first] = limitedCount;
+	}
+	
+	/**
+	 * Gets the number of responses that were dropped because they were over the rate limit.
+	 * @return The number of dropped responses.
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+	
+	/**
+	 * Gets the number of responses that were replaced with a truncated response because they were over the rate limit.
+	 * @return The number of slipped responses.
+	 */
+	public long getSlippedCount()
+	{
+		return slippedCount.get();
+	}
+	
+	/**
+	 * Gets the current time in milliseconds used to refill buckets.  The time only needs to be monotonic.
+	 * @return The current time in milliseconds.
+	 */
+	protected long getCurrentTime()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+	
+	/*
+	 * Hashes the network prefix of the client address
+	 */
+	private long getClientHash(InetAddress client)
+	{
+		if (client instanceof Inet4Address)
+			// the hash code of an IPv4 address is the address itself
+			return (client.hashCode() & ipv4Mask) & 0xFFFFFFFFL;
+		
+		final byte[] address = client.getAddress();
+		long hash = 17;
+		int bits = ipv6PrefixLength;
+		for (int i = 0; i < address.length && bits > 0; ++i, bits -= 8)
+		{
+			final int mask = (bits >= 8) ? 0xFF : (0xFF << (8 - bits)) & 0xFF;
+			hash = hash * 31 + (address[i] & mask);
+		}
+		
+		// keep IPv6 prefixes apart from IPv4 addresses
+		return hash * 31 + 6;
+	}
+	
+	/*
+	 * Hashes the identity of the response: the question name and type for answers and NODATA, the zone for NXDOMAIN, and the
+	 * response code for other errors
+	 */
+	private long getResponseIdentityHash(byte[] response)
+	{
+		final int rcode = DNSWireUtils.getRcode(response);
+		if (rcode != Rcode.NOERROR && rcode != Rcode.NXDOMAIN)
+			return IDENTITY_ERROR * 31 + rcode;
+		
+		final int nameEnd = skipName(response, DNSWireUtils.HEADER_LENGTH);
+		if (nameEnd < 0 || nameEnd + 2 > response.length)
+			return IDENTITY_ERROR * 31 + rcode;
+		
+		final int answerCount = DNSWireUtils.getAnswerCount(response);
+		if (rcode == Rcode.NXDOMAIN)
+		{
+			// the owner of the SOA record in the authority section names the zone
+			final int authorityCount = ((response[8] & 0xFF) << 8) | (response[9] & 0xFF);
+			final int nameStart = (answerCount == 0 && authorityCount > 0) ? nameEnd + 4 : DNSWireUtils.HEADER_LENGTH;
+			return IDENTITY_NXDOMAIN * 31 + hashName(response, nameStart);
+		}
+		
+		final int type = ((response[nameEnd] & 0xFF) << 8) | (response[nameEnd + 1] & 0xFF);
+		return (((answerCount > 0) ? IDENTITY_ANSWER : IDENTITY_NODATA) * 31 + hashName(response, DNSWireUtils.HEADER_LENGTH)) * 31 + type;
+	}
+	
+	/*
+	 * Hashes a case insensitive name starting at an offset, following compression pointers
+	 */
+	private long hashName(byte[] msg, int offset)
+	{
+		long hash = 0;
+		int pointers = 0;
+		while (offset < msg.length)
+		{
+			final int labelLength = msg[offset] & 0xFF;
+			if (labelLength == 0)
+				return hash;
+			else if ((labelLength & 0xC0) == 0xC0)
+			{
+				if (++pointers > MAX_COMPRESSION_POINTERS || offset + 1 >= msg.length)
+					return hash;
+				
+				offset = ((labelLength & 0x3F) << 8) | (msg[offset + 1] & 0xFF);
+				continue;
+			}
+			
+			hash = hash * hashMultiplier + labelLength;
+			for (int i = offset + 1; i <= offset + labelLength && i < msg.length; ++i)
+			{
+				int b = msg[i] & 0xFF;
+				if (b >= 'A' && b <= 'Z')
+					b += 'a' - 'A';
+				hash = hash * hashMultiplier + b;
+			}
+			
+			offset += labelLength + 1;
+		}
+		
+		return hash;
+	}
+	
+	/*
+	 * Finds the offset of the first byte after a name, or -1 if the name is malformed
+	 */
+	private static int skipName(byte[] msg, int offset)
+	{
+		while (offset < msg.length)
+		{
+			final int labelLength = msg[offset] & 0xFF;
+			if (labelLength == 0)
+				return offset + 1;
+			else if ((labelLength & 0xC0) == 0xC0)
+				return offset + 2;
+			else if (labelLength > 63)
+				return -1;
+			
+			offset += labelLength + 1;
+		}
+		
+		return -1;
+	}
+	
+	/*
+	 * Spreads the bits of a key across the table
+	 */
+	private static long mix(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		key *= 0xC4CEB9FE1A85EC53L;
+		key ^= key >>> 33;
+		
+		return key;
+	}
+}
@@ -0,0 +1,76 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.util.Collection;
+
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+
+/**
+ * Immutable index of SOA records keyed by zone name.  The index is built once and then published to readers, so lookups need no locking.
+ * Zones are held in a {@link DNSNameTrie}, so lookups are case insensitive and take one step per label of the query name.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSSOAIndex
+{
+	private final DNSNameTrie<Record> soaRecords = new DNSNameTrie<>();
+	private final long createTime;
+	
+	/**
+	 * Creates an index from a collection of SOA records.
+	 * @param records The SOA records.  Each record is indexed under its owner name.
+	 */
+	public DNSSOAIndex(Collection<Record> records)
+	{
+		if (records != null)
+		{
+			for (Record rec : records)
+				soaRecords.put(rec.getName(), rec);
+		}
+		
+		createTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Gets the SOA record of the closest zone that encloses a name, including the name itself.
+	 * @param name The absolute name.
+	 * @return The SOA record of the closest enclosing zone, or null if no indexed zone encloses the name.
+	 */
+	public Record getClosestEnclosing(Name name)
+	{
+		return soaRecords.getClosestEnclosing(name);
+	}
+	
+	/**
+	 * Gets the number of zones in the index.
+	 * @return The number of zones in the index.
+	 */
+	public int getSize()
+	{
+		return soaRecords.size();
+	}
+	
+	/**
+	 * Gets the time the index was created.
+	 * @return The time in milliseconds since the epoch that the index was created.
+	 */
+	public long getCreateTime()
+	{
+		return createTime;
+	}
+}
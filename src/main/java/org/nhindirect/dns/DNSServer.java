@@ -23,6 +23,7 @@ THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.nhindirect.dns;
 
+import java.io.File;
 import java.lang.management.ManagementFactory;
 import java.util.UUID;
 
@@ -53,6 +54,7 @@ public class DNSServer implements DNSServerMBean
 {	
 	private DNSResponder tcpResponder;
 	private DNSResponder updResponder;
+	private DNSQueryLog queryLog;
 	private CompositeData settingsData;
 	private final String dnsStoreImplName;
 	
@@ -81,6 +83,16 @@ public class DNSServer implements DNSServerMBean
 			log.error("Failed to create UDP responder: " + e.getLocalizedMessage(), e);
 		}
 
+		// both responders share a single query log
+		final String queryLogFile = settings.getQueryLogFile();
+		if (queryLogFile != null && !queryLogFile.isEmpty())
+		{
+			queryLog = new DNSQueryLog(new File(queryLogFile), settings.getQueryLogBufferSize(), settings.getQueryLogMaxFileSize(), 
+					settings.getQueryLogMaxFiles());
+			tcpResponder.setQueryLog(queryLog);
+			updResponder.setQueryLog(queryLog);
+		}
+		
 		dnsStoreImplName = store.getClass().getName();
 		
 		registerMBean(settings);
@@ -140,6 +152,9 @@ public class DNSServer implements DNSServerMBean
 	 */
 	public void start() throws DNSException
 	{
+		if (queryLog != null)
+			queryLog.start();
+		
 		tcpResponder.start();
 		updResponder.start();
 	}
@@ -152,6 +167,9 @@ public class DNSServer implements DNSServerMBean
 	{
 		tcpResponder.stop();
 		updResponder.stop();
+		
+		if (queryLog != null)
+			queryLog.stop();
 	}
 
 	/**
@@ -206,4 +224,22 @@ public class DNSServer implements DNSServerMBean
 	{
 		return dnsStoreImplName;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 */	
+	@Override
+	public Long getQueryLogCount()
+	{
+		return (queryLog == null) ? 0L : queryLog.getLoggedCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */	
+	@Override
+	public Long getQueryLogDroppedCount()
+	{
+		return (queryLog == null) ? 0L : queryLog.getDroppedCount();
+	}
 }
@@ -47,4 +47,21 @@ public interface DNSServerMBean
 	 * @return The fully qualified class name of the DNS store.
 	 */
 	public String getDNSStoreImplName();	
+	
+	/**
+	 * Gets the number of received queries written to the query log buffer.
+	 * @return The number of logged queries, or 0 if the query log is disabled.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Long getQueryLogCount();
+	
+	/**
+	 * Gets the number of received queries that were not logged because the query log buffer was full.  A high count indicates that
+	 * the query log buffer size should be increased or that the log file cannot be written fast enough.
+	 * @return The number of dropped query log entries, or 0 if the query log is disabled.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Long getQueryLogDroppedCount();
 }
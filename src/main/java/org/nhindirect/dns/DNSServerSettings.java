@@ -17,6 +17,12 @@ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
 
 package org.nhindirect.dns;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xbill.DNS.Rcode;
+
 
 /**
  * Tuning parameters for the DNS server.
@@ -29,16 +35,91 @@ package org.nhindirect.dns;
  */
 public class DNSServerSettings extends SocketServerSettings
 {
+	/**
+	 * Determines how DNS requests are executed once they have been received.
+	 * 
+	 * @since 8.2.0
+	 */
+	public enum RequestExecutionMode
+	{
+		/**
+		 * Requests are executed on a bounded pool of platform threads sized by {@link SocketServerSettings#getMaxActiveRequests()}.
+		 */
+		POOLED,
+		
+		/**
+		 * Each request is executed on its own virtual thread and {@link SocketServerSettings#getMaxActiveRequests()} limits the number
+		 * of concurrent requests.  Falls back to {@link #POOLED} if the runtime does not support virtual threads.
+		 */
+		VIRTUAL_THREAD
+	}
+	
 	private static final int DEFAULT_PORT = 53;
 	private static final String DEFAULT_BIND_ADDRESS = "0.0.0.0"; // bind to all adapters
 	public  static final int DAFAULT_MAX_REQUEST_SIZE = 1024 * 16;
 	public  static final int DAFAULT_MAX_RECONNECT_ATTEMPTS = 10;
+	public  static final int DEFAULT_UDP_RECEIVER_THREADS = Runtime.getRuntime().availableProcessors();
+	public  static final int DEFAULT_TCP_IDLE_TIMEOUT = 10000;
+	public  static final int DEFAULT_TCP_MAX_CONNECTIONS = 64;
+	public  static final int DEFAULT_TCP_MAX_PIPELINED_REQUESTS = 16;
+	public  static final int DEFAULT_TCP_MAX_REQUESTS_PER_CONNECTION = 0; // unlimited
+	public  static final int DEFAULT_RECEIVE_BUFFER_POOL_SIZE = 256;
+	public  static final RequestExecutionMode DEFAULT_REQUEST_EXECUTION_MODE = RequestExecutionMode.POOLED;
+	public  static final int DEFAULT_MAX_QUEUED_REQUESTS = 0; // no queue
+	public  static final int DEFAULT_QUEUE_TARGET_LATENCY = 5;
+	public  static final int DEFAULT_QUEUE_LATENCY_INTERVAL = 100;
+	public  static final int DEFAULT_LOAD_SHED_RESPONSE_CODE = Rcode.REFUSED;
+	public  static final int DEFAULT_MAX_UDP_PAYLOAD_SIZE = 1232; // avoids IP fragmentation on all common links
+	public  static final int MIN_UDP_PAYLOAD_SIZE = 512;
+	public  static final String DEFAULT_TRANSPORT = DefaultDNSTransportProvider.NAME;
+	public  static final int DEFAULT_IO_PROCESSOR_THREADS = Runtime.getRuntime().availableProcessors();
+	public  static final int DEFAULT_UDP_RECEIVE_BATCH_SIZE = 1; // no batching
+	public  static final long DEFAULT_RESPONSE_CACHE_SIZE = 0; // no cache
+	public  static final int DEFAULT_RESPONSE_CACHE_MAX_TTL = 300;
+	public  static final boolean DEFAULT_REQUEST_COALESCING = true;
+	public  static final int DEFAULT_RESPONSE_RATE_LIMIT = 0; // no limit
+	public  static final int DEFAULT_RESPONSE_RATE_LIMIT_SLIP = 2;
+	public  static final int DEFAULT_RESPONSE_RATE_LIMIT_TABLE_SIZE = 65536;
+	public  static final int DEFAULT_RESPONSE_RATE_LIMIT_IPV4_PREFIX_LENGTH = 24;
+	public  static final int DEFAULT_RESPONSE_RATE_LIMIT_IPV6_PREFIX_LENGTH = 56;
+	public  static final int DEFAULT_QUERY_LOG_BUFFER_SIZE = 16384;
+	public  static final long DEFAULT_QUERY_LOG_MAX_FILE_SIZE = 100L * 1024 * 1024;
+	public  static final int DEFAULT_QUERY_LOG_MAX_FILES = 5;
 	
 	
 	private int port;
 	private String bindAddress;
 	private int maxRequestSize;
 	private int maxReconnectAttempts;
+	private boolean nioUDPEnabled;
+	private int udpReceiverThreads;
+	private boolean tcpPersistentConnections;
+	private int tcpIdleTimeout;
+	private int tcpMaxConnections;
+	private int tcpMaxPipelinedRequests;
+	private int tcpMaxRequestsPerConnection;
+	private int receiveBufferPoolSize;
+	private RequestExecutionMode requestExecutionMode;
+	private int maxQueuedRequests;
+	private int queueTargetLatency;
+	private int queueLatencyInterval;
+	private int loadShedResponseCode;
+	private int maxUDPPayloadSize;
+	private String transport;
+	private int ioProcessorThreads;
+	private int udpReceiveBatchSize;
+	private long responseCacheSize;
+	private int responseCacheMaxTTL;
+	private boolean requestCoalescing;
+	private int responseRateLimit;
+	private int responseRateLimitSlip;
+	private int responseRateLimitTableSize;
+	private int responseRateLimitIPv4PrefixLength;
+	private int responseRateLimitIPv6PrefixLength;
+	private String queryLogFile;
+	private int queryLogBufferSize;
+	private long queryLogMaxFileSize;
+	private int queryLogMaxFiles;
 	
 	/**
 	 * Create default DNS server settings
@@ -50,6 +131,35 @@ public class DNSServerSettings extends SocketServerSettings
 		bindAddress = DEFAULT_BIND_ADDRESS;
 		maxRequestSize = DAFAULT_MAX_REQUEST_SIZE;
 		maxReconnectAttempts = DAFAULT_MAX_RECONNECT_ATTEMPTS;
+		nioUDPEnabled = false;
+		udpReceiverThreads = DEFAULT_UDP_RECEIVER_THREADS;
+		tcpPersistentConnections = false;
+		tcpIdleTimeout = DEFAULT_TCP_IDLE_TIMEOUT;
+		tcpMaxConnections = DEFAULT_TCP_MAX_CONNECTIONS;
+		tcpMaxPipelinedRequests = DEFAULT_TCP_MAX_PIPELINED_REQUESTS;
+		tcpMaxRequestsPerConnection = DEFAULT_TCP_MAX_REQUESTS_PER_CONNECTION;
+		receiveBufferPoolSize = DEFAULT_RECEIVE_BUFFER_POOL_SIZE;
+		requestExecutionMode = DEFAULT_REQUEST_EXECUTION_MODE;
+		maxQueuedRequests = DEFAULT_MAX_QUEUED_REQUESTS;
+		queueTargetLatency = DEFAULT_QUEUE_TARGET_LATENCY;
+		queueLatencyInterval = DEFAULT_QUEUE_LATENCY_INTERVAL;
+		loadShedResponseCode = DEFAULT_LOAD_SHED_RESPONSE_CODE;
+		maxUDPPayloadSize = DEFAULT_MAX_UDP_PAYLOAD_SIZE;
+		transport = DEFAULT_TRANSPORT;
+		ioProcessorThreads = DEFAULT_IO_PROCESSOR_THREADS;
+		udpReceiveBatchSize = DEFAULT_UDP_RECEIVE_BATCH_SIZE;
+		responseCacheSize = DEFAULT_RESPONSE_CACHE_SIZE;
+		responseCacheMaxTTL = DEFAULT_RESPONSE_CACHE_MAX_TTL;
+		requestCoalescing = DEFAULT_REQUEST_COALESCING;
+		responseRateLimit = DEFAULT_RESPONSE_RATE_LIMIT;
+		responseRateLimitSlip = DEFAULT_RESPONSE_RATE_LIMIT_SLIP;
+		responseRateLimitTableSize = DEFAULT_RESPONSE_RATE_LIMIT_TABLE_SIZE;
+		responseRateLimitIPv4PrefixLength = DEFAULT_RESPONSE_RATE_LIMIT_IPV4_PREFIX_LENGTH;
+		responseRateLimitIPv6PrefixLength = DEFAULT_RESPONSE_RATE_LIMIT_IPV6_PREFIX_LENGTH;
+		queryLogFile = null;
+		queryLogBufferSize = DEFAULT_QUERY_LOG_BUFFER_SIZE;
+		queryLogMaxFileSize = DEFAULT_QUERY_LOG_MAX_FILE_SIZE;
+		queryLogMaxFiles = DEFAULT_QUERY_LOG_MAX_FILES;
 	}
 
 	/**
@@ -72,9 +182,9 @@ public class DNSServerSettings extends SocketServerSettings
 	}
 
 	/**
-	 * Gets the IP4 addresses that the server will be bound to.  The string is comma delimited list of IP addresses.  The default is 0.0.0.0 
+	 * Gets the IPv4 and IPv6 addresses that the server will be bound to.  The string is comma delimited list of IP addresses.  The default is 0.0.0.0 
 	 * which means that the server will bind to add IP addresses available on the local machine.  
-	 * @return The IP4 addresses that the server will be bound to.
+	 * @return The IP addresses that the server will be bound to.
 	 */
 	public String getBindAddress() 
 	{
@@ -82,14 +192,40 @@ public class DNSServerSettings extends SocketServerSettings
 	}
 
 	/**
-	 * Sets the IP4 addresses that the server will be bound to.
-	 * @param bindAddress The IP4 addresses that the server will be bound to.
+	 * Sets the IPv4 and IPv6 addresses that the server will be bound to.
+	 * @param bindAddress The comma delimited list of IP addresses that the server will be bound to.
 	 */
 	public void setBindAddress(String bindAddress) 
 	{
 		this.bindAddress = bindAddress;
 	}	
 	
+	/**
+	 * Gets the individual IP addresses that the server will be bound to parsed from {@link #getBindAddress()}.  The server runs
+	 * a separate listener for each address.
+	 * @return The list of IP addresses that the server will be bound to.  The list is never empty.
+	 * 
+	 * @since 8.2.0
+	 */
+	public List<String> getBindAddresses()
+	{
+		final List<String> retVal = new ArrayList<String>();
+		if (bindAddress != null)
+		{
+			for (String address : bindAddress.split(","))
+			{
+				address = address.trim();
+				if (!address.isEmpty() && !retVal.contains(address))
+					retVal.add(address);
+			}
+		}
+		
+		if (retVal.isEmpty())
+			retVal.add(DEFAULT_BIND_ADDRESS);
+		
+		return Collections.unmodifiableList(retVal);
+	}
+	
 	/**
 	 * Gets the maximum size in bytes of a request.  The default size is 16K.
 	 * @return The maximum size in bytes of a request.
@@ -129,4 +265,677 @@ public class DNSServerSettings extends SocketServerSettings
 	{
 		this.maxReconnectAttempts = maxReconnectAttempts;
 	}
+	
+	/**
+	 * Indicates if UDP requests are received using the NIO DatagramChannel based server instead of the legacy
+	 * blocking DatagramSocket server.  The default is false.
+	 * @return True if the NIO UDP server is used.  False otherwise.
+	 * 
+	 * @since 8.2.0
+	 */
+	public boolean isNIOUDPEnabled()
+	{
+		return nioUDPEnabled;
+	}
+	
+	/**
+	 * Sets whether UDP requests are received using the NIO DatagramChannel based server.
+	 * @param nioUDPEnabled True if the NIO UDP server should be used.  False otherwise.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setNIOUDPEnabled(boolean nioUDPEnabled)
+	{
+		this.nioUDPEnabled = nioUDPEnabled;
+	}
+	
+	/**
+	 * Gets the number of UDP receiver loops run by the NIO UDP server.  When the platform supports SO_REUSEPORT, each
+	 * receiver is bound to its own channel and the kernel distributes packets across them.  The default is the number of
+	 * available processors.
+	 * @return The number of UDP receiver loops.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getUDPReceiverThreads()
+	{
+		return udpReceiverThreads;
+	}
+	
+	/**
+	 * Sets the number of UDP receiver loops run by the NIO UDP server.
+	 * @param udpReceiverThreads The number of UDP receiver loops.  Values less than 1 are treated as 1.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setUDPReceiverThreads(int udpReceiverThreads)
+	{
+		this.udpReceiverThreads = Math.max(1, udpReceiverThreads);
+	}
+	
+	/**
+	 * Indicates if TCP connections are kept open and may carry multiple pipelined requests as described in RFC 7766.
+	 * When false, the server answers a single request and closes the connection.  The default is false.
+	 * @return True if TCP connections are persistent.  False otherwise.
+	 * 
+	 * @since 8.2.0
+	 */
+	public boolean isTCPPersistentConnections()
+	{
+		return tcpPersistentConnections;
+	}
+	
+	/**
+	 * Sets whether TCP connections are kept open and may carry multiple pipelined requests.
+	 * @param tcpPersistentConnections True if TCP connections are persistent.  False otherwise.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setTCPPersistentConnections(boolean tcpPersistentConnections)
+	{
+		this.tcpPersistentConnections = tcpPersistentConnections;
+	}
+	
+	/**
+	 * Gets the time in milliseconds that a persistent TCP connection may sit idle waiting for the next request before
+	 * the server closes it.  The default is 10000 milliseconds.
+	 * @return The idle timeout of persistent TCP connections in milliseconds.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getTCPIdleTimeout()
+	{
+		return tcpIdleTimeout;
+	}
+	
+	/**
+	 * Sets the time in milliseconds that a persistent TCP connection may sit idle before the server closes it.
+	 * @param tcpIdleTimeout The idle timeout of persistent TCP connections in milliseconds.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setTCPIdleTimeout(int tcpIdleTimeout)
+	{
+		this.tcpIdleTimeout = tcpIdleTimeout;
+	}
+	
+	/**
+	 * Gets the maximum number of persistent TCP connections that may be open at any given time.  Connections accepted
+	 * beyond this limit are closed immediately.  This is also the number of threads that read from open persistent connections.
+	 * The MINA transport applies this limit to all TCP connections, persistent or not.
+	 * The default is 64.
+	 * @return The maximum number of open persistent TCP connections.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getTCPMaxConnections()
+	{
+		return tcpMaxConnections;
+	}
+	
+	/**
+	 * Sets the maximum number of persistent TCP connections that may be open at any given time.
+	 * @param tcpMaxConnections The maximum number of open persistent TCP connections.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setTCPMaxConnections(int tcpMaxConnections)
+	{
+		this.tcpMaxConnections = tcpMaxConnections;
+	}
+	
+	/**
+	 * Gets the maximum number of requests from a single persistent TCP connection that may be processed concurrently.  Once
+	 * the limit is reached, the server stops reading from the connection until a response has been sent.  The default is 16.
+	 * @return The maximum number of concurrently processed requests per connection.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getTCPMaxPipelinedRequests()
+	{
+		return tcpMaxPipelinedRequests;
+	}
+	
+	/**
+	 * Sets the maximum number of requests from a single persistent TCP connection that may be processed concurrently.
+	 * @param tcpMaxPipelinedRequests The maximum number of concurrently processed requests per connection.  Values less than 1 are treated as 1.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setTCPMaxPipelinedRequests(int tcpMaxPipelinedRequests)
+	{
+		this.tcpMaxPipelinedRequests = Math.max(1, tcpMaxPipelinedRequests);
+	}
+	
+	/**
+	 * Gets the maximum number of requests that will be read from a single persistent TCP connection before the server closes it.
+	 * A value of 0 means there is no limit.  The default is 0.
+	 * @return The maximum number of requests per persistent TCP connection.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getTCPMaxRequestsPerConnection()
+	{
+		return tcpMaxRequestsPerConnection;
+	}
+	
+	/**
+	 * Sets the maximum number of requests that will be read from a single persistent TCP connection before the server closes it.
+	 * @param tcpMaxRequestsPerConnection The maximum number of requests per persistent TCP connection.  0 means there is no limit.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setTCPMaxRequestsPerConnection(int tcpMaxRequestsPerConnection)
+	{
+		this.tcpMaxRequestsPerConnection = tcpMaxRequestsPerConnection;
+	}
+	
+	/**
+	 * Gets the maximum number of idle UDP receive buffers that are kept for reuse.  Each buffer is {@link #getMaxRequestSize()} bytes.
+	 * Setting this value to 0 disables pooling.  The default is 256.
+	 * @return The maximum number of idle UDP receive buffers that are kept for reuse.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getReceiveBufferPoolSize()
+	{
+		return receiveBufferPoolSize;
+	}
+	
+	/**
+	 * Sets the maximum number of idle UDP receive buffers that are kept for reuse.
+	 * @param receiveBufferPoolSize The maximum number of idle UDP receive buffers that are kept for reuse.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setReceiveBufferPoolSize(int receiveBufferPoolSize)
+	{
+		this.receiveBufferPoolSize = receiveBufferPoolSize;
+	}
+	
+	/**
+	 * Gets the mode used to execute DNS requests.  The default is {@link RequestExecutionMode#POOLED}.
+	 * @return The mode used to execute DNS requests.
+	 * 
+	 * @since 8.2.0
+	 */
+	public RequestExecutionMode getRequestExecutionMode()
+	{
+		return requestExecutionMode;
+	}
+	
+	/**
+	 * Sets the mode used to execute DNS requests.
+	 * @param requestExecutionMode The mode used to execute DNS requests.  A null value resets the mode to the default.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setRequestExecutionMode(RequestExecutionMode requestExecutionMode)
+	{
+		this.requestExecutionMode = (requestExecutionMode == null) ? DEFAULT_REQUEST_EXECUTION_MODE : requestExecutionMode;
+	}
+	
+	/**
+	 * Gets the maximum number of requests that may wait for a worker when all workers are busy.  Requests that arrive when the queue
+	 * is full are shed.  A value of 0 disables the queue and requests are shed as soon as all workers are busy.  The default is 0.
+	 * @return The maximum number of requests that may wait for a worker.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getMaxQueuedRequests()
+	{
+		return maxQueuedRequests;
+	}
+	
+	/**
+	 * Sets the maximum number of requests that may wait for a worker when all workers are busy.
+	 * @param maxQueuedRequests The maximum number of requests that may wait for a worker.  0 disables the queue.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setMaxQueuedRequests(int maxQueuedRequests)
+	{
+		this.maxQueuedRequests = maxQueuedRequests;
+	}
+	
+	/**
+	 * Gets the target time in milliseconds that a request should wait in the request queue.  If queued requests have waited longer than the target 
+	 * for a full {@link #getQueueLatencyInterval() interval}, the queue is considered overloaded and requests that have waited longer than the 
+	 * target are shed.  The default is 5 milliseconds.
+	 * @return The target queue latency in milliseconds.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getQueueTargetLatency()
+	{
+		return queueTargetLatency;
+	}
+	
+	/**
+	 * Sets the target time in milliseconds that a request should wait in the request queue.
+	 * @param queueTargetLatency The target queue latency in milliseconds.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setQueueTargetLatency(int queueTargetLatency)
+	{
+		this.queueTargetLatency = queueTargetLatency;
+	}
+	
+	/**
+	 * Gets the interval in milliseconds that queue latency may stay above the {@link #getQueueTargetLatency() target} before the queue
+	 * is considered overloaded.  While the queue is not overloaded, only requests that have waited longer than the interval are shed.  The default
+	 * is 100 milliseconds.
+	 * @return The queue latency interval in milliseconds.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getQueueLatencyInterval()
+	{
+		return queueLatencyInterval;
+	}
+	
+	/**
+	 * Sets the interval in milliseconds that queue latency may stay above the target before the queue is considered overloaded.
+	 * @param queueLatencyInterval The queue latency interval in milliseconds.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setQueueLatencyInterval(int queueLatencyInterval)
+	{
+		this.queueLatencyInterval = queueLatencyInterval;
+	}
+	
+	/**
+	 * Gets the DNS response code used to answer requests that are shed because the server is overloaded.  The default is REFUSED.
+	 * @return The DNS response code used to answer shed requests.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getLoadShedResponseCode()
+	{
+		return loadShedResponseCode;
+	}
+	
+	/**
+	 * Sets the DNS response code used to answer requests that are shed because the server is overloaded.  This is generally
+	 * REFUSED or SERVFAIL.
+	 * @param loadShedResponseCode The DNS response code used to answer shed requests.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setLoadShedResponseCode(int loadShedResponseCode)
+	{
+		this.loadShedResponseCode = loadShedResponseCode;
+	}
+	
+	/**
+	 * Gets the largest UDP response in bytes that the server will send to a client that advertises an EDNS0 buffer size.  Responses are 
+	 * limited to the smaller of this size and the size advertised by the client, and larger responses are truncated.  This size is also 
+	 * advertised in the OPT record of responses.  Clients that do not use EDNS0 are limited to 512 bytes.  The default is 1232 bytes.
+	 * @return The largest UDP response in bytes that the server will send.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getMaxUDPPayloadSize()
+	{
+		return maxUDPPayloadSize;
+	}
+	
+	/**
+	 * Sets the largest UDP response in bytes that the server will send to a client that advertises an EDNS0 buffer size.  
+	 * @param maxUDPPayloadSize The largest UDP response in bytes that the server will send.  Values less than 512 are set to 512.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setMaxUDPPayloadSize(int maxUDPPayloadSize)
+	{
+		this.maxUDPPayloadSize = Math.max(MIN_UDP_PAYLOAD_SIZE, maxUDPPayloadSize);
+	}
+	
+	/**
+	 * Gets the name of the {@link DNSTransportProvider} that creates the UDP and TCP socket servers.  The built in transports are
+	 * "default", the blocking socket servers, and "mina", the event driven Apache MINA socket servers.  The default is "default".
+	 * The "mina" transport is experimental: its throughput has not been compared with the default transport under load.
+	 * @return The name of the transport provider.
+	 * 
+	 * @since 8.2.0
+	 */
+	public String getTransport()
+	{
+		return transport;
+	}
+	
+	/**
+	 * Sets the name of the {@link DNSTransportProvider} that creates the UDP and TCP socket servers.
+	 * @param transport The name of the transport provider.  A null or empty value resets the transport to the default.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setTransport(String transport)
+	{
+		this.transport = (transport == null || transport.trim().isEmpty()) ? DEFAULT_TRANSPORT : transport.trim();
+	}
+	
+	/**
+	 * Gets the number of I/O processor threads used by event driven transports to read and write connections.  The default is the 
+	 * number of available processors.
+	 * @return The number of I/O processor threads.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getIOProcessorThreads()
+	{
+		return ioProcessorThreads;
+	}
+	
+	/**
+	 * Sets the number of I/O processor threads used by event driven transports to read and write connections.
+	 * @param ioProcessorThreads The number of I/O processor threads.  Values less than 1 are set to 1.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setIOProcessorThreads(int ioProcessorThreads)
+	{
+		this.ioProcessorThreads = Math.max(1, ioProcessorThreads);
+	}
+	
+	/**
+	 * Gets the maximum number of datagrams that a NIO UDP receiver loop drains from its channel each time it wakes up.  Drained datagrams 
+	 * are handed to a single worker as a batch, and the worker sends the batch's responses together.  A value of 1 disables batching and 
+	 * hands each datagram to its own worker.  The default is 1.
+	 * @return The maximum number of datagrams in a receive batch.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getUDPReceiveBatchSize()
+	{
+		return udpReceiveBatchSize;
+	}
+	
+	/**
+	 * Sets the maximum number of datagrams that a NIO UDP receiver loop drains from its channel each time it wakes up.
+	 * @param udpReceiveBatchSize The maximum number of datagrams in a receive batch.  Values less than 1 are set to 1.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setUDPReceiveBatchSize(int udpReceiveBatchSize)
+	{
+		this.udpReceiveBatchSize = Math.max(1, udpReceiveBatchSize);
+	}
+	
+	/**
+	 * Gets the maximum total size in bytes of the serialized responses held in the response cache.  Cached responses are sent without
+	 * consulting the DNS store, so changes to records may not be seen until cached responses expire.  A value of 0 disables the cache.  
+	 * The default is 0.
+	 * @return The maximum total size in bytes of the response cache.
+	 * 
+	 * @since 8.2.0
+	 */
+	public long getResponseCacheSize()
+	{
+		return responseCacheSize;
+	}
+	
+	/**
+	 * Sets the maximum total size in bytes of the serialized responses held in the response cache.
+	 * @param responseCacheSize The maximum total size in bytes of the response cache.  0 disables the cache.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setResponseCacheSize(long responseCacheSize)
+	{
+		this.responseCacheSize = responseCacheSize;
+	}
+	
+	/**
+	 * Gets the maximum time in seconds that a response is held in the response cache.  Responses are also expired after the smallest TTL
+	 * of their records.  The default is 300 seconds.
+	 * @return The maximum time in seconds that a response is held in the response cache.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getResponseCacheMaxTTL()
+	{
+		return responseCacheMaxTTL;
+	}
+	
+	/**
+	 * Sets the maximum time in seconds that a response is held in the response cache.
+	 * @param responseCacheMaxTTL The maximum time in seconds that a response is held in the response cache.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setResponseCacheMaxTTL(int responseCacheMaxTTL)
+	{
+		this.responseCacheMaxTTL = responseCacheMaxTTL;
+	}
+	
+	/**
+	 * Indicates if identical requests that arrive while a lookup for the same question is in flight wait for that lookup instead of
+	 * querying the DNS store themselves.  The default is true.
+	 * @return True if identical concurrent requests are coalesced into a single lookup.
+	 * 
+	 * @since 8.2.0
+	 */
+	public boolean isRequestCoalescing()
+	{
+		return requestCoalescing;
+	}
+	
+	/**
+	 * Sets if identical concurrent requests are coalesced into a single lookup.
+	 * @param requestCoalescing True if identical concurrent requests are coalesced into a single lookup.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setRequestCoalescing(boolean requestCoalescing)
+	{
+		this.requestCoalescing = requestCoalescing;
+	}
+	
+	/**
+	 * Gets the number of identical UDP responses per second that are sent to a single client network.  Responses are identical if they
+	 * answer the same question with the same outcome, and clients are grouped by their IPv4 or IPv6 network prefix.  Responses over the 
+	 * limit are dropped or slipped.  Rate limiting does not apply to TCP.  The default is 0, which disables response rate limiting.
+	 * @return The number of identical responses per second sent to a single client network, or 0 if responses are not rate limited.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getResponseRateLimit()
+	{
+		return responseRateLimit;
+	}
+	
+	/**
+	 * Sets the number of identical UDP responses per second that are sent to a single client network.
+	 * @param responseRateLimit The number of identical responses per second sent to a single client network, or 0 to disable response rate limiting.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setResponseRateLimit(int responseRateLimit)
+	{
+		this.responseRateLimit = responseRateLimit;
+	}
+	
+	/**
+	 * Gets how often a response over the rate limit is slipped instead of dropped.  A slipped response is a small truncated response that 
+	 * tells a legitimate client whose address is being spoofed to retry over TCP.  A value of N slips every Nth limited response, and 0 
+	 * drops all limited responses.  The default is 2.
+	 * @return The slip interval.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getResponseRateLimitSlip()
+	{
+		return responseRateLimitSlip;
+	}
+	
+	/**
+	 * Sets how often a response over the rate limit is slipped instead of dropped.
+	 * @param responseRateLimitSlip The slip interval, or 0 to drop all limited responses.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setResponseRateLimitSlip(int responseRateLimitSlip)
+	{
+		this.responseRateLimitSlip = responseRateLimitSlip;
+	}
+	
+	/**
+	 * Gets the number of rate limit buckets held by each UDP listener.  The table is allocated once and is rounded up to a power of two.  
+	 * The default is 65536.
+	 * @return The number of rate limit buckets.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getResponseRateLimitTableSize()
+	{
+		return responseRateLimitTableSize;
+	}
+	
+	/**
+	 * Sets the number of rate limit buckets held by each UDP listener.
+	 * @param responseRateLimitTableSize The number of rate limit buckets.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setResponseRateLimitTableSize(int responseRateLimitTableSize)
+	{
+		this.responseRateLimitTableSize = responseRateLimitTableSize;
+	}
+	
+	/**
+	 * Gets the prefix length used to group IPv4 clients for response rate limiting.  The default is 24.
+	 * @return The IPv4 prefix length.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getResponseRateLimitIPv4PrefixLength()
+	{
+		return responseRateLimitIPv4PrefixLength;
+	}
+	
+	/**
+	 * Sets the prefix length used to group IPv4 clients for response rate limiting.
+	 * @param responseRateLimitIPv4PrefixLength The IPv4 prefix length between 0 and 32.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setResponseRateLimitIPv4PrefixLength(int responseRateLimitIPv4PrefixLength)
+	{
+		this.responseRateLimitIPv4PrefixLength = responseRateLimitIPv4PrefixLength;
+	}
+	
+	/**
+	 * Gets the prefix length used to group IPv6 clients for response rate limiting.  The default is 56.
+	 * @return The IPv6 prefix length.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getResponseRateLimitIPv6PrefixLength()
+	{
+		return responseRateLimitIPv6PrefixLength;
+	}
+	
+	/**
+	 * Sets the prefix length used to group IPv6 clients for response rate limiting.
+	 * @param responseRateLimitIPv6PrefixLength The IPv6 prefix length between 0 and 128.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setResponseRateLimitIPv6PrefixLength(int responseRateLimitIPv6PrefixLength)
+	{
+		this.responseRateLimitIPv6PrefixLength = responseRateLimitIPv6PrefixLength;
+	}
+	
+	/**
+	 * Gets the file that received queries are logged to.  Queries are written to the file by a background thread.  The default is null, 
+	 * which disables the query log file and logs each query at INFO through the application log instead.
+	 * @return The query log file, or null if queries are not logged.
+	 * 
+	 * @since 8.2.0
+	 */
+	public String getQueryLogFile()
+	{
+		return queryLogFile;
+	}
+	
+	/**
+	 * Sets the file that received queries are logged to.
+	 * @param queryLogFile The query log file, or null or empty to disable the query log.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setQueryLogFile(String queryLogFile)
+	{
+		this.queryLogFile = queryLogFile;
+	}
+	
+	/**
+	 * Gets the number of queries that can wait in memory to be written to the query log.  Queries received while the buffer is full 
+	 * are not logged.  The default is 16384.
+	 * @return The number of entries in the query log buffer.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getQueryLogBufferSize()
+	{
+		return queryLogBufferSize;
+	}
+	
+	/**
+	 * Sets the number of queries that can wait in memory to be written to the query log.
+	 * @param queryLogBufferSize The number of entries in the query log buffer.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setQueryLogBufferSize(int queryLogBufferSize)
+	{
+		this.queryLogBufferSize = queryLogBufferSize;
+	}
+	
+	/**
+	 * Gets the size in bytes at which the query log file is rolled.  The default is 100 MB.
+	 * @return The maximum query log file size.
+	 * 
+	 * @since 8.2.0
+	 */
+	public long getQueryLogMaxFileSize()
+	{
+		return queryLogMaxFileSize;
+	}
+	
+	/**
+	 * Sets the size in bytes at which the query log file is rolled.
+	 * @param queryLogMaxFileSize The maximum query log file size, or 0 to never roll the file.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setQueryLogMaxFileSize(long queryLogMaxFileSize)
+	{
+		this.queryLogMaxFileSize = queryLogMaxFileSize;
+	}
+	
+	/**
+	 * Gets the number of rolled query log files that are kept.  The default is 5.
+	 * @return The number of rolled query log files.
+	 * 
+	 * @since 8.2.0
+	 */
+	public int getQueryLogMaxFiles()
+	{
+		return queryLogMaxFiles;
+	}
+	
+	/**
+	 * Sets the number of rolled query log files that are kept.
+	 * @param queryLogMaxFiles The number of rolled query log files.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setQueryLogMaxFiles(int queryLogMaxFiles)
+	{
+		this.queryLogMaxFiles = queryLogMaxFiles;
+	}
 }
@@ -0,0 +1,281 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+
+/**
+ * Persistent copy of the last DNS snapshot that was successfully loaded from the configuration service.  The file holds every record 
+ * and every CERT record set in DNS wire format, so it can be memory mapped and turned back into a snapshot without calling the 
+ * configuration service.  This lets a server answer queries as soon as it starts, and keep answering them while the configuration 
+ * service is unreachable.
+ * <p>
+ * The file is replaced atomically, so a reader never sees a partially written file.  A checksum of the contents is kept so that a 
+ * snapshot that has not changed since the last write is not written again.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSSnapshotFile
+{
+	protected static final int MAGIC = 0x444E5353; // "DNSS"
+	// version 2 writes counts and lengths as ints, since a record in wire format can be longer than 65535 bytes
+	protected static final int VERSION = 2;
+	
+	protected final File file;
+	private long lastChecksum = -1;
+	
+	/**
+	 * The records and certificates held in a snapshot file.
+	 */
+	public static class Contents
+	{
+		private final List<Record> records;
+		private final Map<String, RRset> certs;
+		private final long writeTime;
+		
+		public Contents(List<Record> records, Map<String, RRset> certs, long writeTime)
+		{
+			this.records = Collections.unmodifiableList(records);
+			this.certs = Collections.unmodifiableMap(certs);
+			this.writeTime = writeTime;
+		}
+		
+		/**
+		 * Gets the DNS records.
+		 * @return The DNS records.
+		 */
+		public List<Record> getRecords()
+		{
+			return records;
+		}
+		
+		/**
+		 * Gets the CERT record sets keyed by certificate owner.
+		 * @return The CERT record sets keyed by certificate owner.
+		 */
+		public Map<String, RRset> getCerts()
+		{
+			return certs;
+		}
+		
+		/**
+		 * Gets the time the file was written.
+		 * @return The time in milliseconds since the epoch that the file was written.
+		 */
+		public long getWriteTime()
+		{
+			return writeTime;
+		}
+	}
+	
+	/**
+	 * Creates a snapshot file.  The file does not need to exist yet.
+	 * @param file The location of the file.
+	 */
+	public DNSSnapshotFile(File file)
+	{
+		this.file = file;
+	}
+	
+	/**
+	 * Gets the location of the file.
+	 * @return The location of the file.
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+	
+	/**
+	 * Indicates if the file exists.
+	 * @return True if the file exists.
+	 */
+	public boolean exists()
+	{
+		return file.isFile();
+	}
+	
+	/**
+	 * Memory maps the file and reads its records and certificates.
+	 * @return The contents of the file.
+	 * @throws IOException Thrown if the file can't be read, or is not a valid snapshot file.
+	 */
+	public synchronized Contents read() throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			final ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buf.remaining() < 20 || buf.getInt() != MAGIC)
+				throw new IOException("Not a DNS snapshot file: " + file);
+			
+			final int version = buf.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported DNS snapshot file version " + version + ": " + file);
+			
+			if (getChecksum(buf, buf.position(), buf.limit() - 4) != (buf.getInt(buf.limit() - 4) & 0xFFFFFFFFL))
+				throw new IOException("DNS snapshot file is corrupt: " + file);
+			
+			final long writeTime = buf.getLong();
+			
+			final int recordCount = buf.getInt();
+			final List<Record> records = new ArrayList<>(recordCount);
+			for (int i = 0; i < recordCount; ++i)
+				records.add(Record.fromWire(getBytes(buf), Section.ANSWER));
+			
+			final int ownerCount = buf.getInt();
+			final Map<String, RRset> certs = new HashMap<>(ownerCount * 2);
+			for (int i = 0; i < ownerCount; ++i)
+			{
+				final String owner = new String(getBytes(buf), StandardCharsets.UTF_8);
+				final RRset set = new RRset();
+				final int certCount = buf.getInt();
+				for (int j = 0; j < certCount; ++j)
+					set.addRR(Record.fromWire(getBytes(buf), Section.ANSWER));
+				
+				certs.put(owner, set);
+			}
+			
+			lastChecksum = getChecksum(buf, 16, buf.limit() - 4);
+			
+			return new Contents(records, certs, writeTime);
+		}
+		catch (BufferUnderflowException | IllegalArgumentException e)
+		{
+			throw new IOException("DNS snapshot file is corrupt: " + file, e);
+		}
+	}
+	
+	/**
+	 * Writes records and certificates to the file, replacing its current contents.  Nothing is written if the contents are the same as 
+	 * the contents last read or written.
+	 * @param records The DNS records.
+	 * @param certs The CERT record sets keyed by certificate owner.
+	 * @return True if the file was written, or false if it was already up to date.
+	 * @throws IOException Thrown if the file can't be written.
+	 */
+	public synchronized boolean write(Collection<Record> records, Map<String, RRset> certs) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		
+		out.writeInt(records.size());
+		for (Record rec : records)
+			putBytes(out, rec.toWire(Section.ANSWER));
+		
+		// owners are written in a fixed order so that unchanged contents have the same checksum
+		out.writeInt(certs.size());
+		for (Map.Entry<String, RRset> entry : new TreeMap<>(certs).entrySet())
+		{
+			putBytes(out, entry.getKey().getBytes(StandardCharsets.UTF_8));
+			
+			final List<Record> certRecs = entry.getValue().rrs();
+			out.writeInt(certRecs.size());
+			for (Record rec : certRecs)
+				putBytes(out, rec.toWire(Section.ANSWER));
+		}
+		out.flush();
+		
+		// the write time is not part of the checksum that decides if anything has changed
+		final byte[] body = bytes.toByteArray();
+		final long checksum = getChecksum(ByteBuffer.wrap(body), 0, body.length);
+		if (checksum == lastChecksum && exists())
+			return false;
+		
+		final ByteBuffer header = ByteBuffer.allocate(16);
+		header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+		final CRC32 crc = new CRC32();
+		crc.update(header.array(), 8, 8);
+		crc.update(body, 0, body.length);
+		final ByteBuffer trailer = ByteBuffer.allocate(4);
+		trailer.putInt((int)crc.getValue());
+		
+		final Path target = file.getAbsoluteFile().toPath();
+		final Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			header.flip();
+			trailer.flip();
+			channel.write(new ByteBuffer[] {header, ByteBuffer.wrap(body), trailer});
+			channel.force(true);
+		}
+		
+		try
+		{
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		
+		lastChecksum = checksum;
+		return true;
+	}
+	
+	/*
+	 * CRC32 of a region of a buffer
+	 */
+	private static long getChecksum(ByteBuffer buf, int start, int end)
+	{
+		final CRC32 crc = new CRC32();
+		final ByteBuffer region = buf.duplicate();
+		region.limit(end).position(start);
+		crc.update(region);
+		return crc.getValue();
+	}
+	
+	private static byte[] getBytes(ByteBuffer buf)
+	{
+		final int length = buf.getInt();
+		if (length < 0 || length > buf.remaining())
+			throw new BufferUnderflowException();
+		
+		final byte[] retVal = new byte[length];
+		buf.get(retVal);
+		return retVal;
+	}
+	
+	private static void putBytes(DataOutputStream out, byte[] bytes) throws IOException
+	{
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
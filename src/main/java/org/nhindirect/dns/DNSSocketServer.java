@@ -19,27 +19,47 @@ package org.nhindirect.dns;
 
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
 import java.net.Socket;
 import java.util.UUID;
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import javax.management.JMException;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.management.StandardMBean;
 
+import org.xbill.DNS.Rcode;
+
 import lombok.extern.slf4j.Slf4j;
 
 
 /**
  * The socket server is an IP protocol agnostic server that manages threading/concurrency and message dispatching to the 
  * concrete socket implementation.  It utilizes a "smart" thread pool for efficiently managing processing threads. 
+ * <p>
+ * If the {@link DNSServerSettings.RequestExecutionMode#VIRTUAL_THREAD} execution mode is configured and the runtime supports virtual
+ * threads, each request runs on its own virtual thread instead and the number of concurrent requests is limited with a semaphore.
+ * <p>
+ * If {@link DNSServerSettings#getMaxQueuedRequests()} is greater than 0, requests that arrive while all workers are busy wait in a bounded
+ * queue.  Requests are shed when the queue is full, or when the queue has stood above its target latency for longer than a full interval
+ * in the style of the CoDel queue management algorithm.  Shed requests are answered immediately with the configured load shedding response code
+ * if the transport allows it.
  * @author Greg Meyer
  * @since 1.0
  */
@@ -48,15 +68,28 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 {
 	protected final DNSServerSettings settings;
 	protected final DNSResponder responder;
+	protected final String bindAddress;
 	
 	protected ExecutorService socketAcceptService;
-	protected ThreadPoolExecutor dnsRequestService;
+	protected ExecutorService dnsRequestService;
+	protected Semaphore activeRequestPermits;
+	protected Semaphore admittedRequestPermits;
+	protected ByteBufferPool receiveBufferPool;
+	protected DNSResponseRateLimiter responseRateLimiter;
+	
+	private QueueDelayController queueDelayController;
 	
 	protected final AtomicBoolean running;  
 	
 	private long serverStartTime = Long.MAX_VALUE;
-	private volatile long rejectedCount = 0;
+	private final AtomicLong rejectedCount = new AtomicLong(0);
+	private final AtomicLong queueFullShedCount = new AtomicLong(0);
+	private final AtomicLong queueLatencyShedCount = new AtomicLong(0);
+	private final BatchSizeHistogram receiveBatchSizes = new BatchSizeHistogram();
 	private volatile long requestCount = 0;
+	private volatile long missCount = 0;
+	private volatile long errorCount = 0;
+	private volatile long successCount = 0;	
 	private TemporalCountBucket countBuckets[] = {new TemporalCountBucket(), new TemporalCountBucket(), 
 			new TemporalCountBucket(), new TemporalCountBucket(), new TemporalCountBucket()};
 	
@@ -68,11 +101,27 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 	 * @throws DNSException
 	 */
 	public DNSSocketServer(DNSServerSettings settings, DNSResponder responsder) throws DNSException
+	{
+		this(settings, responsder, settings.getBindAddresses().get(0));
+	}
+	
+	/**
+	 * Creates a socket server that listens on a single address.  The server will not start accepting messages until the {@link #start()} method is called.
+	 * Each server has its own accept threads and request executor, so a saturated listener does not stall listeners on other addresses. 
+	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
+	 * @param responsder The DNS responder that will handle lookups.
+	 * @param bindAddress The IPv4 or IPv6 address that the server will be bound to.
+	 * @throws DNSException
+	 * 
+	 * @since 8.2.0
+	 */
+	public DNSSocketServer(DNSServerSettings settings, DNSResponder responsder, String bindAddress) throws DNSException
 	{
 		running = new AtomicBoolean(false);
 		
 		this.settings = settings;		
 		this.responder = responsder;
+		this.bindAddress = bindAddress;
 		
 		// create the server socket
 		createServerSocket();
@@ -82,6 +131,7 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 	{
 		final StringBuilder objectNameBuilder = new StringBuilder(clazz.getPackage().getName());
 		objectNameBuilder.append(":type=").append(clazz.getSimpleName());
+		objectNameBuilder.append(",listener=").append(ObjectName.quote(getListenerName()));
 		objectNameBuilder.append(",name=").append(UUID.randomUUID());
 		
 		try
@@ -97,6 +147,26 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 		}
 	}
 	
+	/*
+	 * Address and port that identifies this listener
+	 */
+	private String getListenerName()
+	{
+		return (bindAddress.indexOf(':') >= 0 ? "[" + bindAddress + "]" : bindAddress) + ":" + settings.getPort();
+	}
+	
+	/**
+	 * Gets the socket address that the server binds to.
+	 * @return The socket address that the server binds to.
+	 * @throws UnknownHostException If the bind address cannot be resolved.
+	 * 
+	 * @since 8.2.0
+	 */
+	protected InetSocketAddress getBindSocketAddress() throws UnknownHostException
+	{
+		return new InetSocketAddress(InetAddress.getByName(bindAddress), settings.getPort());
+	}
+	
 	/**
 	 * Starts the socket server and initializes the dispatch threads.  After this method has been called, the server will start accepting
 	 * DNS requests.
@@ -109,12 +179,49 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 			// create the accept thread
 			running.set(true);
 			
-			dnsRequestService = new ThreadPoolExecutor(0, settings.getMaxActiveRequests(), 
-					120L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+			final ExecutorService virtualThreadService = 
+					(settings.getRequestExecutionMode() == DNSServerSettings.RequestExecutionMode.VIRTUAL_THREAD) ? 
+					newVirtualThreadPerTaskExecutor() : null;
+			
+			final int maxQueuedRequests = Math.max(0, settings.getMaxQueuedRequests());
+			
+			if (virtualThreadService != null)
+			{
+				// virtual threads are cheap, so concurrency is limited by permits instead of the pool size...
+				// admitted requests that are waiting for an active permit make up the queue
+				dnsRequestService = virtualThreadService;
+				activeRequestPermits = new Semaphore(settings.getMaxActiveRequests());
+				admittedRequestPermits = new Semaphore(settings.getMaxActiveRequests() + maxQueuedRequests);
+			}
+			else
+			{
+				if (settings.getRequestExecutionMode() == DNSServerSettings.RequestExecutionMode.VIRTUAL_THREAD)
+					log.warn("Virtual threads are not supported by this runtime.  Falling back to the pooled request execution mode.");
+				
+				activeRequestPermits = null;
+				admittedRequestPermits = null;
+				if (maxQueuedRequests > 0)
+				{
+					// the pool only grows past its core size when the queue is full, so the core size is the max size
+					final ThreadPoolExecutor requestService = new ThreadPoolExecutor(settings.getMaxActiveRequests(), settings.getMaxActiveRequests(), 
+							120L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(maxQueuedRequests));
+					requestService.allowCoreThreadTimeOut(true);
+					dnsRequestService = requestService;
+				}
+				else
+					dnsRequestService = new ThreadPoolExecutor(0, settings.getMaxActiveRequests(), 
+						120L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+			}
+			
+			queueDelayController = (maxQueuedRequests > 0) ? 
+					new QueueDelayController(settings.getQueueTargetLatency(), settings.getQueueLatencyInterval()) : null;
 			
 			
-			socketAcceptService = Executors.newSingleThreadExecutor();
-			socketAcceptService.execute(getSocketAcceptTask());
+			// event driven transports read requests on their own I/O threads and may not need any accept threads
+			final int acceptThreadCount = getSocketAcceptThreadCount();
+			socketAcceptService = Executors.newFixedThreadPool(Math.max(1, acceptThreadCount));
+			for (int i = 0; i < acceptThreadCount; ++i)
+				socketAcceptService.execute(getSocketAcceptTask());
 			
 			serverStartTime = System.currentTimeMillis();
 		}
@@ -153,6 +260,25 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 		catch (InterruptedException e) {/* no op */}
 	}
 	
+	/**
+	 * Creates an executor that starts a new virtual thread for each task.  Virtual threads are only available in 
+	 * newer Java runtimes, so the executor is looked up reflectively.
+	 * @return An executor that starts a new virtual thread for each task, or null if the runtime does not support virtual threads.
+	 */
+	protected static ExecutorService newVirtualThreadPerTaskExecutor()
+	{
+		try
+		{
+			final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factory.invoke(null);
+		}
+		catch (Exception e)
+		{
+			// not available or a preview feature that is not enabled
+			return null;
+		}
+	}
+	
 	/**
 	 * Creates and initializes the socket implementation that will accept incoming requests.
 	 * @throws DNSException
@@ -160,12 +286,22 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 	public abstract void createServerSocket() throws DNSException;		
 	
 	/**
-	 * Gets the Runnable task that will be responsible for accepting connections.  This task
-	 * is placed in a single thread, so it should loop until the running flag is set to false.
+	 * Gets the Runnable task that will be responsible for accepting connections.  Each task
+	 * is placed in its own thread, so it should loop until the running flag is set to false.
 	 * @return The Runnable task that will be responsible for accepting connections
 	 */
 	public abstract Runnable getSocketAcceptTask();
 	
+	/**
+	 * Gets the number of accept threads that the server will run.  {@link #getSocketAcceptTask()} is called once
+	 * for each thread.  Servers that receive requests on threads they manage themselves may return 0.  The default is a single accept thread.
+	 * @return The number of accept threads that the server will run.
+	 */
+	protected int getSocketAcceptThreadCount()
+	{
+		return 1;
+	}
+	
 	/**
 	 * Gets the Runnable task that will process a DNS request.  Each accepted request will create a new instance
 	 * of the Runnable task and run it in its own thread.
@@ -182,37 +318,168 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 	 */
 	protected void submitDNSRequest(Object s)
 	{
-		
 		updateCountMetrics();
 		boolean executed = false;
-		if (dnsRequestService.getActiveCount() < settings.getMaxActiveRequests())
+		
+		Runnable task = getDNSRequestTask(s);
+		if (queueDelayController != null)
+			task = new QueuedRequestTask(s, task);
+		
+		if (admittedRequestPermits != null)
+		{
+			if (admittedRequestPermits.tryAcquire())
+			{
+				try
+				{
+					dnsRequestService.execute(new PermittedRequestTask(task));
+					executed = true;
+				}
+				catch (RejectedExecutionException e)
+				{
+					admittedRequestPermits.release();
+					log.warn("Rejecting DNS request: " + e.getMessage());
+				}
+			}
+		}
+		else if (queueDelayController != null || 
+				((ThreadPoolExecutor)dnsRequestService).getActiveCount() < settings.getMaxActiveRequests())
 		{
 			try
 			{
-				dnsRequestService.execute(getDNSRequestTask(s));
+				dnsRequestService.execute(task);
 				executed = true;
 			}
 			catch (RejectedExecutionException e)
 			{   
-				log.warn("Rejecting DNS request: " + e.getMessage());
+				// a full queue is expected under load, so only log unexpected rejections
+				if (queueDelayController == null)
+					log.warn("Rejecting DNS request: " + e.getMessage());
 				/* no-op, but use logic below to indicate that it was rejected */
 			}
 		}
 		
 		if (!executed)
-		{		
-			++rejectedCount;
-			// just close the socket... we're too busy to handle anything
-			try
-			{
-				if (s instanceof Socket)
-					((Socket)s).close();
-			}
-			catch (IOException e) {}
+			shedDNSRequest(s, LoadShedReason.QUEUE_FULL);
+	}
+	
+	/*
+	 * Counts a shed request and hands it to the concrete implementation to be rejected
+	 */
+	private void shedDNSRequest(Object s, LoadShedReason reason)
+	{
+		rejectedCount.incrementAndGet();
+		switch (reason)
+		{
+			case QUEUE_FULL:
+				queueFullShedCount.incrementAndGet();
+				break;
+			case QUEUE_LATENCY:
+				queueLatencyShedCount.incrementAndGet();
+				break;
+		}
+		
+		rejectDNSRequest(s, reason);
+	}
+	
+	/**
+	 * Records the number of requests received in a single channel wakeup.
+	 * @param size The number of requests in the batch.
+	 * 
+	 * @since 8.2.0
+	 */
+	protected void recordReceiveBatch(int size)
+	{
+		receiveBatchSizes.record(size);
+	}
+	
+	/**
+	 * Rejects a DNS request that will not be processed because the server is too busy.  Implementations should answer the request
+	 * as cheaply as possible, for example with {@link #createLoadShedResponse(ByteBuffer)}, and release any resources held by the request.
+	 * The default implementation closes the request if it is a TCP socket.
+	 * @param s The request parameter that was passed to {@link #submitDNSRequest(Object)}.
+	 * @param reason The reason the request is being rejected.
+	 */
+	protected void rejectDNSRequest(Object s, LoadShedReason reason)
+	{
+		// just close the socket... we're too busy to handle anything
+		try
+		{
+			if (s instanceof Socket)
+				((Socket)s).close();
+		}
+		catch (IOException e) {}
+	}
+	
+	/**
+	 * Creates a response to a request that is being shed.  The response is built directly from the raw request without parsing it
+	 * and holds the configured load shedding response code.
+	 * @param request The raw request.  The request starts at the buffer's position and ends at its limit.
+	 * @return The response in wire format, or null if the request is too malformed to answer.
+	 */
+	protected byte[] createLoadShedResponse(ByteBuffer request)
+	{
+		return DNSWireUtils.createErrorResponse(request, settings.getLoadShedResponseCode());
+	}
+	
+	/**
+	 * Applies the server's response rate limit to a response.  Servers that do not rate limit responses return the response unchanged.
+	 * @param client The address of the client the response will be sent to.
+	 * @param response The response in wire format, or null if there is no response.
+	 * @return The response to send, a truncated copy of the response if the response was slipped, or null if the response was dropped.
+	 * 
+	 * @since 8.2.0
+	 */
+	protected byte[] applyResponseRateLimit(SocketAddress client, byte[] response)
+	{
+		return applyResponseRateLimit((client instanceof InetSocketAddress) ? ((InetSocketAddress)client).getAddress() : null, response);
+	}
+	
+	/**
+	 * Applies the server's response rate limit to a response.  Servers that do not rate limit responses return the response unchanged.
+	 * @param client The address of the client the response will be sent to.
+	 * @param response The response in wire format, or null if there is no response.
+	 * @return The response to send, a truncated copy of the response if the response was slipped, or null if the response was dropped.
+	 * 
+	 * @since 8.2.0
+	 */
+	protected byte[] applyResponseRateLimit(InetAddress client, byte[] response)
+	{
+		if (responseRateLimiter == null || response == null)
+			return response;
+		
+		switch (responseRateLimiter.check(client, response))
+		{
+			case DROP:
+				return null;
+			case SLIP:
+				return DNSWireUtils.createTruncatedResponse(response);
+			default:
+				return response;
+		}
+	}
+	
+	/**
+	 * Updates the success, miss, and error counts based on the outcome of a DNS request.
+	 * @param response The response to the DNS request in wire format.  A null response is counted as an error.
+	 */
+	protected void updateResponseMetrics(byte[] response)
+	{
+		final int rcode = (response == null) ? -1 : DNSWireUtils.getRcode(response);
+		if (rcode == Rcode.NOERROR || rcode == Rcode.NXDOMAIN)
+		{
+			++successCount;
+			if (DNSWireUtils.getAnswerCount(response) == 0)
+				++missCount;	
 		}
+		else
+			++errorCount;
 	}
 	
-	private void updateCountMetrics()
+	/**
+	 * Updates the request count and load metrics.  This is called for every request submitted with {@link #submitDNSRequest(Object)},
+	 * but servers that read multiple requests from a single submission should call it for each additional request.
+	 */
+	protected void updateCountMetrics()
 	{
 		++requestCount;
 		long curTime = System.currentTimeMillis();
@@ -237,15 +504,95 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 			return (System.currentTimeMillis() - serverStartTime);
 	}		
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getBindAddress()
+	{
+		return getListenerName();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */	
 	@Override
 	public Long getRejectedRequestCount() 
 	{
-		return rejectedCount;
+		return rejectedCount.get();
+	}	
+	
+	/**
+	 * {@inheritDoc}
+	 */	
+	@Override
+	public Long getQueueFullShedCount() 
+	{
+		return queueFullShedCount.get();
+	}	
+	
+	/**
+	 * {@inheritDoc}
+	 */	
+	@Override
+	public Long getQueueLatencyShedCount() 
+	{
+		return queueLatencyShedCount.get();
 	}	
 	
+	/**
+	 * {@inheritDoc}
+	 */	
+	@Override
+	public Long getRateLimitDroppedResponseCount()
+	{
+		return (responseRateLimiter == null) ? 0L : responseRateLimiter.getDroppedCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */	
+	@Override
+	public Long getRateLimitSlippedResponseCount()
+	{
+		return (responseRateLimiter == null) ? 0L : responseRateLimiter.getSlippedCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */	
+	@Override
+	public Integer getQueuedRequestCount()
+	{
+		final ExecutorService requestService = dnsRequestService;
+		if (requestService == null)
+			return 0;
+		else if (activeRequestPermits != null)
+			return activeRequestPermits.getQueueLength();
+		else
+			return ((ThreadPoolExecutor)requestService).getQueue().size();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */	
+	@Override
+	public Long getCoalescedRequestCount()
+	{
+		final DNSRequestCoalescer coalescer = responder.getRequestCoalescer();
+		return (coalescer == null) ? 0L : coalescer.getCoalescedCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */	
+	@Override
+	public Double getCoalesceRatio()
+	{
+		final DNSRequestCoalescer coalescer = responder.getRequestCoalescer();
+		return (coalescer == null) ? 0D : coalescer.getCoalesceRatio();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */		
@@ -255,6 +602,69 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 		return requestCount;
 	}	
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getMissedRequestCount() 
+	{
+		return missCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getSuccessfulRequestCount() 
+	{
+		return successCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getErrorRequestCount()
+	{
+		return errorCount;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getReceiveBufferPoolHitCount()
+	{
+		return (receiveBufferPool == null) ? 0L : receiveBufferPool.getHitCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getReceiveBufferPoolMissCount()
+	{
+		return (receiveBufferPool == null) ? 0L : receiveBufferPool.getMissCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long getReceiveBatchCount()
+	{
+		return receiveBatchSizes.getCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getReceiveBatchSizeDistribution()
+	{
+		return receiveBatchSizes.toString();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */		
@@ -280,6 +690,174 @@ public abstract class DNSSocketServer implements DNSSocketServerMBean
 		return aveTransLoad + "/sec";
 	}
 	
+	/**
+	 * Reasons that a request may be shed instead of processed.
+	 * 
+	 * @since 8.2.0
+	 */
+	public enum LoadShedReason
+	{
+		/**
+		 * No worker was available and the request queue, if any, was full.
+		 */
+		QUEUE_FULL,
+		
+		/**
+		 * The request waited in a queue that has been above its target latency for longer than the latency interval.
+		 */
+		QUEUE_LATENCY
+	}
+	
+	/*
+	 * Wraps a queued request and sheds it instead of running it if the queue is overloaded 
+	 * by the time a worker picks it up
+	 */
+	private class QueuedRequestTask implements Runnable
+	{
+		private final Object request;
+		private final Runnable task;
+		private final long enqueueTime;
+		
+		public QueuedRequestTask(Object request, Runnable task)
+		{
+			this.request = request;
+			this.task = task;
+			this.enqueueTime = System.nanoTime();
+		}
+		
+		public void run()
+		{
+			final long now = System.nanoTime();
+			if (queueDelayController.shouldShed(now - enqueueTime, now))
+				shedDNSRequest(request, LoadShedReason.QUEUE_LATENCY);
+			else
+				task.run();
+		}
+	}
+	
+	/*
+	 * Runs an admitted request once an active permit is available and then gives back both permits
+	 */
+	private class PermittedRequestTask implements Runnable
+	{
+		private final Runnable task;
+		
+		public PermittedRequestTask(Runnable task)
+		{
+			this.task = task;
+		}
+		
+		public void run()
+		{
+			try
+			{
+				activeRequestPermits.acquire();
+			}
+			catch (InterruptedException e)
+			{
+				admittedRequestPermits.release();
+				return;
+			}
+			
+			try
+			{
+				task.run();
+			}
+			finally
+			{
+				activeRequestPermits.release();
+				admittedRequestPermits.release();
+			}
+		}
+	}
+	
+	/*
+	 * CoDel style queue delay controller.  A queue that drains below the target latency at least once every
+	 * interval is absorbing a burst and only requests that have waited longer than a full interval are shed.  
+	 * A queue that has stayed above the target for a full interval is a standing queue, and any request that has 
+	 * waited longer than the target is shed until the queue drains.
+	 */
+	private static class QueueDelayController
+	{
+		private final long targetNanos;
+		private final long intervalNanos;
+		private volatile long lastBelowTargetTime;
+		
+		public QueueDelayController(int targetMillis, int intervalMillis)
+		{
+			this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+			this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+			this.lastBelowTargetTime = System.nanoTime();
+		}
+		
+		public boolean shouldShed(long queueDelay, long now)
+		{
+			if (queueDelay < targetNanos)
+			{
+				lastBelowTargetTime = now;
+				return false;
+			}
+			
+			final boolean standingQueue = (now - lastBelowTargetTime) > intervalNanos;
+			return queueDelay > (standingQueue ? targetNanos : intervalNanos);
+		}
+	}
+	
+	/*
+	 * Counts batches in power of two size ranges: 1, 2-3, 4-7, ... with the last range holding everything larger 
+	 */
+	private static class BatchSizeHistogram
+	{
+		private static final int NUM_BUCKETS = 8;
+		
+		private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+		
+		public void record(int size)
+		{
+			if (size <= 0)
+				return;
+			
+			final int bucket = Math.min(NUM_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(size));
+			buckets.incrementAndGet(bucket);
+		}
+		
+		public long getCount()
+		{
+			long count = 0;
+			for (int i = 0; i < NUM_BUCKETS; ++i)
+				count += buckets.get(i);
+			
+			return count;
+		}
+		
+		@Override
+		public String toString()
+		{
+			final StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < NUM_BUCKETS; ++i)
+			{
+				final long count = buckets.get(i);
+				if (count == 0)
+					continue;
+				
+				if (builder.length() > 0)
+					builder.append(", ");
+				
+				final int low = 1 << i;
+				if (i == NUM_BUCKETS - 1)
+					builder.append(low).append("+");
+				else if (i == 0)
+					builder.append(low);
+				else
+					builder.append(low).append("-").append((low << 1) - 1);
+				
+				builder.append("=").append(count);
+			}
+			
+			return builder.toString();
+		}
+	}
+	
 	/*
 	 * class used to hold request count within a 1 second time range
 	 */
@@ -65,4 +65,107 @@ public interface DNSSocketServerMBean
 	 * @return The number of requests that were rejected by the server due to being to busy.
 	 */
 	public Long getRejectedRequestCount();
+	
+	/**
+	 * Gets the address and port that the server is listening on.  A server is created for each configured bind address. 
+	 * @return The address and port that the server is listening on.
+	 * 
+	 * @since 8.2.0
+	 */
+	public String getBindAddress();
+	
+	/**
+	 * Gets the number of received packets that were read into a recycled receive buffer.  Servers that do not pool receive buffers always return 0.
+	 * @return The number of received packets that were read into a recycled receive buffer.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Long getReceiveBufferPoolHitCount();
+	
+	/**
+	 * Gets the number of received packets that required a new receive buffer to be allocated.  A high miss count relative to the hit count 
+	 * indicates that the receive buffer pool size should be increased.  Servers that do not pool receive buffers always return 0.
+	 * @return The number of received packets that required a new receive buffer to be allocated.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Long getReceiveBufferPoolMissCount();
+	
+	/**
+	 * Gets the number of receive batches handed to workers.  Servers that do not batch received requests always return 0.
+	 * @return The number of receive batches handed to workers.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Long getReceiveBatchCount();
+	
+	/**
+	 * Gets the distribution of receive batch sizes.  The distribution is reported as the number of batches in power of two size ranges,
+	 * for example "1=120, 2-3=40, 4-7=3".  Servers that do not batch received requests always return an empty distribution.
+	 * @return The distribution of receive batch sizes.
+	 * 
+	 * @since 8.2.0
+	 */
+	public String getReceiveBatchSizeDistribution();
+	
+	/**
+	 * Gets the number of requests that were shed because no worker was available and the request queue was full.  Shed requests 
+	 * are included in the rejected request count.
+	 * @return The number of requests that were shed because the request queue was full.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Long getQueueFullShedCount();
+	
+	/**
+	 * Gets the number of requests that were shed because the request queue stayed above its target latency.  Shed requests 
+	 * are included in the rejected request count.
+	 * @return The number of requests that were shed because of queue latency.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Long getQueueLatencyShedCount();
+	
+	/**
+	 * Gets the number of requests that are currently waiting for a worker.
+	 * @return The number of requests that are currently waiting for a worker.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Integer getQueuedRequestCount();
+	
+	/**
+	 * Gets the number of requests that were answered by an identical request's in flight lookup instead of querying the DNS store.
+	 * The count is shared by all listeners of the same protocol.
+	 * @return The number of coalesced requests, or 0 if request coalescing is disabled.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Long getCoalescedRequestCount();
+	
+	/**
+	 * Gets the fraction of coalescable requests that were answered by an identical request's in flight lookup.  The ratio is shared by
+	 * all listeners of the same protocol.
+	 * @return The coalesce ratio between 0 and 1, or 0 if request coalescing is disabled.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Double getCoalesceRatio();
+	
+	/**
+	 * Gets the number of UDP responses that were dropped because they were over the response rate limit.
+	 * @return The number of dropped responses, or 0 if responses are not rate limited.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Long getRateLimitDroppedResponseCount();
+	
+	/**
+	 * Gets the number of UDP responses over the response rate limit that were replaced with a truncated response telling the client to 
+	 * retry over TCP.
+	 * @return The number of slipped responses, or 0 if responses are not rate limited.
+	 * 
+	 * @since 8.2.0
+	 */
+	public Long getRateLimitSlippedResponseCount();
 }
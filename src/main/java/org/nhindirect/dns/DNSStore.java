@@ -17,6 +17,9 @@ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
 
 package org.nhindirect.dns;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 import org.xbill.DNS.Message;
 
 /**
@@ -37,4 +40,44 @@ public interface DNSStore
 	 * a failure accessing the physical record medium.
 	 */
 	public Message get(Message dnsMsg) throws DNSException;
+	
+	/**
+	 * Asynchronously processes a lookup request for DNS records.  Stores that can perform lookups without blocking the calling thread
+	 * should override this method.  The default implementation calls {@link #get(Message)} on the calling thread and returns a completed stage.
+	 * @param dnsMsg The DSN request message.
+	 * @return A stage that completes with the DNS response message, or null for lookup requests if a matching record cannot be found.  The
+	 * stage completes exceptionally with a {@link DNSException} if the request fails.
+	 * 
+	 * @since 8.2.0
+	 */
+	public default CompletionStage<Message> getAsync(Message dnsMsg)
+	{
+		final CompletableFuture<Message> retVal = new CompletableFuture<Message>();
+		try
+		{
+			retVal.complete(get(dnsMsg));
+		}
+		catch (DNSException | RuntimeException e)
+		{
+			retVal.completeExceptionally(e);
+		}
+		
+		return retVal;
+	}
+	
+	/**
+	 * Indicates if the store is able to answer a query with the given opcode, type, and class.  The responder uses this to reject unsupported
+	 * queries directly from their wire format without building a full request message.  Queries that are rejected are answered with a 
+	 * NOTIMP response code.  The default implementation supports all queries.
+	 * @param opcode The opcode of the query.
+	 * @param type The record type of the query's question.
+	 * @param dclass The class of the query's question.
+	 * @return True if the store may be able to answer the query.  False if {@link #get(Message)} would throw a NOTIMP error.
+	 * 
+	 * @since 8.2.0
+	 */
+	public default boolean isSupportedQuery(int opcode, int type, int dclass)
+	{
+		return true;
+	}
 }
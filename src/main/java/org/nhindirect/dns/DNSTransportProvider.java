@@ -0,0 +1,55 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+/**
+ * Service provider interface for the network transport that carries DNS requests and responses.  A transport provider creates the
+ * {@link DNSSocketServer socket servers} that receive requests for a responder, so responders do not depend on any particular socket 
+ * implementation.  The provider is selected by name with {@link DNSServerSettings#getTransport()}.
+ * <p>
+ * Providers other than the built in transports are discovered with the {@link java.util.ServiceLoader} and must be listed
+ * in a META-INF/services/org.nhindirect.dns.DNSTransportProvider resource.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public interface DNSTransportProvider 
+{
+	/**
+	 * Gets the name that the transport is selected by.
+	 * @return The name of the transport.
+	 */
+	public String getName();
+	
+	/**
+	 * Creates a socket server that receives DNS requests over UDP on a single address.
+	 * @param settings The server settings.
+	 * @param responder The DNS responder that will handle lookups.
+	 * @param bindAddress The IPv4 or IPv6 address that the server will be bound to.
+	 * @return A socket server that receives DNS requests over UDP.
+	 * @throws DNSException
+	 */
+	public DNSSocketServer createUDPServer(DNSServerSettings settings, DNSResponder responder, String bindAddress) throws DNSException;
+	
+	/**
+	 * Creates a socket server that receives DNS requests over TCP on a single address.
+	 * @param settings The server settings.
+	 * @param responder The DNS responder that will handle lookups.
+	 * @param bindAddress The IPv4 or IPv6 address that the server will be bound to.
+	 * @return A socket server that receives DNS requests over TCP.
+	 * @throws DNSException
+	 */
+	public DNSSocketServer createTCPServer(DNSServerSettings settings, DNSResponder responder, String bindAddress) throws DNSException;
+}
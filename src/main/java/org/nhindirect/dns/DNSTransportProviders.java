@@ -0,0 +1,52 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.util.ServiceLoader;
+
+/**
+ * Locates {@link DNSTransportProvider transport providers} by name.  The built in providers are checked first, followed by 
+ * any providers registered with the {@link ServiceLoader}.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSTransportProviders 
+{
+	private DNSTransportProviders()
+	{
+		
+	}
+	
+	/**
+	 * Gets the transport provider with the given name.
+	 * @param name The name of the transport provider.  Names are not case sensitive.  A null name returns the default provider.
+	 * @return The transport provider with the given name.
+	 * @throws DNSException If no transport provider is registered with the given name.
+	 */
+	public static DNSTransportProvider getProvider(String name) throws DNSException
+	{
+		if (name == null || name.equalsIgnoreCase(DefaultDNSTransportProvider.NAME))
+			return new DefaultDNSTransportProvider();
+		else if (name.equalsIgnoreCase(MinaDNSTransportProvider.NAME))
+			return new MinaDNSTransportProvider();
+		
+		for (DNSTransportProvider provider : ServiceLoader.load(DNSTransportProvider.class))
+			if (name.equalsIgnoreCase(provider.getName()))
+				return provider;
+		
+		throw new DNSException("Unknown DNS transport " + name);
+	}
+}
@@ -0,0 +1,241 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.xbill.DNS.Type;
+
+/**
+ * Utility methods for working directly with DNS messages in raw wire protocol format.  These methods are used in hot paths
+ * where building a full {@link org.xbill.DNS.Message} would be too expensive, such as answering requests while the server 
+ * is overloaded.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DNSWireUtils
+{
+	/**
+	 * Length of the fixed DNS message header.
+	 */
+	public static final int HEADER_LENGTH = 12;
+	
+	protected static final int FLAGS_OFFSET = 2;
+	protected static final int QDCOUNT_OFFSET = 4;
+	protected static final int ANCOUNT_OFFSET = 6;
+	
+	protected static final int QR_FLAG = 0x80;
+	protected static final int TC_FLAG = 0x02;
+	protected static final int OPCODE_MASK = 0x78;
+	protected static final int RD_FLAG = 0x01;
+	protected static final int RCODE_MASK = 0x0F;
+	
+	protected static final int OPT_RECORD_LENGTH = 11;
+	protected static final int EDNS_DO_FLAG = 0x8000;
+	
+	private DNSWireUtils()
+	{
+		
+	}
+	
+	/**
+	 * Gets the response code held in the header of a message.  Extended response code bits held in an OPT record are not included.
+	 * @param msg The message in wire format.
+	 * @return The response code, or -1 if the message is shorter than a header.
+	 */
+	public static int getRcode(byte[] msg)
+	{
+		return (msg.length < HEADER_LENGTH) ? -1 : msg[FLAGS_OFFSET + 1] & RCODE_MASK;
+	}
+	
+	/**
+	 * Gets the number of records in the answer section of a message.
+	 * @param msg The message in wire format.
+	 * @return The number of answer records, or -1 if the message is shorter than a header.
+	 */
+	public static int getAnswerCount(byte[] msg)
+	{
+		return (msg.length < HEADER_LENGTH) ? -1 : ((msg[ANCOUNT_OFFSET] & 0xFF) << 8) | (msg[ANCOUNT_OFFSET + 1] & 0xFF);
+	}
+	
+	/**
+	 * Finds the end of the question section of a message.  Only messages with zero or one questions are supported.
+	 * @param msg The message in wire format.  The message starts at the buffer's position and ends at its limit.  The buffer's position is not changed.
+	 * @return The offset relative to the start of the message of the first byte after the question section, or -1 if the header or 
+	 * question is malformed or the message holds more than one question.
+	 */
+	public static int getQuestionEnd(ByteBuffer msg)
+	{
+		final int start = msg.position();
+		final int length = msg.remaining();
+		if (length < HEADER_LENGTH)
+			return -1;
+		
+		final int qdCount = ((msg.get(start + QDCOUNT_OFFSET) & 0xFF) << 8) | (msg.get(start + QDCOUNT_OFFSET + 1) & 0xFF);
+		if (qdCount == 0)
+			return HEADER_LENGTH;
+		else if (qdCount > 1)
+			return -1;
+		
+		int offset = HEADER_LENGTH;
+		while (true)
+		{
+			if (offset >= length)
+				return -1;
+			
+			final int labelLength = msg.get(start + offset) & 0xFF;
+			if (labelLength == 0)
+			{
+				++offset;
+				break;
+			}
+			else if ((labelLength & 0xC0) == 0xC0)
+			{
+				// compression pointer ends the name
+				offset += 2;
+				break;
+			}
+			else if (labelLength > 63)
+				return -1;
+			
+			offset += labelLength + 1;
+		}
+		
+		// type and class
+		offset += 4;
+		
+		return (offset <= length) ? offset : -1;
+	}
+	
+	/**
+	 * Creates an error response to a request directly from the raw request.  The response copies the request ID, opcode, RD flag, and
+	 * question, sets the QR flag and the response code, and holds no other records.
+	 * @param request The request in wire format.  The request starts at the buffer's position and ends at its limit.  The buffer's 
+	 * position is not changed.
+	 * @param rcode The response code.
+	 * @return The response in wire format, or null if the request is a response itself or is too malformed to build a response.
+	 */
+	public static byte[] createErrorResponse(ByteBuffer request, int rcode)
+	{
+		return createErrorResponse(request, rcode, 0, false);
+	}
+	
+	/**
+	 * Creates an error response to a request directly from the raw request, optionally with an EDNS0 OPT record.  The response copies the 
+	 * request ID, opcode, RD flag, and question, sets the QR flag and the response code, and holds no other records except the OPT record.
+	 * @param request The request in wire format.  The request starts at the buffer's position and ends at its limit.  The buffer's 
+	 * position is not changed.
+	 * @param rcode The full response code.  Extended response code bits are written to the OPT record and are dropped if the response
+	 * does not have one.
+	 * @param ednsPayloadSize The UDP payload size advertised in the response's OPT record, or 0 if the response should not have an OPT record.
+	 * @param dnssecOK Indicates if the DO flag is set in the response's OPT record.
+	 * @return The response in wire format, or null if the request is a response itself or is too malformed to build a response.
+	 */
+	public static byte[] createErrorResponse(ByteBuffer request, int rcode, int ednsPayloadSize, boolean dnssecOK)
+	{
+		final int questionEnd = getQuestionEnd(request);
+		if (questionEnd < 0)
+			return null;
+		
+		// never answer a response... that's a good way to start a packet storm
+		if ((request.get(request.position() + FLAGS_OFFSET) & QR_FLAG) != 0)
+			return null;
+		
+		final byte[] response = new byte[questionEnd + ((ednsPayloadSize > 0) ? OPT_RECORD_LENGTH : 0)];
+		request.duplicate().get(response, 0, questionEnd);
+		
+		response[FLAGS_OFFSET] = (byte)(QR_FLAG | (response[FLAGS_OFFSET] & (OPCODE_MASK | RD_FLAG)));
+		response[FLAGS_OFFSET + 1] = (byte)(rcode & RCODE_MASK);
+		
+		// answer, authority, and additional counts
+		for (int i = QDCOUNT_OFFSET + 2; i < HEADER_LENGTH; ++i)
+			response[i] = 0;
+		
+		if (ednsPayloadSize > 0)
+		{
+			response[HEADER_LENGTH - 1] = 1;
+			
+			// root owner name, type, payload size as the class, and extended rcode, version, and flags as the TTL... the rdata is empty
+			int offset = questionEnd + 1;
+			response[offset++] = (byte)(Type.OPT >>> 8);
+			response[offset++] = (byte)Type.OPT;
+			response[offset++] = (byte)(ednsPayloadSize >>> 8);
+			response[offset++] = (byte)ednsPayloadSize;
+			response[offset++] = (byte)(rcode >>> 4);
+			response[offset++] = 0;
+			response[offset] = (byte)(dnssecOK ? (EDNS_DO_FLAG >>> 8) : 0);
+		}
+		
+		return response;
+	}
+	
+	/**
+	 * Creates a copy of a previously serialized response patched to answer a new request.  The message ID and RD flag are copied from the request, 
+	 * and so is the question name so that the case of the name matches the request.  The question name is only copied if the request and 
+	 * response question names are the same length, which is always true for names that only differ by case, and the request name is not compressed.
+	 * @param response The previously serialized response.  The response is not modified.
+	 * @param request The request in wire format.  The request starts at the buffer's position and ends at its limit.  The buffer's 
+	 * position is not changed.
+	 * @return The patched copy of the response, or null if the request is malformed.
+	 */
+	public static byte[] patchResponse(byte[] response, ByteBuffer request)
+	{
+		final int requestQuestionEnd = getQuestionEnd(request);
+		if (requestQuestionEnd < 0 || response.length < HEADER_LENGTH)
+			return null;
+		
+		final int start = request.position();
+		final byte[] retVal = response.clone();
+		
+		// message ID
+		retVal[0] = request.get(start);
+		retVal[1] = request.get(start + 1);
+		
+		retVal[FLAGS_OFFSET] = (byte)((retVal[FLAGS_OFFSET] & ~RD_FLAG) | (request.get(start + FLAGS_OFFSET) & RD_FLAG));
+		
+		// the name is followed by the 4 byte type and class... only uncompressed names that end with the root label are copied
+		final int nameLength = requestQuestionEnd - HEADER_LENGTH - 4;
+		if (nameLength > 0 && request.get(start + HEADER_LENGTH + nameLength - 1) == 0 && 
+				getQuestionEnd(ByteBuffer.wrap(response)) == requestQuestionEnd)
+			for (int i = HEADER_LENGTH; i < HEADER_LENGTH + nameLength; ++i)
+				retVal[i] = request.get(start + i);
+		
+		return retVal;
+	}
+	
+	/**
+	 * Creates a truncated copy of a response that holds only the header and question with the TC flag set.  Clients that receive a truncated 
+	 * response retry the request over TCP.
+	 * @param response The response in wire format.  The response is not modified.
+	 * @return The truncated response, or null if the response is malformed.
+	 */
+	public static byte[] createTruncatedResponse(byte[] response)
+	{
+		final int questionEnd = getQuestionEnd(ByteBuffer.wrap(response));
+		if (questionEnd < 0)
+			return null;
+		
+		final byte[] retVal = Arrays.copyOf(response, questionEnd);
+		retVal[FLAGS_OFFSET] |= TC_FLAG;
+		
+		// answer, authority, and additional counts
+		for (int i = QDCOUNT_OFFSET + 2; i < HEADER_LENGTH; ++i)
+			retVal[i] = 0;
+		
+		return retVal;
+	}
+}
@@ -0,0 +1,54 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+/**
+ * Transport provider for the original blocking socket servers.  UDP requests are handled by the {@link UDPServer}, or the {@link NIOUDPServer}
+ * if it is enabled in the settings, and TCP requests are handled by the {@link TCPServer}.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+public class DefaultDNSTransportProvider implements DNSTransportProvider
+{
+	public static final String NAME = "default";
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName()
+	{
+		return NAME;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public DNSSocketServer createUDPServer(DNSServerSettings settings, DNSResponder responder, String bindAddress) throws DNSException
+	{
+		return settings.isNIOUDPEnabled() ? new NIOUDPServer(settings, responder, bindAddress) : new UDPServer(settings, responder, bindAddress);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public DNSSocketServer createTCPServer(DNSServerSettings settings, DNSResponder responder, String bindAddress) throws DNSException
+	{
+		return new TCPServer(settings, responder, bindAddress);
+	}
+}
@@ -0,0 +1,359 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionStage;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.CumulativeProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * TCP server that handles DNS requests over TCP using an Apache MINA socket acceptor.  Connections are read and written by a pool of 
+ * event driven I/O processors sized by {@link DNSServerSettings#getIOProcessorThreads()}, so an idle connection does not tie up a thread.
+ * <p>
+ * By default, each connection carries a single request and is closed after the response is written.  If persistent connections are
+ * enabled in the {@link DNSServerSettings}, connections are kept open until they sit idle, and requests on a connection are processed
+ * concurrently and answered as soon as each response is ready as described in RFC 7766.  Because an idle connection costs no thread,
+ * the maximum number of open connections is enforced whether or not persistent connections are enabled.
+ * <p>
+ * This server is part of the experimental MINA transport.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+@Slf4j
+public class MinaTCPServer extends DNSSocketServer
+{
+	private static final AttributeKey CONNECTION_STATE = new AttributeKey(MinaTCPServer.class, "connectionState");
+	
+	private NioSocketAcceptor acceptor;
+	
+	/**
+	 * Creates a MINA TCP socket server that listens on a single address.  The server will not start accepting messages until the {@link #start()} method is called.
+	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
+	 * @param responsder The DNS responder that will handle lookups.
+	 * @param bindAddress The IPv4 or IPv6 address that the server will be bound to.
+	 * @throws DNSException
+	 */
+	public MinaTCPServer(DNSServerSettings settings, DNSResponder responder, String bindAddress) throws DNSException
+	{
+		super(settings, responder, bindAddress);
+		
+		registerMBean(this.getClass());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void start() throws DNSException
+	{
+		log.info("DNS MINA TCP Server Starting");
+		log.warn("The MINA transport is experimental.  Use the default transport for production deployments.");
+		super.start();
+		
+		if (log.isInfoEnabled())
+		{
+			StringBuilder builder = new StringBuilder();
+			builder.append("DNS MINA TCP Server Startup Complete\r\n\tBind Address: ").append(bindAddress);
+			builder.append("\r\n\tBind Port: ").append(settings.getPort());
+			builder.append("\r\n\tI/O Processors: ").append(settings.getIOProcessorThreads());
+			builder.append("\r\n\tPersistent Connections: ").append(settings.isTCPPersistentConnections());
+			log.info(builder.toString());
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void stop() throws DNSException
+	{
+		super.stop();
+		
+		acceptor.unbind();
+		acceptor.dispose();
+		
+		waitForGracefulStop();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void createServerSocket() throws DNSException
+	{
+		acceptor = new NioSocketAcceptor(settings.getIOProcessorThreads());
+		acceptor.setReuseAddress(true);
+		acceptor.setBacklog(settings.getMaxConnectionBacklog());
+		acceptor.getFilterChain().addLast("codec", new ProtocolCodecFilter(new MessageEncoder(), new MessageDecoder()));
+		
+		final int idleTimeout = settings.isTCPPersistentConnections() ? settings.getTCPIdleTimeout() : settings.getReceiveTimeout(); 
+		acceptor.getSessionConfig().setBothIdleTime(Math.max(1, (idleTimeout + 999) / 1000));
+		acceptor.getSessionConfig().setReadBufferSize(settings.getReadBufferSize());
+		acceptor.setHandler(new RequestHandler());
+		
+		try
+		{
+			acceptor.bind(getBindSocketAddress());
+		}
+		catch (Exception e)
+		{
+			acceptor.dispose();
+			throw new DNSException(null, "Failed to create MINA TCP server socket: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getSocketAcceptThreadCount()
+	{
+		// connections are accepted and read by MINA's threads
+		return 0;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Runnable getSocketAcceptTask()
+	{
+		return null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Runnable getDNSRequestTask(Object request)
+	{
+		return new RequestTask((ReceivedRequest)request);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void rejectDNSRequest(Object request, LoadShedReason reason)
+	{
+		// unlike the blocking TCP server, the query has already been read, so it can be answered
+		final ReceivedRequest inRequest = (ReceivedRequest)request;
+		
+		final byte[] writeBytes = createLoadShedResponse(inRequest.data);
+		if (writeBytes != null)
+			inRequest.session.write(writeBytes);
+		
+		inRequest.state.requestComplete(inRequest.session);
+	}
+	
+	/*
+	 * Request payload and the connection that it was read from
+	 */
+	private static class ReceivedRequest
+	{
+		private final IoSession session;
+		private final ConnectionState state;
+		private final ByteBuffer data;
+		
+		public ReceivedRequest(IoSession session, ConnectionState state, ByteBuffer data)
+		{
+			this.session = session;
+			this.state = state;
+			this.data = data;
+		}
+	}
+	
+	/*
+	 * Tracks the outstanding requests of a connection.  Reading is suspended while the connection 
+	 * has the maximum number of pipelined requests outstanding, and the connection is closed once
+	 * it has received its last request and all responses have been written.
+	 */
+	private class ConnectionState
+	{
+		private int receivedCount = 0;
+		private int outstandingCount = 0;
+		private boolean draining = false;
+		
+		public synchronized void requestReceived(IoSession session)
+		{
+			++receivedCount;
+			++outstandingCount;
+			
+			if (!settings.isTCPPersistentConnections())
+				draining = true;
+			else if (settings.getTCPMaxRequestsPerConnection() > 0 && receivedCount >= settings.getTCPMaxRequestsPerConnection())
+				draining = true;
+			
+			if (draining || outstandingCount >= settings.getTCPMaxPipelinedRequests())
+				session.suspendRead();
+		}
+		
+		public synchronized void requestComplete(IoSession session)
+		{
+			--outstandingCount;
+			
+			if (draining)
+			{
+				if (outstandingCount == 0)
+					session.closeOnFlush();
+			}
+			else if (outstandingCount == settings.getTCPMaxPipelinedRequests() - 1)
+				session.resumeRead();
+		}
+	}
+	
+	/*
+	 * Hands decoded requests off to the request executor and manages the connection lifecycle
+	 */
+	private class RequestHandler extends IoHandlerAdapter
+	{
+		@Override
+		public void sessionCreated(IoSession session)
+		{
+			// the acceptor keeps reading new connections without a thread per connection, so the limit applies to every connection
+			if (acceptor.getManagedSessionCount() > settings.getTCPMaxConnections())
+			{
+				log.warn("Maximum number of TCP connections has been reached.  Closing connection.");
+				session.closeNow();
+				return;
+			}
+			
+			session.setAttribute(CONNECTION_STATE, new ConnectionState());
+		}
+		
+		@Override
+		public void messageReceived(IoSession session, Object message)
+		{
+			final ConnectionState state = (ConnectionState)session.getAttribute(CONNECTION_STATE);
+			if (!running.get() || state == null)
+			{
+				session.closeNow();
+				return;
+			}
+			
+			state.requestReceived(session);
+			submitDNSRequest(new ReceivedRequest(session, state, ByteBuffer.wrap((byte[])message)));
+		}
+		
+		@Override
+		public void sessionIdle(IoSession session, IdleStatus status)
+		{
+			session.closeNow();
+		}
+		
+		@Override
+		public void exceptionCaught(IoSession session, Throwable cause)
+		{
+			log.debug("MINA TCP connection error: " + cause.getMessage());
+			session.closeNow();
+		}
+	}
+	
+	/*
+	 * Splits the stream into DNS messages, each of which is prefixed with its 2 byte length
+	 */
+	private class MessageDecoder extends CumulativeProtocolDecoder
+	{
+		@Override
+		protected boolean doDecode(IoSession session, IoBuffer in, ProtocolDecoderOutput out)
+		{
+			// throws if the message is larger than the max request size, which closes the connection
+			if (!in.prefixedDataAvailable(2, settings.getMaxRequestSize()))
+				return false;
+			
+			final byte[] message = new byte[in.getUnsignedShort()];
+			in.get(message);
+			out.write(message);
+			
+			return true;
+		}
+	}
+	
+	/*
+	 * Writes DNS messages prefixed with their 2 byte length
+	 */
+	private static class MessageEncoder extends ProtocolEncoderAdapter
+	{
+		@Override
+		public void encode(IoSession session, Object message, ProtocolEncoderOutput out)
+		{
+			final byte[] bytes = (byte[])message;
+			final IoBuffer buffer = IoBuffer.allocate(bytes.length + 2);
+			buffer.putUnsignedShort(bytes.length);
+			buffer.put(bytes);
+			buffer.flip();
+			
+			out.write(buffer);
+		}
+	}
+	
+	/*
+	 * Task that handles DNS requests.
+	 */
+	private class RequestTask implements Runnable
+	{
+		private final ReceivedRequest inRequest;
+		
+		public RequestTask(ReceivedRequest inRequest)
+		{
+			this.inRequest = inRequest;
+		}
+		
+		public void run()
+		{
+			final CompletionStage<byte[]> response;
+			try
+			{
+				response = responder.processRequestAsync(inRequest.data, false);
+			}
+			catch (RuntimeException e)
+			{
+				inRequest.state.requestComplete(inRequest.session);
+				throw e;
+			}
+			
+			// the request stays outstanding on its connection until the response is written
+			response.whenComplete((writeBytes, e) ->
+			{
+				try
+				{
+					/* an unparseable request has no response */
+					final byte[] outBytes = (e == null) ? writeBytes : null;
+					updateResponseMetrics(outBytes);
+					
+					if (outBytes != null)
+						inRequest.session.write(outBytes);
+				}
+				finally
+				{
+					inRequest.state.requestComplete(inRequest.session);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns;
+
+import java.nio.ByteBuffer;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.transport.socket.DatagramSessionConfig;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * UDP server that handles DNS requests over UDP using an Apache MINA datagram acceptor.  Datagrams are read by MINA's event driven
+ * I/O processor and handed to the request executor, so the server does not run any receive threads of its own.
+ * <p>
+ * This server is part of the experimental MINA transport.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+@Slf4j
+public class MinaUDPServer extends DNSSocketServer
+{
+	private NioDatagramAcceptor acceptor;
+	
+	/**
+	 * Creates a MINA UDP server that listens to datagram packets on a single address.  The server will not start accepting messages until the {@link #start()} method is called.
+	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
+	 * @param responsder The DNS responder that will handle lookups.
+	 * @param bindAddress The IPv4 or IPv6 address that the server will be bound to.
+	 * @throws DNSException
+	 */
+	public MinaUDPServer(DNSServerSettings settings, DNSResponder responder, String bindAddress) throws DNSException
+	{
+		super(settings, responder, bindAddress);
+		
+		if (settings.getResponseRateLimit() > 0)
+			responseRateLimiter = new DNSResponseRateLimiter(settings);
+		
+		registerMBean(this.getClass());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void start() throws DNSException
+	{
+		log.info("DNS MINA UDP Server Starting");
+		log.warn("The MINA transport is experimental.  Use the default transport for production deployments.");
+		super.start();
+		
+		if (log.isInfoEnabled())
+		{
+			StringBuilder builder = new StringBuilder();
+			builder.append("DNS MINA UDP Server Startup Complete\r\n\tBind Address: ").append(bindAddress);
+			builder.append("\r\n\tBind Port: ").append(settings.getPort());
+			log.info(builder.toString());
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void stop() throws DNSException
+	{
+		super.stop();
+		
+		acceptor.unbind();
+		acceptor.dispose();
+		
+		waitForGracefulStop();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void createServerSocket() throws DNSException
+	{
+		acceptor = new NioDatagramAcceptor();
+		acceptor.setHandler(new RequestHandler());
+		
+		final DatagramSessionConfig config = acceptor.getSessionConfig();
+		config.setReuseAddress(true);
+		config.setReceiveBufferSize(settings.getMaxRequestSize());
+		config.setReadBufferSize(settings.getMaxRequestSize());
+		
+		try
+		{
+			acceptor.bind(getBindSocketAddress());
+		}
+		catch (Exception e)
+		{
+			acceptor.dispose();
+			throw new DNSException(null, "Failed to create MINA UDP server socket: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getSocketAcceptThreadCount()
+	{
+		// datagrams are received on MINA's I/O processor thread
+		return 0;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Runnable getSocketAcceptTask()
+	{
+		return null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Runnable getDNSRequestTask(Object packet)
+	{
+		return new RequestTask((ReceivedPacket)packet);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void rejectDNSRequest(Object packet, LoadShedReason reason)
+	{
+		final ReceivedPacket inPacket = (ReceivedPacket)packet;
+		
+		final byte[] writeBytes = createLoadShedResponse(inPacket.data);
+		if (writeBytes != null)
+			inPacket.session.write(IoBuffer.wrap(writeBytes));
+	}
+	
+	/*
+	 * Datagram payload and the session of the client that sent it
+	 */
+	private static class ReceivedPacket
+	{
+		private final IoSession session;
+		private final ByteBuffer data;
+		
+		public ReceivedPacket(IoSession session, ByteBuffer data)
+		{
+			this.session = session;
+			this.data = data;
+		}
+	}
+	
+	/*
+	 * Receives datagrams from the I/O processor and hands them off to the request executor
+	 */
+	private class RequestHandler extends IoHandlerAdapter
+	{
+		@Override
+		public void messageReceived(IoSession session, Object message)
+		{
+			if (!running.get())
+				return;
+			
+			// MINA allocates a new buffer for every datagram, so the buffer can be handed off as is
+			submitDNSRequest(new ReceivedPacket(session, ((IoBuffer)message).buf()));
+		}
+		
+		@Override
+		public void exceptionCaught(IoSession session, Throwable cause)
+		{
+			// udp has no state, so there is nothing to clean up
+			log.debug("MINA UDP session error: " + cause.getMessage());
+		}
+	}
+	
+	/*
+	 * Task that handles DNS requests.
+	 */
+	private class RequestTask implements Runnable
+	{
+		private final ReceivedPacket inPacket;
+		
+		public RequestTask(ReceivedPacket inPacket)
+		{
+			this.inPacket = inPacket;
+		}
+		
+		public void run()
+		{
+			responder.processRequestAsync(inPacket.data, true).whenComplete((writeBytes, e) ->
+			{
+				/* an unparseable request has no response */
+				final byte[] response = (e == null) ? writeBytes : null;
+				updateResponseMetrics(response);
+				
+				final byte[] sendBytes = applyResponseRateLimit(inPacket.session.getRemoteAddress(), response);
+				if (sendBytes != null)
+					inPacket.session.write(IoBuffer.wrap(sendBytes));
+			});
+		}
+	}
+}
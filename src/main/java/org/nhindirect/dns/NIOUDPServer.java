@@ -0,0 +1,527 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package org.nhindirect.dns;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * UDP server that handles DNS requests over UDP using NIO datagram channels.  Unlike the {@link UDPServer}, this server
+ * runs multiple receiver loops.  If the platform supports SO_REUSEPORT, each receiver loop is bound to its own channel on
+ * the same address and port and the kernel distributes incoming packets across the channels.  Otherwise all receiver loops
+ * share a single channel.
+ * <p>
+ * If {@link DNSServerSettings#getUDPReceiveBatchSize()} is greater than 1, the channels are non-blocking and each receiver loop
+ * drains every datagram available on its channel when it wakes up, up to the batch size.  Each drained datagram is still admitted as its
+ * own request, so it takes its own request permit and its response is sent as soon as its own lookup completes.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+@Slf4j
+public class NIOUDPServer extends DNSSocketServer
+{
+	private static final long SELECT_TIMEOUT = 500;
+	
+	private DatagramChannel[] channels;
+	private AtomicInteger nextReceiver;
+	
+	/**
+	 * Creates a NIO UDP server that listens to datagram packets.  The server will not start accepting messages until the {@link #start()} method is called.
+	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
+	 * @param responsder The DNS responder that will handle lookups.
+	 * @throws DNSException
+	 */
+	public NIOUDPServer(DNSServerSettings settings, DNSResponder responder) throws DNSException
+	{
+		this(settings, responder, settings.getBindAddresses().get(0));
+	}
+	
+	/**
+	 * Creates a NIO UDP server that listens to datagram packets on a single address.  The server will not start accepting messages until the {@link #start()} method is called.
+	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
+	 * @param responsder The DNS responder that will handle lookups.
+	 * @param bindAddress The IPv4 or IPv6 address that the server will be bound to.
+	 * @throws DNSException
+	 */
+	public NIOUDPServer(DNSServerSettings settings, DNSResponder responder, String bindAddress) throws DNSException
+	{
+		super(settings, responder, bindAddress);
+		
+		nextReceiver = new AtomicInteger(0);
+		receiveBufferPool = new ByteBufferPool(settings.getMaxRequestSize(), settings.getReceiveBufferPoolSize(), true);
+		
+		if (settings.getResponseRateLimit() > 0)
+			responseRateLimiter = new DNSResponseRateLimiter(settings);
+		
+		registerMBean(this.getClass());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void start() throws DNSException
+	{
+		log.info("DNS NIO UDP Server Starting");
+		super.start();
+		
+		if (log.isInfoEnabled())
+		{
+			StringBuilder builder = new StringBuilder();
+			builder.append("DNS NIO UDP Server Startup Complete\r\n\tBind Address: ").append(bindAddress);
+			builder.append("\r\n\tBind Port: ").append(settings.getPort());
+			builder.append("\r\n\tReceiver Threads: ").append(settings.getUDPReceiverThreads());
+			builder.append("\r\n\tReceive Channels: ").append(channels.length);
+			builder.append("\r\n\tReceive Batch Size: ").append(settings.getUDPReceiveBatchSize());
+			log.info(builder.toString());
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void stop() throws DNSException
+	{
+		super.stop();
+		
+		for (DatagramChannel channel : channels)
+			closeQuietly(channel);
+		
+		waitForGracefulStop();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void createServerSocket() throws DNSException
+	{
+		final int receiverCount = settings.getUDPReceiverThreads();
+		
+		try
+		{
+			final DatagramChannel first = openChannel(receiverCount > 1);
+			
+			if (receiverCount > 1 && getReusePortOption(first) != null)
+			{
+				channels = new DatagramChannel[receiverCount];
+				channels[0] = first;
+				for (int i = 1; i < receiverCount; ++i)
+					channels[i] = openChannel(true);
+			}
+			else
+			{
+				if (receiverCount > 1)
+					log.info("SO_REUSEPORT is not supported on this platform.  UDP receiver threads will share a single channel.");
+				
+				channels = new DatagramChannel[] {first};
+			}
+		}
+		catch (Exception e)
+		{
+			if (channels != null)
+				for (DatagramChannel channel : channels)
+					closeQuietly(channel);
+			
+			throw new DNSException(null, "Failed to create NIO UDP server channel: " + e.getMessage(), e);
+		}
+	}
+	
+	/*
+	 * Opens and binds a single datagram channel
+	 */
+	@SuppressWarnings("unchecked")
+	private DatagramChannel openChannel(boolean reusePort) throws IOException
+	{
+		final DatagramChannel channel = DatagramChannel.open();
+		try
+		{
+			final SocketOption<?> reusePortOption = getReusePortOption(channel);
+			if (reusePort && reusePortOption != null)
+				channel.setOption((SocketOption<Boolean>)reusePortOption, Boolean.TRUE);
+			
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, settings.getMaxRequestSize());
+			if (isBatchReceiveEnabled())
+				channel.configureBlocking(false);
+			channel.bind(getBindSocketAddress());
+		}
+		catch (IOException e)
+		{
+			closeQuietly(channel);
+			throw e;
+		}
+		
+		return channel;
+	}
+	
+	/*
+	 * SO_REUSEPORT is only exposed as a standard option in later JDKs and not on all platforms,
+	 * so look it up by name.
+	 */
+	private static SocketOption<?> getReusePortOption(DatagramChannel channel)
+	{
+		for (SocketOption<?> option : channel.supportedOptions())
+			if (option.name().equals("SO_REUSEPORT"))
+				return option;
+		
+		return null;
+	}
+	
+	private boolean isBatchReceiveEnabled()
+	{
+		return settings.getUDPReceiveBatchSize() > 1;
+	}
+	
+	private static void closeQuietly(DatagramChannel channel)
+	{
+		if (channel == null)
+			return;
+		
+		try
+		{
+			channel.close();
+		}
+		catch (IOException e) {/* no-op */}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getSocketAcceptThreadCount()
+	{
+		return settings.getUDPReceiverThreads();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Runnable getSocketAcceptTask()
+	{
+		final int channelIndex = nextReceiver.getAndIncrement() % channels.length;
+		return isBatchReceiveEnabled() ? new BatchReceiveTask(channelIndex) : new ReceiveTask(channelIndex);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Runnable getDNSRequestTask(Object packet)
+	{
+		return new RequestTask((ReceivedPacket)packet);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void rejectDNSRequest(Object packet, LoadShedReason reason)
+	{
+		final ReceivedPacket inPacket = (ReceivedPacket)packet;
+		try
+		{
+			final byte[] writeBytes = createLoadShedResponse(inPacket.data);
+			if (writeBytes != null)
+				inPacket.channel.send(ByteBuffer.wrap(writeBytes), inPacket.source);
+		}
+		catch (IOException e)
+		{
+			/* no-op... we're too busy to worry about it */
+		}
+		finally
+		{
+			receiveBufferPool.release(inPacket.data);
+		}
+	}
+	
+	/*
+	 * Datagram payload and the channel and address that it was received from
+	 */
+	private static class ReceivedPacket
+	{
+		private final DatagramChannel channel;
+		private final SocketAddress source;
+		private final ByteBuffer data;
+		
+		public ReceivedPacket(DatagramChannel channel, SocketAddress source, ByteBuffer data)
+		{
+			this.channel = channel;
+			this.source = source;
+			this.data = data;
+		}
+	}
+	
+	/*
+	 * Task that listens for datagram packets on one channel
+	 */
+	private class ReceiveTask implements Runnable
+	{
+		private final int channelIndex;
+		
+		public ReceiveTask(int channelIndex)
+		{
+			this.channelIndex = channelIndex;
+		}
+		
+		public void run()
+		{
+			ByteBuffer inBuffer = null;
+			
+			while(running.get())
+			{
+				final DatagramChannel channel = channels[channelIndex];
+				try
+				{
+					if (inBuffer == null)
+						inBuffer = receiveBufferPool.acquire();
+					
+					final SocketAddress source = channel.receive(inBuffer);
+					if (source == null)
+						continue;
+					
+					inBuffer.flip();
+					submitDNSRequest(new ReceivedPacket(channel, source, inBuffer));
+					inBuffer = null;
+				}
+				catch (ClosedChannelException e)
+				{
+					// the channel is closed on shutdown... otherwise we lost it
+					if (running.get())
+					{
+						log.error("DNS NIO UDP server channel dropped:" + e.getMessage());
+						reconnect(channelIndex, channel);
+					}
+				}
+				catch (Throwable e)
+				{
+					// udp has no state, so we can just call receive again
+					if (inBuffer != null)
+						inBuffer.clear();
+				}
+			}
+			
+			receiveBufferPool.release(inBuffer);
+		}
+	}
+	
+	/*
+	 * Task that waits for datagrams on one non-blocking channel and drains all available datagrams
+	 * each time it wakes up
+	 */
+	private class BatchReceiveTask implements Runnable
+	{
+		private final int channelIndex;
+		
+		public BatchReceiveTask(int channelIndex)
+		{
+			this.channelIndex = channelIndex;
+		}
+		
+		public void run()
+		{
+			final int maxBatchSize = settings.getUDPReceiveBatchSize();
+			
+			Selector selector = null;
+			DatagramChannel registeredChannel = null;
+			ByteBuffer inBuffer = null;
+			
+			try
+			{
+				selector = Selector.open();
+				
+				while(running.get())
+				{
+					final DatagramChannel channel = channels[channelIndex];
+					try
+					{
+						// the channel changes if it had to be reopened
+						if (channel != registeredChannel)
+						{
+							channel.register(selector, SelectionKey.OP_READ);
+							registeredChannel = channel;
+						}
+						
+						// wake up periodically to check if the server has been stopped
+						if (selector.select(SELECT_TIMEOUT) == 0)
+							continue;
+						
+						selector.selectedKeys().clear();
+						
+						// each datagram is admitted on its own so a slow lookup never holds up the other responses of the batch
+						int batchSize = 0;
+						while (batchSize < maxBatchSize)
+						{
+							if (inBuffer == null)
+								inBuffer = receiveBufferPool.acquire();
+							
+							final SocketAddress source = channel.receive(inBuffer);
+							if (source == null)
+								break;
+							
+							inBuffer.flip();
+							final ReceivedPacket inPacket = new ReceivedPacket(channel, source, inBuffer);
+							inBuffer = null;
+							++batchSize;
+							submitDNSRequest(inPacket);
+						}
+						
+						if (batchSize > 0)
+							recordReceiveBatch(batchSize);
+					}
+					catch (ClosedChannelException e)
+					{
+						// the channel is closed on shutdown... otherwise we lost it
+						if (running.get())
+						{
+							log.error("DNS NIO UDP server channel dropped:" + e.getMessage());
+							reconnect(channelIndex, channel);
+						}
+					}
+					catch (IOException e)
+					{
+						// udp has no state, so we can just call receive again
+						if (inBuffer != null)
+							inBuffer.clear();
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				log.error("DNS NIO UDP server failed to open a selector: " + e.getMessage(), e);
+			}
+			finally
+			{
+				receiveBufferPool.release(inBuffer);
+				
+				if (selector != null)
+				{
+					try
+					{
+						selector.close();
+					}
+					catch (IOException e) {/* no-op */}
+				}
+			}
+		}
+	}
+	
+	/*
+	 * In the event that a receiver loses its channel, we need to open up a new
+	 * channel to listen for datagram packets.  Receivers that share a channel
+	 * will all see the same dropped channel, so only the first one through replaces it.
+	 */
+	private synchronized void reconnect(int channelIndex, DatagramChannel droppedChannel)
+	{
+		if (channels[channelIndex] != droppedChannel)
+			return;
+		
+		closeQuietly(droppedChannel);
+		
+		int numAttempts = 0;
+		while (running.get())
+		{	
+			try
+			{
+				channels[channelIndex] = openChannel(channels.length > 1);
+				log.error("DNS NIO UDP server channel re-established");
+				return;
+			}
+			catch (IOException ex)
+			{
+				++numAttempts;
+				if (numAttempts > settings.getMaxReconnectAttempts())
+				{
+					log.error("Maximum number of UDP rebinds has been exceeded.  The DNS server will terminate");
+					System.exit(-1);
+				}
+				
+				log.error("DNS NIO UDP server channel failed to rebind.  Trying again in 5 seconds.");
+				
+				// the channel creation failed.... 
+				// sleep 5 seconds and come back around and try again
+				try
+				{
+					Thread.sleep(5000);
+				}
+				catch (InterruptedException iex) {/* no-op */}
+			}
+		}
+	}
+	
+	/*
+	 * Processes a single DNS request and completes with the response in wire format, or null if there is no response or the response 
+	 * was dropped by the response rate limit.  The receive buffer is returned to the pool once the request has been processed.
+	 */
+	private CompletableFuture<byte[]> processPacket(ReceivedPacket inPacket)
+	{
+		return responder.processRequestAsync(inPacket.data, true).handle((writeBytes, e) ->
+		{
+			receiveBufferPool.release(inPacket.data);
+			
+			/* an unparseable request has no response */
+			final byte[] retVal = (e == null) ? writeBytes : null;
+			updateResponseMetrics(retVal);
+			
+			return applyResponseRateLimit(inPacket.source, retVal);
+		}).toCompletableFuture();
+	}
+	
+	/*
+	 * Task that handles DNS requests.
+	 */
+	private class RequestTask implements Runnable
+	{
+		private final ReceivedPacket inPacket;
+		
+		public RequestTask(ReceivedPacket inPacket)
+		{
+			this.inPacket = inPacket;
+		}
+		
+		public void run()
+		{
+			processPacket(inPacket).thenAccept(writeBytes -> 
+			{
+				if (writeBytes == null)
+					return;
+				
+				try
+				{
+					// a non-blocking send only fails to write if the socket send buffer is full, and then the response is dropped like any other datagram
+					if (inPacket.channel.send(ByteBuffer.wrap(writeBytes), inPacket.source) == 0)
+						log.debug("DNS NIO UDP send buffer full.  Dropping response.");
+				}
+				catch (IOException e)
+				{
+					log.error("Wire/connection protocol error handing DNS request: " + e.getMessage(), e);
+				}
+			});
+		}
+	}
+}
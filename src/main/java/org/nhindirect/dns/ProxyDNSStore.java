@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.net.UnknownHostException;
 import java.time.Duration;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 import org.xbill.DNS.ExtendedResolver;
@@ -128,6 +130,32 @@ public class ProxyDNSStore implements DNSStore
 		return response;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Requests are sent with the resolver's non-blocking I/O, so no thread is held while waiting for the proxied servers.  
+	 * As with {@link #get(Message)}, UDP is tried first followed by TCP.
+	 */
+	@Override
+	public CompletionStage<Message> getAsync(Message dnsMsg)
+	{
+		return sendAsync(dnsMsg, false).thenCompose(response -> 
+			(response != null) ? CompletableFuture.completedFuture(response) : sendAsync(dnsMsg, true));
+	}
+	
+	/*
+	 * Sends a request to the proxied servers.  Failures complete with a null response.
+	 */
+	private CompletionStage<Message> sendAsync(Message dnsMsg, boolean tcp)
+	{
+		final ExtendedResolver resolver = createExResolver(servers, port, 2, 2000);
+		if (resolver == null)
+			return CompletableFuture.completedFuture(null);
+		
+		resolver.setTCP(tcp);
+		return resolver.sendAsync(dnsMsg).handle((response, e) -> response);
+	}
+	
 	/*
 	 * Create the resolver that will do the DNS requests.
 	 */
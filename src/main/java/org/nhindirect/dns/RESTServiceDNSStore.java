@@ -9,6 +9,16 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -29,6 +39,7 @@ import org.xbill.DNS.Name;
 import org.xbill.DNS.RRset;
 import org.xbill.DNS.Rcode;
 import org.xbill.DNS.Record;
+import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 
 import lombok.extern.slf4j.Slf4j;
@@ -36,10 +47,21 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class RESTServiceDNSStore extends AbstractDNSStore
 {
+	protected static final long SOA_INDEX_RETRY_INTERVAL = 30000L;
+	
 	protected final CertificateService certService;
 	protected final CertPolicyService certPolicyService;
 	protected final DNSService dnsService;
 	protected String certPolicyName;
+	protected DNSCertCache certCache = null;
+	protected volatile DNSCertOwnerIndex ownerIndex = null;
+	protected volatile DNSSOAIndex soaIndex = null;
+	
+	protected Executor ownerLookupExecutor = null;
+	protected int ownerLookupFanout = 1;
+	
+	private ScheduledExecutorService indexRefreshService;
+	private volatile long soaIndexRetryTime = 0;
 	
 	public RESTServiceDNSStore(DNSService dnsService, CertificateService certService, CertPolicyService certPolicyService, 
 			String certPolicyName)
@@ -76,6 +98,218 @@ public class RESTServiceDNSStore extends AbstractDNSStore
 		{
 			throw new IllegalStateException(e);
 		}		
+		
+		// cached record sets were filtered by the previous policy
+		if (certCache != null)
+			certCache.clear();
+	}
+	
+	/**
+	 * Enables a cache of fully built CERT record sets so that repeated CERT lookups of the same owner do not call the configuration 
+	 * service or parse certificates.  Certificate changes are picked up when the cached record set expires, or immediately if the owner 
+	 * is invalidated with {@link DNSCertCache#invalidate(String)}.
+	 * @param maxEntries The maximum number of owners held in the cache.  0 disables the cache.
+	 * @param ttl The time in seconds that a record set is cached.  0 disables the cache.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setCertCache(int maxEntries, int ttl)
+	{
+		certCache = (maxEntries > 0 && ttl > 0) ? new DNSCertCache(maxEntries, ttl) : null;
+	}
+	
+	/**
+	 * Enables an index of certificate owners so that each CERT lookup makes at most one call to the certificate service, and a name with 
+	 * no certificates makes none.  The index is loaded immediately and then refreshed on a fixed schedule.  Certificates of owners that 
+	 * are added after the index was loaded are not found until the next refresh.  A failure to load the first index is logged, and 
+	 * owners are probed through the certificate service until a refresh succeeds.  Each refresh downloads every certificate held by the
+	 * certificate service, so the interval should be long on large installations.
+	 * @param refreshInterval The time in seconds between index refreshes.  If 0 or less, the index is only loaded once.
+	 * 
+	 * @since 8.2.0
+	 */
+	public synchronized void startOwnerIndex(int refreshInterval)
+	{
+		try
+		{
+			refreshOwnerIndex();
+		}
+		catch (DNSException e)
+		{
+			log.error("Failed to load the initial certificate owner index.  Owners will be probed until a refresh succeeds.", e);
+		}
+		
+		if (refreshInterval > 0)
+			scheduleIndexRefresh(() -> 
+			{
+				try
+				{
+					refreshOwnerIndex();
+				}
+				catch (DNSException e)
+				{
+					log.warn("Failed to refresh the certificate owner index.  The previous index will continue to be used.", e);
+				}
+			}, refreshInterval);
+	}
+	
+	/**
+	 * Loads the SOA index and refreshes it on a fixed schedule so that zones added to or removed from the configuration service are picked 
+	 * up without a restart.  Without a schedule, the index is loaded by the first query and never refreshed.
+	 * @param refreshInterval The time in seconds between index refreshes.  If 0 or less, the index is only loaded once.
+	 * 
+	 * @since 8.2.0
+	 */
+	public synchronized void startSOAIndex(int refreshInterval)
+	{
+		try
+		{
+			refreshSOAIndex();
+		}
+		catch (DNSException e)
+		{
+			log.error("Failed to load the initial SOA index.  It will be loaded again on demand.", e);
+		}
+		
+		if (refreshInterval > 0)
+			scheduleIndexRefresh(() -> 
+			{
+				try
+				{
+					refreshSOAIndex();
+				}
+				catch (DNSException e)
+				{
+					log.warn("Failed to refresh the SOA index.  The previous index will continue to be used.", e);
+				}
+			}, refreshInterval);
+	}
+	
+	/**
+	 * Reloads the SOA records from the configuration service and replaces the current SOA index with them.
+	 * @throws DNSException Thrown if the SOA records could not be loaded.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void refreshSOAIndex() throws DNSException
+	{
+		final Collection<Record> soaRecs = new ArrayList<Record>();
+		try
+		{
+			final Collection<DNSRecord> getRecs = dnsService.getDNSRecord(Type.SOA, "");
+			if (getRecs != null)
+			{
+				for (DNSRecord rec : getRecs)
+					soaRecs.add(createRecord(rec));
+			}
+		}
+		catch (Exception e)
+		{
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failed to load SOA records from the configuration service: " 
+					+ e.getMessage(), e);
+		}
+		
+		soaIndex = new DNSSOAIndex(soaRecs);
+	}
+	
+	/**
+	 * Gets the SOA index.
+	 * @return The SOA index, or null if it has not been loaded yet.
+	 * 
+	 * @since 8.2.0
+	 */
+	public DNSSOAIndex getSOAIndex()
+	{
+		return soaIndex;
+	}
+	
+	/*
+	 * Runs an index refresh on the shared refresh thread
+	 */
+	private synchronized void scheduleIndexRefresh(Runnable refresh, int refreshInterval)
+	{
+		if (indexRefreshService == null)
+		{
+			indexRefreshService = Executors.newSingleThreadScheduledExecutor(r -> 
+			{
+				final Thread thread = new Thread(r, "dns-index-refresh");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		
+		indexRefreshService.scheduleWithFixedDelay(refresh, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Sets the executor that looks up candidate certificate owners concurrently.  Without an owner index, a CERT query for an email address
+	 * is looked up under the name itself and under the name with each "." replaced by an "@", and each of those is a call to the 
+	 * certificate service.  With an executor those calls are made concurrently, so a query takes about one round trip instead of one per label.
+	 * The executor must not be the one that runs asynchronous lookups because the lookup thread blocks until the owner lookups complete.
+	 * @param ownerLookupExecutor The executor that runs the owner lookups.  If null, owners are looked up one at a time on the calling thread.
+	 * @param maxFanout The maximum number of owner lookups that a single query may have outstanding at one time.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void setOwnerLookupExecutor(Executor ownerLookupExecutor, int maxFanout)
+	{
+		this.ownerLookupExecutor = ownerLookupExecutor;
+		this.ownerLookupFanout = Math.max(1, maxFanout);
+	}
+	
+	/**
+	 * Reloads the certificate owner index from the certificate service and replaces the current index with it.
+	 * @throws DNSException Thrown if the certificates could not be loaded.
+	 * 
+	 * @since 8.2.0
+	 */
+	public void refreshOwnerIndex() throws DNSException
+	{
+		try
+		{
+			ownerIndex = new DNSCertOwnerIndex(certService.getAllCertificates());
+		}
+		catch (Exception e)
+		{
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failed to load certificate owners from the configuration service: " 
+					+ e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Gets the certificate owner index.
+	 * @return The certificate owner index, or null if the index is not enabled.
+	 * 
+	 * @since 8.2.0
+	 */
+	public DNSCertOwnerIndex getOwnerIndex()
+	{
+		return ownerIndex;
+	}
+	
+	/**
+	 * Stops scheduled background refreshes.
+	 * 
+	 * @since 8.2.0
+	 */
+	public synchronized void shutdown()
+	{
+		if (indexRefreshService != null)
+		{
+			indexRefreshService.shutdownNow();
+			indexRefreshService = null;
+		}
+	}
+	
+	/**
+	 * Gets the CERT record set cache.
+	 * @return The CERT record set cache, or null if the cache is disabled.
+	 * 
+	 * @since 8.2.0
+	 */
+	public DNSCertCache getCertCache()
+	{
+		return certCache;
 	}
 	
 	/**
@@ -147,12 +381,7 @@ public class RESTServiceDNSStore extends AbstractDNSStore
 		try
 		{
 			for (DNSRecord record : records)						
-			{
-				Record rec = Record.newRecord(Name.fromString(record.getName()), record.getType(), 
-						record.getDclass(), record.getTtl(), record.getData());
-				
-				retVal.addRR(rec);
-			}
+				retVal.addRR(createRecord(record));
 		}		
 		catch (Exception e)
 		{
@@ -183,12 +412,7 @@ public class RESTServiceDNSStore extends AbstractDNSStore
 		try
 		{
 			for (DNSRecord record : records)						
-			{
-				Record rec = Record.newRecord(Name.fromString(record.getName()), record.getType(), 
-						record.getDclass(), record.getTtl(), record.getData());
-				
-				retVal.add(rec);
-			}
+				retVal.add(createRecord(record));
 		}		
 		catch (Exception e)
 		{
@@ -201,202 +425,350 @@ public class RESTServiceDNSStore extends AbstractDNSStore
 	/**
 	 * {@inheritDoc}
 	 */
-	@SuppressWarnings("unused")
 	@Override
 	protected RRset processCERTRecordRequest(String name) throws DNSException
 	{
 		if (name.endsWith("."))
 			name = name.substring(0, name.length() - 1);
+		
+		if (certCache != null)
+		{
+			final RRset cached = certCache.get(name);
+			if (cached != null)
+				return cached;
+		}
 				
-		Collection<Certificate> certs;
+		final Collection<Certificate> certs = getCertificatesByName(name);
+		if (certs == null || certs.size() == 0)
+			return null;
+		
+		if (!name.endsWith("."))
+			name += ".";
+		
+		RRset retVal = new RRset();		
+		try
+		{
+			for (Certificate cert : certs)
+			{
+				// certificates that are not compliant with the configured policy are skipped
+				final CERTRecord rec = createCERTRecord(cert, name);
+				if (rec != null)
+					retVal.addRR(rec);
+			}
+		}		
+		catch (Exception e)
+		{
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failure while parsing CERT record data: " + e.getMessage(), e);
+		}
+		
+		// because of policy filtering, it's possible that we could have filtered out every cert
+		// resulting in an empty RR set
+		if (retVal.size() == 0)
+			return null;
+		
+		if (certCache != null)
+			certCache.put(name, retVal);
 		
-		// use the certificate configuration service
+		return retVal;
+	}	
+	
+	/**
+	 * Gets the certificates published under a DNS name from the certificate service.  If an owner index is loaded, the name is mapped 
+	 * to its owner with the index and at most one call is made to the certificate service.  Otherwise the name is looked up as is, and 
+	 * then with each "." replaced by an "@" in turn until certificates are found.  If an owner lookup executor is set, those lookups are 
+	 * made concurrently.
+	 * @param name The owner name as it appears in the query without the trailing root label.
+	 * @return The certificates of the owner, or null or an empty collection if the name has no certificates.
+	 * @throws DNSException Thrown if the certificate service call fails.
+	 * 
+	 * @since 8.2.0
+	 */
+	protected Collection<Certificate> getCertificatesByName(String name) throws DNSException
+	{
+		final DNSCertOwnerIndex index = ownerIndex;
+		if (index != null)
+		{
+			final String owner = index.getOwner(name);
+			return (owner == null) ? null : getCertificatesByOwner(owner);
+		}
+		
+		// unless the lookup is for an org level cert, the exact name will probably always fail because the
+		// "name" parameter has had all instances of "@" replaced with ".".  The certificate service 
+		// stores owners using "@".
+		// This is horrible, but try hitting the cert service replacing each "." with "@" one by one.
+		final List<String> owners = getOwnerCandidates(name);
+		if (ownerLookupExecutor != null && owners.size() > 1)
+			return getCertificatesByOwnersParallel(owners);
+		
+		for (String owner : owners)
+		{
+			final Collection<Certificate> certs = getCertificatesByOwner(owner);
+			if (certs != null && certs.size() > 0)
+				return certs;
+		}
+		
+		return null;
+	}
+	
+	/*
+	 * Gets the owners that a DNS name may belong to in the order they are preferred: the name itself
+	 * followed by the name with each "." replaced by an "@" starting at the beginning of the name
+	 */
+	private static List<String> getOwnerCandidates(String name)
+	{
+		final List<String> retVal = new ArrayList<>();
+		retVal.add(name);
+		
+		int replaceIndex = -1;
+		while ((replaceIndex = name.indexOf('.', replaceIndex + 1)) > -1)
+		{
+			final char[] chars = name.toCharArray();
+			chars[replaceIndex] = '@';
+			retVal.add(String.copyValueOf(chars));
+		}
+		
+		return retVal;
+	}
+	
+	/*
+	 * Calls the certificate service for a single owner
+	 */
+	private Collection<Certificate> getCertificatesByOwner(String owner) throws DNSException
+	{
 		try
 		{
-			certs = certService.getCertificatesByOwner(name);
+			return certService.getCertificatesByOwner(owner);
 		}
 		catch (Exception e)
 		{
 			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "DNS service proxy call for certificates failed: " + e.getMessage(), e);
 		}
+	}
+	
+	/*
+	 * Looks up the candidate owners concurrently.  The owner with the first "@" is the most likely match, so it is
+	 * submitted first followed by the exact name and then the remaining candidates as earlier lookups complete.
+	 * Lookups complete in any order, but a result is only accepted once every more preferred owner has come back
+	 * empty so the answer is the same as looking up the candidates one at a time.  Outstanding lookups are
+	 * cancelled as soon as the answer is known.
+	 */
+	private Collection<Certificate> getCertificatesByOwnersParallel(List<String> owners) throws DNSException
+	{
+		final int numOwners = owners.size();
+		final int[] submitOrder = new int[numOwners];
+		submitOrder[0] = 1;
+		submitOrder[1] = 0;
+		for (int i = 2; i < numOwners; ++i)
+			submitOrder[i] = i;
 		
-		if (certs == null || certs.size() == 0)
+		final CompletionService<Collection<Certificate>> completionService = new ExecutorCompletionService<>(ownerLookupExecutor);
+		final Map<Future<Collection<Certificate>>, Integer> submitted = new HashMap<>();
+		final List<Collection<Certificate>> results = new ArrayList<>(Collections.nCopies(numOwners, null));
+		final boolean[] completed = new boolean[numOwners];
+		
+		int nextSubmit = 0;
+		int nextPreferred = 0;
+		int inFlight = 0;
+		try
 		{
-			// unless the call above was for an org level cert, it will probably always fail because the
-			// "name" parameter has had all instances of "@" replaced with ".".  The certificate service 
-			// stores owners using "@".
-			// This is horrible, but try hitting the cert service replacing each "." with "@" one by one.
-			// Start at the beginning of the address because this is more than likely where the "@" character
-			// will be.
-			int previousIndex = 0;
-			int replaceIndex = 0;
-			while ((replaceIndex = name.indexOf(".", previousIndex)) > -1)
+			while (true)
 			{
-				char[] chars = name.toCharArray();
-				chars[replaceIndex] = '@';
-				try
+				while (nextSubmit < numOwners && inFlight < ownerLookupFanout)
 				{
-					certs = certService.getCertificatesByOwner(String.copyValueOf(chars));
+					final String owner = owners.get(submitOrder[nextSubmit]);
+					submitted.put(completionService.submit(() -> getCertificatesByOwner(owner)), submitOrder[nextSubmit]);
+					++nextSubmit;
+					++inFlight;
 				}
-				catch (Exception e)
-				{
-					throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "DNS service proxy call for certificates failed: " + e.getMessage(), e);
-				}				
-				if (certs != null && certs.size() > 0)
-					break;
 				
-				if (replaceIndex >= (name.length() - 1))
-					break;
+				if (inFlight == 0)
+					return null;
+				
+				final Future<Collection<Certificate>> future = completionService.take();
+				--inFlight;
+				
+				final int index = submitted.get(future);
+				results.set(index, future.get());
+				completed[index] = true;
 				
-				previousIndex = replaceIndex + 1;
+				for (; nextPreferred < numOwners && completed[nextPreferred]; ++nextPreferred)
+				{
+					final Collection<Certificate> certs = results.get(nextPreferred);
+					if (certs != null && certs.size() > 0)
+						return certs;
+				}
 			}
 		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof DNSException)
+				throw (DNSException)e.getCause();
 			
-		if (certs == null || certs.size() == 0)
-			return null;
-		
-		if (!name.endsWith("."))
-			name += ".";
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "DNS service proxy call for certificates failed: " + e.getCause().getMessage(), e);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Interrupted waiting for certificate lookups.", e);
+		}
+		finally
+		{
+			for (Future<Collection<Certificate>> future : submitted.keySet())
+				future.cancel(true);
+		}
+	}
+	
+	/**
+	 * Converts a DNS record held by the configuration service into a DNS record.
+	 * @param record The configuration service record.
+	 * @return The DNS record.
+	 * @throws Exception Thrown if the record data cannot be parsed.
+	 * 
+	 * @since 8.2.0
+	 */
+	protected Record createRecord(DNSRecord record) throws Exception
+	{
+		return Record.newRecord(Name.fromString(record.getName()), record.getType(), record.getDclass(), record.getTtl(), record.getData());
+	}
+	
+	/**
+	 * Converts a certificate held by the configuration service into a CERT record.  The certificate data is either an X509 certificate, 
+	 * optionally with wrapped private key data, or a URL that points to the certificate.
+	 * @param cert The configuration service certificate.
+	 * @param name The owner name of the CERT record.
+	 * @return The CERT record, or null if the certificate is not compliant with the configured certificate policy.
+	 * @throws Exception Thrown if the certificate data cannot be parsed.
+	 * 
+	 * @since 8.2.0
+	 */
+	@SuppressWarnings("unused")
+	protected CERTRecord createCERTRecord(Certificate cert, String name) throws Exception
+	{
+		int certRecordType = CERTRecord.PKIX;
+		byte[] retData = null;
 		
-		RRset retVal = new RRset();		
+		X509Certificate xCert = null;
 		try
 		{
-			for (Certificate cert : certs)
-			{
-				int certRecordType = CERTRecord.PKIX;
-				byte[] retData = null;
-				
-				X509Certificate xCert = null;
-				try
-				{
-					// need to convert to cert container because this might be 
-					// a certificate with wrapped private key data
-					final CertUtils.CertContainer cont =  CertUtils.toCertContainer(cert.getData(), false);
-					xCert = cont.getCert();
-					// check if this is a compliant certificate with the configured policy... if not, move on
-					if (!isCertCompliantWithPolicy(xCert))
-						continue;
-					
-					retData = xCert.getEncoded();
-				}
-				catch (CertificateConversionException e)
-				{
-					// probably not a Certificate... might be a URL
-				}
-				
+			// need to convert to cert container because this might be 
+			// a certificate with wrapped private key data
+			final CertUtils.CertContainer cont =  CertUtils.toCertContainer(cert.getData(), false);
+			xCert = cont.getCert();
+			// check if this is a compliant certificate with the configured policy... if not, move on
+			if (!isCertCompliantWithPolicy(xCert))
+				return null;
+			
+			retData = xCert.getEncoded();
+		}
+		catch (CertificateConversionException e)
+		{
+			// probably not a Certificate... might be a URL
+		}
+		
 
-				if (xCert == null)
-				{
-					// see if it's a URL
-					try
-					{
-						retData = cert.getData();
-						URL url = new URL(new String(retData));
-						certRecordType = CERTRecord.URI;
-					}
-					catch (Exception e)
-					{
-						throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failure while parsing CERT record data: " + e.getMessage(), e);
-					}					
-				}
-				
-				int keyTag = 0;
-				int alg = 0;
-				if (xCert != null && xCert.getPublicKey() instanceof RSAKey)
-				{
-					RSAKey key = (RSAKey)xCert.getPublicKey();
-					byte[] modulus = key.getModulus().toByteArray();
-					
-					keyTag = (modulus[modulus.length - 2] << 8) & 0xFF00;
-					
-					keyTag |= modulus[modulus.length - 1] & 0xFF;	
-					if (xCert.getSigAlgOID().equalsIgnoreCase(SignatureAlgorithmIdentifier.SHA1RSA.getId())){
-					    alg = 5; // RFC 4034 Appendix A.1
-					} else if (xCert.getSigAlgOID().equalsIgnoreCase(SignatureAlgorithmIdentifier.SHA256RSA.getId())){
-					    alg = 8; // RFC 5702 3.1
-					} else if (xCert.getSigAlgOID().equalsIgnoreCase(SignatureAlgorithmIdentifier.SHA1DSA.getId())){
-					    alg = 3; // RFC 4034 Appendix A.1
-					} else if (xCert.getSigAlgOID().equalsIgnoreCase(SignatureAlgorithmIdentifier.MD5RSA.getId())){
-					    alg = 1; // RFC 4034 Appendix A.1
-					} else{
-					    alg = 5;
-					}
-				}
-				
-				/*
-				 * 30 minute cache for certificates
-				 */
-				CERTRecord rec = new CERTRecord(Name.fromString(name), DClass.IN, 1800L, certRecordType, keyTag, 
-						alg /*public key alg, RFC 4034*/, retData);
-				
-				retVal.addRR(rec);
+		if (xCert == null)
+		{
+			// see if it's a URL
+			try
+			{
+				retData = cert.getData();
+				URL url = new URL(new String(retData));
+				certRecordType = CERTRecord.URI;
 			}
-		}		
-		catch (Exception e)
+			catch (Exception e)
+			{
+				throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failure while parsing CERT record data: " + e.getMessage(), e);
+			}					
+		}
+		
+		int keyTag = 0;
+		int alg = 0;
+		if (xCert != null && xCert.getPublicKey() instanceof RSAKey)
 		{
-			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failure while parsing CERT record data: " + e.getMessage(), e);
+			RSAKey key = (RSAKey)xCert.getPublicKey();
+			byte[] modulus = key.getModulus().toByteArray();
+			
+			keyTag = (modulus[modulus.length - 2] << 8) & 0xFF00;
+			
+			keyTag |= modulus[modulus.length - 1] & 0xFF;	
+			if (xCert.getSigAlgOID().equalsIgnoreCase(SignatureAlgorithmIdentifier.SHA1RSA.getId())){
+			    alg = 5; // RFC 4034 Appendix A.1
+			} else if (xCert.getSigAlgOID().equalsIgnoreCase(SignatureAlgorithmIdentifier.SHA256RSA.getId())){
+			    alg = 8; // RFC 5702 3.1
+			} else if (xCert.getSigAlgOID().equalsIgnoreCase(SignatureAlgorithmIdentifier.SHA1DSA.getId())){
+			    alg = 3; // RFC 4034 Appendix A.1
+			} else if (xCert.getSigAlgOID().equalsIgnoreCase(SignatureAlgorithmIdentifier.MD5RSA.getId())){
+			    alg = 1; // RFC 4034 Appendix A.1
+			} else{
+			    alg = 5;
+			}
 		}
 		
-		// because of policy filtering, it's possible that we could have filtered out every cert
-		// resulting in an empty RR set
-		return (retVal.size() == 0) ? null : retVal;
-	}	
+		/*
+		 * 30 minute cache for certificates
+		 */
+		return new CERTRecord(Name.fromString(name), DClass.IN, 1800L, certRecordType, keyTag, 
+				alg /*public key alg, RFC 4034*/, retData);
+	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
 	@Override
-	protected synchronized Record checkForSoaRecord(String questionName)
-    {
+	protected Record checkForSoaRecord(String questionName)
+	{
 		if (!questionName.endsWith("."))
 			questionName += ".";
-    	
-    	if (soaRecords == null)
-    	{
-    		Collection<DNSRecord> getRecs = null;
-    		// load all SOA records...
-    		try
-    		{
-    			getRecs = dnsService.getDNSRecord(Type.SOA, "");
-    			
-    			if (getRecs == null || getRecs.size() == 0)
-    				soaRecords = Collections.emptyMap();
-    			else
-    			{
-	    			soaRecords = new HashMap<String, Record>();
-	    			
-	    			for (DNSRecord rec : getRecs)
-	    			{
-	    				Record newRec = Record.newRecord(Name.fromString(rec.getName()), Type.SOA, 
-	    						rec.getDclass(), rec.getTtl(), rec.getData());
-	    				
-	    				soaRecords.put(newRec.getName().toString(), newRec);
-	    			}
-    			}
-    		}
-    		catch (Exception e)
-    		{
-    			log.error("Failed to load SOA records from config service.");    			
-    		}
-    	}
-    	
-    	Record retVal = null;
-    	if (soaRecords.size() > 0)
-    	{
-    		// look for the record by question name
-    		
-    		retVal = soaRecords.get(questionName);
-    		if (retVal == null)
-    		{
-	    		// start taking apart the question name . by .
-	    		int index = -1;
-	    		while ((index = questionName.indexOf(".")) > 0 && index < (questionName.length() - 1))
-	    		{
-	    			questionName = questionName.substring(index + 1);
-	    			retVal = soaRecords.get(questionName);
-	        		if (retVal != null)
-	        			break;
-	    		}
-    		}    		
-    	}
-    	
-    	return retVal;
-    }	
+		
+		try
+		{
+			return checkForSoaRecord(Name.fromString(questionName));
+		}
+		catch (TextParseException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * The SOA records are read from an immutable index without locking.  If the index has not been loaded yet, it is loaded by the first 
+	 * query that needs it.  A failed load is retried at most every {@value #SOA_INDEX_RETRY_INTERVAL} milliseconds, and queries in between 
+	 * are answered without an SOA record.
+	 */
+	@Override
+	protected Record checkForSoaRecord(Name questionName)
+	{
+		DNSSOAIndex index = soaIndex;
+		if (index == null)
+		{
+			index = loadSOAIndexOnDemand();
+			if (index == null)
+				return null;
+		}
+		
+		return index.getClosestEnclosing(questionName);
+	}
+	
+	/*
+	 * Loads the SOA index the first time it is needed.  Only one thread loads the index, and after a failure
+	 * the config service is not called again until the retry interval has passed.
+	 */
+	private synchronized DNSSOAIndex loadSOAIndexOnDemand()
+	{
+		if (soaIndex == null && System.currentTimeMillis() >= soaIndexRetryTime)
+		{
+			try
+			{
+				refreshSOAIndex();
+			}
+			catch (DNSException e)
+			{
+				soaIndexRetryTime = System.currentTimeMillis() + SOA_INDEX_RETRY_INTERVAL;
+				log.error("Failed to load SOA records from config service.", e);
+			}
+		}
+		
+		return soaIndex;
+	}
 }
@@ -0,0 +1,485 @@
+/* 
+ Copyright (c) 2010, Direct Project
+ All rights reserved.
+
+ Authors:
+    Greg Meyer      gm2552@cerner.com
+ 
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+Neither the name of The Direct Project (directproject.org) nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package org.nhindirect.dns;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.nhind.config.rest.CertPolicyService;
+import org.nhind.config.rest.CertificateService;
+import org.nhind.config.rest.DNSService;
+import org.nhindirect.config.model.Certificate;
+import org.nhindirect.config.model.DNSRecord;
+import org.xbill.DNS.CERTRecord;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * DNS store that answers queries entirely from an in memory snapshot of the configuration service.  Every DNS record and certificate is 
+ * bulk loaded into an immutable index when the store is started, and the index is rebuilt on a fixed schedule.  A rebuilt snapshot replaces
+ * the previous one atomically, so queries never lock and never see a partially loaded snapshot.  If a refresh fails, the previous snapshot
+ * keeps answering queries.
+ * <p>
+ * Until the first snapshot has been loaded, queries fall back to the configuration service just like {@link RESTServiceDNSStore}.  Changes 
+ * made in the configuration service are visible after the next refresh.  If a {@link DNSSnapshotFile} is set, the last snapshot is kept 
+ * on disk and loaded at startup, so the store can answer queries before the configuration service is reachable.
+ * @author Greg Meyer
+ * @since 8.2.0
+ */
+@Slf4j
+public class SnapshotDNSStore extends RESTServiceDNSStore
+{
+	/**
+	 * The record types that are loaded into a snapshot.  These are the generic record types answered by {@link AbstractDNSStore}.
+	 */
+	protected static final int[] SNAPSHOT_RECORD_TYPES = {Type.A, Type.MX, Type.SOA, Type.SRV, Type.NS, Type.CNAME, Type.TXT, Type.CAA};
+	
+	protected final int refreshInterval;
+	
+	private volatile Snapshot snapshot;
+	private ScheduledExecutorService refreshService;
+	private volatile DNSSnapshotFile snapshotFile;
+	
+	/**
+	 * Creates a snapshot store.  The first snapshot is not loaded until {@link #start()} or {@link #refresh()} is called.
+	 * @param dnsService The configuration service DNS record client.
+	 * @param certService The configuration service certificate client.
+	 * @param certPolicyService The configuration service certificate policy client.
+	 * @param certPolicyName The name of the certificate policy that published certificates must comply with.
+	 * @param refreshInterval The time in seconds between snapshot refreshes.  If 0 or less, the snapshot is only loaded when {@link #start()}
+	 * or {@link #refresh()} is called.
+	 */
+	public SnapshotDNSStore(DNSService dnsService, CertificateService certService, CertPolicyService certPolicyService, 
+			String certPolicyName, int refreshInterval)
+	{
+		super(dnsService, certService, certPolicyService, certPolicyName);
+		
+		this.refreshInterval = refreshInterval;
+	}
+	
+	/**
+	 * Sets the file that keeps a copy of the last snapshot loaded from the configuration service.  When the store is started, the file 
+	 * is loaded before the configuration service is called so queries are answered as soon as the server starts, and its snapshot keeps 
+	 * answering queries if the configuration service is unreachable.  The file is rewritten after each refresh that changes the snapshot.
+	 * @param snapshotFile The snapshot file.  If null, snapshots are only held in memory.
+	 */
+	public synchronized void setSnapshotFile(DNSSnapshotFile snapshotFile)
+	{
+		this.snapshotFile = snapshotFile;
+	}
+	
+	/**
+	 * Loads the first snapshot and schedules refreshes.  If a snapshot file is set, it is loaded first and the first refresh from the 
+	 * configuration service runs in the background, so queries are answered from the file as soon as this method returns.  Otherwise the
+	 * first snapshot is loaded from the configuration service before this method returns.  A failure to load the first snapshot from the 
+	 * configuration service is logged, and queries are answered by the snapshot file, or by the configuration service if there is no file, 
+	 * until a refresh succeeds.
+	 */
+	public synchronized void start()
+	{
+		if (refreshService != null)
+			return;
+		
+		if (snapshotFile != null && snapshotFile.exists())
+			loadSnapshotFile();
+		
+		// a slow or unreachable configuration service must not hold up startup once the file can answer queries
+		final boolean servingFile = (snapshot != null);
+		if (!servingFile)
+		{
+			try
+			{
+				refresh();
+			}
+			catch (DNSException e)
+			{
+				log.error("Failed to load the initial DNS snapshot.  Queries will be answered by the configuration service until a refresh succeeds.", e);
+			}
+		}
+		
+		refreshService = Executors.newSingleThreadScheduledExecutor(r -> 
+		{
+			final Thread thread = new Thread(r, "dns-snapshot-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		if (servingFile)
+			refreshService.execute(() -> 
+			{
+				try
+				{
+					refresh();
+				}
+				catch (DNSException e)
+				{
+					log.error("Failed to load the initial DNS snapshot.  Queries will be answered by the snapshot file until a refresh succeeds.", e);
+				}
+			});
+		
+		if (refreshInterval > 0)
+			refreshService.scheduleWithFixedDelay(() -> 
+			{
+				try
+				{
+					refresh();
+				}
+				catch (DNSException e)
+				{
+					log.warn("Failed to refresh the DNS snapshot.  The previous snapshot will continue to answer queries.", e);
+				}
+			}, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Stops scheduled refreshes.  The current snapshot continues to answer queries.
+	 */
+	@Override
+	public synchronized void shutdown()
+	{
+		super.shutdown();
+		
+		if (refreshService == null)
+			return;
+		
+		refreshService.shutdownNow();
+		refreshService = null;
+	}
+	
+	/**
+	 * Loads a new snapshot from the configuration service and replaces the current snapshot with it.  Negative cache entries are cleared 
+	 * after the replacement because they may refer to records that were added since the previous snapshot.
+	 * @throws DNSException Thrown if the records or certificates could not be loaded.
+	 */
+	public void refresh() throws DNSException
+	{
+		final long start = System.currentTimeMillis();
+		
+		final Snapshot newSnapshot = loadSnapshot();
+		snapshot = newSnapshot;
+		// SOA lookups and owner names are answered from the snapshot's indexes
+		soaIndex = newSnapshot.soaIndex;
+		ownerIndex = newSnapshot.ownerIndex;
+		
+		if (negativeCache != null)
+			negativeCache.clear();
+		
+		final DNSSnapshotFile file = snapshotFile;
+		if (file != null)
+			saveSnapshotFile(file, newSnapshot);
+		
+		log.info("Loaded DNS snapshot with " + newSnapshot.recordCount + " records and " + newSnapshot.certCount + " certificates in " 
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+	
+	/*
+	 * Replaces the current snapshot with the contents of the snapshot file
+	 */
+	private void loadSnapshotFile()
+	{
+		final long start = System.currentTimeMillis();
+		try
+		{
+			final DNSSnapshotFile.Contents contents = snapshotFile.read();
+			final Snapshot fileSnapshot = new Snapshot(new ArrayList<>(contents.getRecords()), new HashMap<>(contents.getCerts()));
+			snapshot = fileSnapshot;
+			soaIndex = fileSnapshot.soaIndex;
+			ownerIndex = fileSnapshot.ownerIndex;
+			
+			log.info("Loaded DNS snapshot file " + snapshotFile.getFile() + " written at " + new Date(contents.getWriteTime()) + " with " 
+				+ fileSnapshot.recordCount + " records and " + fileSnapshot.certCount + " certificates in " 
+				+ (System.currentTimeMillis() - start) + " ms");
+		}
+		catch (Exception e)
+		{
+			log.warn("Failed to load DNS snapshot file " + snapshotFile.getFile() + ".  It will be replaced by the next snapshot.", e);
+		}
+	}
+	
+	/*
+	 * Saves a snapshot to the snapshot file if it has changed since the file was last read or written
+	 */
+	private void saveSnapshotFile(DNSSnapshotFile file, Snapshot saveSnapshot)
+	{
+		try
+		{
+			if (file.write(saveSnapshot.allRecords, saveSnapshot.certs))
+				log.info("Wrote DNS snapshot file " + file.getFile());
+		}
+		catch (Exception e)
+		{
+			log.warn("Failed to write DNS snapshot file " + file.getFile() + ".  The previous file will be kept.", e);
+		}
+	}
+	
+	/**
+	 * Gets the time the current snapshot was loaded.
+	 * @return The time in milliseconds since the epoch that the current snapshot was loaded, or 0 if no snapshot has been loaded.
+	 */
+	public long getSnapshotTime()
+	{
+		final Snapshot current = snapshot;
+		return (current == null) ? 0 : current.createTime;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected RRset processGenericRecordRequest(String name, int type) throws DNSException
+	{
+		final Snapshot current = snapshot;
+		if (current == null)
+			return super.processGenericRecordRequest(name, type);
+		
+		final NameRecords records = current.records.get(toRecordName(name));
+		return (records == null) ? null : records.byType.get(type);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected RRset processGenericRecordRequest(Name name, int type) throws DNSException
+	{
+		final Snapshot current = snapshot;
+		if (current == null)
+			return super.processGenericRecordRequest(name, type);
+		
+		final NameRecords records = current.records.get(name);
+		return (records == null) ? null : records.byType.get(type);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * The snapshot holds every name that has records or certificates, so a name that is not in the snapshot and has no names beneath it 
+	 * is known not to exist.
+	 */
+	@Override
+	protected boolean isExistingName(Name name, SOARecord soa)
+	{
+		final Snapshot current = snapshot;
+		return (current == null) ? super.isExistingName(name, soa) : current.records.containsName(name);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Collection<Record> processGenericANYRecordRequest(String name) throws DNSException
+	{
+		final Snapshot current = snapshot;
+		if (current == null)
+			return super.processGenericANYRecordRequest(name);
+		
+		final NameRecords records = current.records.get(toRecordName(name));
+		return (records == null) ? null : records.all;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected RRset processCERTRecordRequest(String name) throws DNSException
+	{
+		final Snapshot current = snapshot;
+		if (current == null)
+			return super.processCERTRecordRequest(name);
+		
+		// owners are stored with "@" but the query name has all "@" replaced with "."... the snapshot's owner index
+		// maps the name to the owner the configuration service lookups would have found first
+		final String owner = current.ownerIndex.getOwner(name);
+		return (owner == null) ? null : current.certs.get(owner);
+	}
+	
+	/*
+	 * Loads all records and certificates from the configuration service into a new snapshot
+	 */
+	private Snapshot loadSnapshot() throws DNSException
+	{
+		final List<Record> allRecords = new ArrayList<>();
+		for (int type : SNAPSHOT_RECORD_TYPES)
+		{
+			final Collection<DNSRecord> records;
+			try
+			{
+				records = dnsService.getDNSRecord(type, "");
+			}
+			catch (Exception e)
+			{
+				throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failed to load " + Type.string(type) 
+					+ " records from the configuration service: " + e.getMessage(), e);
+			}
+			
+			if (records == null)
+				continue;
+			
+			for (DNSRecord record : records)
+			{
+				try
+				{
+					allRecords.add(createRecord(record));
+				}
+				catch (Exception e)
+				{
+					log.warn("Skipping DNS record " + record.getName() + " that could not be parsed: " + e.getMessage());
+				}
+			}
+		}
+		
+		final Collection<Certificate> certs;
+		try
+		{
+			certs = certService.getAllCertificates();
+		}
+		catch (Exception e)
+		{
+			throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Failed to load certificates from the configuration service: " 
+					+ e.getMessage(), e);
+		}
+		
+		final Map<String, RRset> certsByOwner = new HashMap<>();
+		if (certs != null)
+		{
+			for (Certificate cert : certs)
+			{
+				if (cert.getOwner() == null)
+					continue;
+				
+				final String owner = cert.getOwner().toLowerCase(Locale.ROOT);
+				try
+				{
+					// certificates that are not compliant with the configured policy are skipped
+					final CERTRecord rec = createCERTRecord(cert, owner.replace('@', '.') + ".");
+					if (rec != null)
+						certsByOwner.computeIfAbsent(owner, k -> new RRset()).addRR(rec);
+				}
+				catch (Exception e)
+				{
+					log.warn("Skipping certificate for owner " + cert.getOwner() + " that could not be parsed: " + e.getMessage());
+				}
+			}
+		}
+		
+		return new Snapshot(allRecords, certsByOwner);
+	}
+	
+	/*
+	 * Snapshot records are indexed by absolute name
+	 */
+	private static Name toRecordName(String name) throws DNSException
+	{
+		try
+		{
+			return Name.fromString(name.endsWith(".") ? name : name + ".");
+		}
+		catch (TextParseException e)
+		{
+			throw new DNSException(DNSError.newError(Rcode.FORMERR), "Invalid record name " + name, e);
+		}
+	}
+	
+	/*
+	 * Immutable index of all records and certificates loaded from the configuration service
+	 */
+	private static class Snapshot
+	{
+		private final List<Record> allRecords;
+		private final DNSNameTrie<NameRecords> records;
+		private final DNSSOAIndex soaIndex;
+		private final Map<String, RRset> certs;
+		private final DNSCertOwnerIndex ownerIndex;
+		private final int recordCount;
+		private final int certCount;
+		private final long createTime;
+		
+		public Snapshot(List<Record> allRecords, Map<String, RRset> certs)
+		{
+			final Map<Name, List<Record>> recordsByName = new HashMap<>();
+			final List<Record> soaRecords = new ArrayList<>();
+			for (Record rec : allRecords)
+			{
+				recordsByName.computeIfAbsent(rec.getName(), k -> new ArrayList<>()).add(rec);
+				if (rec.getType() == Type.SOA)
+					soaRecords.add(rec);
+			}
+			
+			// certificate owners are names too, even if they have no other records
+			for (String owner : certs.keySet())
+			{
+				try
+				{
+					recordsByName.putIfAbsent(Name.fromString(owner.replace('@', '.') + "."), Collections.emptyList());
+				}
+				catch (TextParseException e)
+				{
+					log.warn("Certificate owner " + owner + " is not a valid DNS name.");
+				}
+			}
+			
+			this.records = new DNSNameTrie<>();
+			for (Map.Entry<Name, List<Record>> entry : recordsByName.entrySet())
+				this.records.put(entry.getKey(), new NameRecords(entry.getValue()));
+			
+			int certCount = 0;
+			for (RRset set : certs.values())
+				certCount += set.size();
+			
+			this.allRecords = Collections.unmodifiableList(allRecords);
+			this.soaIndex = new DNSSOAIndex(soaRecords);
+			this.certs = Collections.unmodifiableMap(certs);
+			this.ownerIndex = DNSCertOwnerIndex.fromOwners(certs.keySet());
+			this.recordCount = allRecords.size();
+			this.certCount = certCount;
+			this.createTime = System.currentTimeMillis();
+		}
+	}
+	
+	/*
+	 * The records of a single name grouped by type
+	 */
+	private static class NameRecords
+	{
+		private final Map<Integer, RRset> byType;
+		private final Collection<Record> all;
+		
+		public NameRecords(List<Record> records)
+		{
+			final Map<Integer, RRset> sets = new HashMap<>();
+			for (Record rec : records)
+				sets.computeIfAbsent(rec.getType(), k -> new RRset()).addRR(rec);
+			
+			byType = Collections.unmodifiableMap(sets);
+			all = Collections.unmodifiableList(records);
+		}
+	}
+}
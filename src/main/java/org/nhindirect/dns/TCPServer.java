@@ -18,19 +18,30 @@ package org.nhindirect.dns;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.EOFException;
 import java.io.InputStream;
-import java.net.Inet4Address;
 import java.net.ServerSocket;
 import java.net.Socket;
-
-import org.xbill.DNS.Message;
-import org.xbill.DNS.Rcode;
-import org.xbill.DNS.Section;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * TCP socket server that handled DNS requests over TCP.
+ * <p>
+ * By default, each connection carries a single request and is closed after the response is written.  If persistent connections are
+ * enabled in the {@link DNSServerSettings}, connections are kept open until they sit idle, and requests on a connection are processed
+ * concurrently and answered as soon as each response is ready as described in RFC 7766.  Persistent connections are read by their own
+ * pool of connection threads, bounded by the maximum number of open connections, so that idle connections do not hold request workers.
  * @author Greg Meyer
  * @since 1.0
  */
@@ -39,9 +50,9 @@ public class TCPServer extends DNSSocketServer
 {
 	private ServerSocket serverSocket;
 	
-	private volatile long missCount = 0;
-	private volatile long errorCount = 0;
-	private volatile long successCount = 0;	
+	private ExecutorService connectionService;
+	private ExecutorService pipelinedRequestService;
+	private AtomicInteger openConnections;
 	
 	/**
 	 * Creates a TCP socket server.  The server will not start accepting messages until the {@link #start()} method is called.
@@ -51,7 +62,23 @@ public class TCPServer extends DNSSocketServer
 	 */
 	public TCPServer(DNSServerSettings settings, DNSResponder responder) throws DNSException
 	{
-		super(settings, responder);		
+		this(settings, responder, settings.getBindAddresses().get(0));
+	}
+	
+	/**
+	 * Creates a TCP socket server that listens on a single address.  The server will not start accepting messages until the {@link #start()} method is called.
+	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
+	 * @param responsder The DNS responder that will handle lookups.
+	 * @param bindAddress The IPv4 or IPv6 address that the server will be bound to.
+	 * @throws DNSException
+	 * 
+	 * @since 8.2.0
+	 */
+	public TCPServer(DNSServerSettings settings, DNSResponder responder, String bindAddress) throws DNSException
+	{
+		super(settings, responder, bindAddress);		
+		
+		openConnections = new AtomicInteger(0);
 		
 		registerMBean(this.getClass());
 	}
@@ -62,13 +89,40 @@ public class TCPServer extends DNSSocketServer
 	public void start() throws DNSException
 	{
 		log.info("DNS TCP Server Starting");
+		
+		if (settings.isTCPPersistentConnections() && running.get() != true)
+		{
+			// requests read from a connection are processed in this pool so that the connection 
+			// thread can keep reading... if the pool is saturated, the connection thread processes the request itself
+			pipelinedRequestService = (settings.getRequestExecutionMode() == DNSServerSettings.RequestExecutionMode.VIRTUAL_THREAD) ? 
+					newVirtualThreadPerTaskExecutor() : null;
+			
+			if (pipelinedRequestService == null)
+				pipelinedRequestService = new ThreadPoolExecutor(0, settings.getMaxActiveRequests(), 
+					120L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadPoolExecutor.CallerRunsPolicy());
+			
+			// connections are admitted against the open connection count before they are submitted, so this pool never needs
+			// more threads than the connection limit and its queue only holds connections whose slot was just freed
+			connectionService = (settings.getRequestExecutionMode() == DNSServerSettings.RequestExecutionMode.VIRTUAL_THREAD) ? 
+					newVirtualThreadPerTaskExecutor() : null;
+			
+			if (connectionService == null)
+			{
+				final ThreadPoolExecutor connectionPool = new ThreadPoolExecutor(settings.getTCPMaxConnections(), settings.getTCPMaxConnections(), 
+						120L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+				connectionPool.allowCoreThreadTimeOut(true);
+				connectionService = connectionPool;
+			}
+		}
+		
 		super.start();
 		
 		if (log.isInfoEnabled())
 		{
 			StringBuilder builder = new StringBuilder();
-			builder.append("DNS TCP Server Startup Complete\r\n\tBind Address: ").append(settings.getBindAddress());
+			builder.append("DNS TCP Server Startup Complete\r\n\tBind Address: ").append(bindAddress);
 			builder.append("\r\n\tBind Port: ").append(settings.getPort());
+			builder.append("\r\n\tPersistent Connections: ").append(settings.isTCPPersistentConnections());
 			log.info(builder.toString());
 		}
 	}
@@ -86,6 +140,12 @@ public class TCPServer extends DNSSocketServer
 		}
 		catch (IOException e) {/* no-op */}
 	
+		if (connectionService != null)
+			connectionService.shutdown();
+		
+		if (pipelinedRequestService != null)
+			pipelinedRequestService.shutdown();
+		
 		waitForGracefulStop();	
 	}
 	
@@ -98,8 +158,8 @@ public class TCPServer extends DNSSocketServer
 		
 		try
 		{
-			serverSocket = new ServerSocket(settings.getPort(), settings.getMaxConnectionBacklog(), 
-					Inet4Address.getByName(settings.getBindAddress()));
+			serverSocket = new ServerSocket();
+			serverSocket.bind(getBindSocketAddress(), settings.getMaxConnectionBacklog());
 
 		}
 		catch (Exception e)
@@ -141,8 +201,13 @@ public class TCPServer extends DNSSocketServer
 					Socket s = serverSocket.accept();
 					
 					s.setReceiveBufferSize(settings.getMaxRequestSize());
-					s.setSoTimeout(settings.getReceiveTimeout());
-					submitDNSRequest(s);
+					if (settings.isTCPPersistentConnections())
+						submitConnection(s);
+					else
+					{
+						s.setSoTimeout(settings.getReceiveTimeout());
+						submitDNSRequest(s);
+					}
 				}
 				catch (Throwable e)
 				{
@@ -156,6 +221,37 @@ public class TCPServer extends DNSSocketServer
 		}
 	}
 	
+	/*
+	 * Claims an open connection slot for a persistent connection and hands the connection to the connection pool
+	 */
+	private void submitConnection(Socket s)
+	{
+		int open;
+		do
+		{
+			open = openConnections.get();
+			if (open >= settings.getTCPMaxConnections())
+			{
+				// too many open connections... the client can come back later
+				closeQuietly(s);
+				return;
+			}
+		}
+		while (!openConnections.compareAndSet(open, open + 1));
+		
+		try
+		{
+			s.setSoTimeout(settings.getTCPIdleTimeout());
+			connectionService.execute(new ConnectionTask(s));
+		}
+		catch (IOException | RuntimeException e)
+		{
+			openConnections.decrementAndGet();
+			closeQuietly(s);
+			log.warn("Rejecting DNS TCP connection: " + e.getMessage());
+		}
+	}
+	
 	/*
 	 * In the case that the server loses it connections, the accept socket needs to be re-established.
 	 */
@@ -210,15 +306,11 @@ public class TCPServer extends DNSSocketServer
 			requestSocket = s;
 		}
 		
-		@SuppressWarnings("unused")
 		public void run()
 		{
-			Message response = null;
-			Message query = null;
 			int inLength;
 			DataInputStream dataIn;
-			DataOutputStream dataOut;
-			byte [] in;
+			final byte [] in;
 			
 			try
 			{
@@ -233,51 +325,41 @@ public class TCPServer extends DNSSocketServer
 				{
 					// don't fill up my logs due to input stream errors that can happen
 					// from DOS attaches
-					try
-					{
-						requestSocket.close();
-					}
-					catch (IOException e2) {/* no-op */}
+					closeQuietly(requestSocket);
 					return;
 				}
 				in = new byte[inLength];
 				dataIn.readFully(in);
+			}
+			catch (IOException e)
+			{
+				log.error("Wire/connection protocol error handing DNS request: " + e.getMessage(), e);
+				closeQuietly(requestSocket);
+				return;
+			}
+			
+			//log.info("Valid message... moving on.");
+			
+			// the socket is written and closed once the response is complete
+			responder.processRequestAsync(ByteBuffer.wrap(in), false).whenComplete((writeBytes, e) -> 
+				/* an unparseable request has no response */
+				writeResponse((e == null) ? writeBytes : null));
+		}
+		
+		private void writeResponse(byte[] writeBytes)
+		{
+			try
+			{
+				updateResponseMetrics(writeBytes);
 				
-				//log.info("Valid message... moving on.");
-				
-				try
-				{
-					query = responder.toMessage(in);
-					
-					response = responder.processRequest(query);
-				}
-				catch (DNSException e) 
-				{		
-					//log.info("TCP server error response.");
-					if (query != null)
-						response = responder.processError(query, e.getError());
-				}
-
-				if (response != null)
+				if (writeBytes != null)
 				{
-					if (response.getRcode() == Rcode.NOERROR || response.getRcode() == Rcode.NXDOMAIN)
-					{
-						++successCount;
-						if (response.getSection(Section.ANSWER).size() == 0)
-							++missCount;	
-					}
-					else
-						++errorCount;	
-						
 					//log.info("Sending back valid response.");
 					
-					dataOut = new DataOutputStream(requestSocket.getOutputStream());
-					byte[] writeBytes = response.toWire();
+					final DataOutputStream dataOut = new DataOutputStream(requestSocket.getOutputStream());
 					dataOut.writeShort(writeBytes.length);
 					dataOut.write(writeBytes);
 				}
-				else
-					++errorCount;
 			}
 			catch (IOException e)
 			{
@@ -285,40 +367,159 @@ public class TCPServer extends DNSSocketServer
 			}
 			finally
 			{
-				try
-				{
-					requestSocket.close();
-				}
-				catch (IOException e) {/* no-op */}
+				closeQuietly(requestSocket);
 			}
 		}
 			
 	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getMissedRequestCount() 
-	{
-		return missCount;
-	}
-
-	/**
-	 * {@inheritDoc}
+	
+	/*
+	 * Task that reads requests from a persistent connection until the connection is closed by the
+	 * client, sits idle, or reaches its request limit.  Each request is processed independently and
+	 * its response is written as soon as it is ready, so responses may be sent out of order.  The connection's open
+	 * connection slot is claimed before the task is submitted and is released when the task ends.
 	 */
-	@Override
-	public Long getSuccessfulRequestCount() 
+	private class ConnectionTask implements Runnable
 	{
-		return successCount;
+		private final Socket requestSocket;
+		private final Semaphore pipelinedRequests;
+		private DataOutputStream dataOut;
+		
+		public ConnectionTask(Socket s)
+		{
+			requestSocket = s;
+			pipelinedRequests = new Semaphore(settings.getTCPMaxPipelinedRequests());
+		}
+		
+		public void run()
+		{
+			try
+			{
+				final DataInputStream dataIn = new DataInputStream(requestSocket.getInputStream());
+				dataOut = new DataOutputStream(requestSocket.getOutputStream());
+				
+				int requestCount = 0;
+				final int maxRequests = settings.getTCPMaxRequestsPerConnection();
+				while (running.get() && (maxRequests <= 0 || requestCount < maxRequests))
+				{
+					final byte[] in;
+					try
+					{
+						in = new byte[dataIn.readUnsignedShort()];
+						dataIn.readFully(in);
+					}
+					catch (EOFException | SocketTimeoutException e)
+					{
+						// the client closed the connection or it has been idle for too long
+						break;
+					}
+					
+					++requestCount;
+					updateCountMetrics();
+					
+					// stop reading from the connection until one of its outstanding requests completes
+					pipelinedRequests.acquire();
+					try
+					{
+						pipelinedRequestService.execute(() -> processRequest(in));
+					}
+					catch (RuntimeException e)
+					{
+						pipelinedRequests.release();
+						throw e;
+					}
+				}
+			}
+			catch (Exception e)
+			{
+				// don't fill up my logs due to input stream errors that can happen
+				// from DOS attaches
+			}
+			finally
+			{
+				awaitOutstandingRequests();
+				openConnections.decrementAndGet();
+				closeQuietly(requestSocket);
+			}
+		}
+		
+		/*
+		 * Waits for outstanding requests to write their responses so that the connection is not closed underneath them
+		 */
+		private void awaitOutstandingRequests()
+		{
+			final int maxPipelinedRequests = settings.getTCPMaxPipelinedRequests();
+			try
+			{
+				if (pipelinedRequests.tryAcquire(maxPipelinedRequests, settings.getSendTimeout(), TimeUnit.MILLISECONDS))
+					return;
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			
+			final int outstanding = maxPipelinedRequests - pipelinedRequests.availablePermits();
+			if (outstanding > 0)
+				log.warn("Closing DNS TCP connection with " + outstanding + " outstanding request(s) that did not complete within the send timeout.");
+		}
+		
+		private void processRequest(byte[] in)
+		{
+			final CompletionStage<byte[]> response;
+			try
+			{
+				response = responder.processRequestAsync(ByteBuffer.wrap(in), false);
+			}
+			catch (RuntimeException e)
+			{
+				pipelinedRequests.release();
+				throw e;
+			}
+			
+			// the pipelined request slot is held until the response is written
+			response.whenComplete((writeBytes, e) -> 
+				/* an unparseable request has no response */
+				writeResponse((e == null) ? writeBytes : null));
+		}
+		
+		private void writeResponse(byte[] writeBytes)
+		{
+			try
+			{
+				updateResponseMetrics(writeBytes);
+				
+				if (writeBytes != null)
+				{
+					final byte[] outBytes = new byte[writeBytes.length + 2];
+					outBytes[0] = (byte)(writeBytes.length >>> 8);
+					outBytes[1] = (byte)writeBytes.length;
+					System.arraycopy(writeBytes, 0, outBytes, 2, writeBytes.length);
+					
+					// responses from concurrently processed requests share the stream
+					synchronized (dataOut)
+					{
+						dataOut.write(outBytes);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				log.error("Wire/connection protocol error handing DNS request: " + e.getMessage(), e);
+			}
+			finally
+			{
+				pipelinedRequests.release();
+			}
+		}
 	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getErrorRequestCount()
+	
+	private static void closeQuietly(Socket s)
 	{
-		return errorCount;
+		try
+		{
+			s.close();
+		}
+		catch (IOException e) {/* no-op */}
 	}
-}
+}
\ No newline at end of file
@@ -19,11 +19,7 @@ package org.nhindirect.dns;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.Inet4Address;
-
-import org.xbill.DNS.Message;
-import org.xbill.DNS.Rcode;
-import org.xbill.DNS.Section;
+import java.nio.ByteBuffer;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -35,15 +31,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class UDPServer extends DNSSocketServer  
 {
-	private static final int MAX_WIRE_SIZE = 512;
-	
 	
 	private DatagramSocket serverSock;
 	
-	private volatile long missCount = 0;
-	private volatile long errorCount = 0;
-	private volatile long successCount = 0;	
-	
 	/**
 	 * Creates a UDP server that listens to datagram packets.  The server will not start accepting messages until the {@link #start()} method is called.
 	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
@@ -52,7 +42,27 @@ public class UDPServer extends DNSSocketServer
 	 */
 	public UDPServer(DNSServerSettings settings, DNSResponder responder) throws DNSException
 	{
-		super(settings, responder);		
+		this(settings, responder, settings.getBindAddresses().get(0));
+	}
+	
+	/**
+	 * Creates a UDP server that listens to datagram packets on a single address.  The server will not start accepting messages until the {@link #start()} method is called.
+	 * @param settings  The server settings.  The settings contain specific IP and socket configuration parameters.
+	 * @param responsder The DNS responder that will handle lookups.
+	 * @param bindAddress The IPv4 or IPv6 address that the server will be bound to.
+	 * @throws DNSException
+	 * 
+	 * @since 8.2.0
+	 */
+	public UDPServer(DNSServerSettings settings, DNSResponder responder, String bindAddress) throws DNSException
+	{
+		super(settings, responder, bindAddress);		
+		
+		// DatagramSockets require array backed buffers
+		receiveBufferPool = new ByteBufferPool(settings.getMaxRequestSize(), settings.getReceiveBufferPoolSize(), false);
+		
+		if (settings.getResponseRateLimit() > 0)
+			responseRateLimiter = new DNSResponseRateLimiter(settings);
 		
 		registerMBean(this.getClass());
 	}
@@ -68,7 +78,7 @@ public class UDPServer extends DNSSocketServer
 		if (log.isInfoEnabled())
 		{
 			StringBuilder builder = new StringBuilder();
-			builder.append("DNS UDP Server Startup Complete\r\n\tBind Address: ").append(settings.getBindAddress());
+			builder.append("DNS UDP Server Startup Complete\r\n\tBind Address: ").append(bindAddress);
 			builder.append("\r\n\tBind Port: ").append(settings.getPort());
 			log.info(builder.toString());
 		}
@@ -95,7 +105,7 @@ public class UDPServer extends DNSSocketServer
 		
 		try
 		{
-			serverSock = new DatagramSocket(settings.getPort(), Inet4Address.getByName(settings.getBindAddress()));
+			serverSock = new DatagramSocket(getBindSocketAddress());
 			serverSock.setReceiveBufferSize(settings.getMaxRequestSize());
 			serverSock.setSoTimeout(settings.getReceiveTimeout());
 		}
@@ -123,6 +133,37 @@ public class UDPServer extends DNSSocketServer
 		return new RequestTask((DatagramPacket)packet);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void rejectDNSRequest(Object packet, LoadShedReason reason)
+	{
+		final DatagramPacket inPacket = (DatagramPacket)packet;
+		try
+		{
+			final byte[] writeBytes = createLoadShedResponse(ByteBuffer.wrap(inPacket.getData(), inPacket.getOffset(), inPacket.getLength()));
+			if (writeBytes != null)
+				serverSock.send(new DatagramPacket(writeBytes, writeBytes.length, inPacket.getAddress(), inPacket.getPort()));
+		}
+		catch (IOException e)
+		{
+			/* no-op... we're too busy to worry about it */
+		}
+		finally
+		{
+			releaseReceiveBuffer(inPacket);
+		}
+	}
+	
+	/*
+	 * Returns the buffer backing a received packet to the pool
+	 */
+	private void releaseReceiveBuffer(DatagramPacket packet)
+	{
+		receiveBufferPool.release(ByteBuffer.wrap(packet.getData()));
+	}
+	
 	/*
 	 * Task that listens for datagram packets
 	 */
@@ -130,21 +171,26 @@ public class UDPServer extends DNSSocketServer
 	{
 		public void run()
 		{
+			ByteBuffer inBuffer = null;
 			
 			while(running.get())
 			{
 
 				try
 				{
-					byte[] inBuffer = new byte[settings.getMaxRequestSize()];
-					DatagramPacket inPacket = new DatagramPacket(inBuffer, inBuffer.length);
+					inBuffer = receiveBufferPool.acquire();
+					DatagramPacket inPacket = new DatagramPacket(inBuffer.array(), inBuffer.capacity());
 
 					serverSock.receive(inPacket);
 
 					submitDNSRequest(inPacket);
+					inBuffer = null;
 				}
 				catch (Throwable e)
 				{
+					receiveBufferPool.release(inBuffer);
+					inBuffer = null;
+					
 					// udp has no state, so we can just call receive again
 					// unless it was closed
 					if (serverSock.isClosed() && running.get())
@@ -209,53 +255,41 @@ public class UDPServer extends DNSSocketServer
 			this.inPacket = inPacket;
 		}
 		
-		@SuppressWarnings("unused")
 		public void run()
 		{
-			Message query = null;
-			Message response = null;
-			DatagramPacket outPacket = null;
+			// the receive buffer backs the request until the response is complete
+			responder.processRequestAsync(ByteBuffer.wrap(inPacket.getData(), inPacket.getOffset(), inPacket.getLength()), true)
+				.whenComplete((writeBytes, e) -> 
+				{
+					try
+					{
+						/* an unparseable request has no response */
+						sendResponse((e == null) ? writeBytes : null);
+					}
+					finally
+					{
+						releaseReceiveBuffer(inPacket);
+					}
+				});
+		}
+		
+		private void sendResponse(byte[] writeBytes)
+		{
+			updateResponseMetrics(writeBytes);
+			
+			final byte[] sendBytes = applyResponseRateLimit(inPacket.getAddress(), writeBytes);
+			if (sendBytes == null)
+				return;
 			
 			try
 			{
+				final DatagramPacket outPacket = new DatagramPacket(sendBytes,
+						sendBytes.length,
+						inPacket.getAddress(),
+						inPacket.getPort());
 				
-				try
-				{
-					//log.info("Got UDP DNS query.  Translating");
-					query = responder.toMessage(inPacket.getData());
-					//log.info("Send UDP DNS query to service.");
-					response = responder.processRequest(query);
-					//log.info("UDP query returned from config service");
-				}
-				catch (DNSException e) 
-				{
-					//log.info("Sending UDP error response");
-					if (query != null)
-						response = responder.processError(query, e.getError());
-				}
-
-				if (response != null)
-				{
-					if (response.getRcode() == Rcode.NOERROR || response.getRcode() == Rcode.NXDOMAIN)
-					{
-						++successCount;
-						if (response.getSection(Section.ANSWER).size() == 0)
-							++missCount;	
-					}
-					else
-						++errorCount;					
-					
-					byte[] writeBytes = response.toWire(MAX_WIRE_SIZE);
-					outPacket = new DatagramPacket(writeBytes,
-							writeBytes.length,
-							inPacket.getAddress(),
-							inPacket.getPort());
-					
-					//log.info("Sending UDP query valid response");
-					serverSock.send(outPacket);
-				}
-				else
-					++errorCount;				
+				//log.info("Sending UDP query valid response");
+				serverSock.send(outPacket);
 			}
 			catch (IOException e)
 			{
@@ -264,31 +298,4 @@ public class UDPServer extends DNSSocketServer
 		}
 			
 	}
-	
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getMissedRequestCount() 
-	{
-		return missCount;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getSuccessfulRequestCount() 
-	{
-		return successCount;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Long getErrorRequestCount()
-	{
-		return errorCount;
-	}
-}
+}
\ No newline at end of file
@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.xbill.DNS.Rcode;
 
 @Configuration
 public class DNSServerConfig
@@ -19,6 +20,92 @@ public class DNSServerConfig
 	@Value("${direct.dns.binding.maxReconnectAttempts:10}")
 	protected int maxReconnectAttempts;
 	
+	@Value("${direct.dns.binding.nioUDPEnabled:false}")
+	protected boolean nioUDPEnabled;
+	
+	@Value("${direct.dns.binding.udpReceiverThreads:0}")
+	protected int udpReceiverThreads;
+	
+	@Value("${direct.dns.binding.tcpPersistentConnections:false}")
+	protected boolean tcpPersistentConnections;
+	
+	@Value("${direct.dns.binding.tcpIdleTimeout:10000}")
+	protected int tcpIdleTimeout;
+	
+	@Value("${direct.dns.binding.tcpMaxConnections:64}")
+	protected int tcpMaxConnections;
+	
+	@Value("${direct.dns.binding.tcpMaxPipelinedRequests:16}")
+	protected int tcpMaxPipelinedRequests;
+	
+	@Value("${direct.dns.binding.tcpMaxRequestsPerConnection:0}")
+	protected int tcpMaxRequestsPerConnection;
+	
+	@Value("${direct.dns.binding.requestExecutionMode:POOLED}")
+	protected DNSServerSettings.RequestExecutionMode requestExecutionMode;
+	
+	@Value("${direct.dns.binding.maxQueuedRequests:0}")
+	protected int maxQueuedRequests;
+	
+	@Value("${direct.dns.binding.queueTargetLatency:5}")
+	protected int queueTargetLatency;
+	
+	@Value("${direct.dns.binding.queueLatencyInterval:100}")
+	protected int queueLatencyInterval;
+	
+	@Value("${direct.dns.binding.loadShedResponseCode:REFUSED}")
+	protected String loadShedResponseCode;
+	
+	@Value("${direct.dns.binding.maxUDPPayloadSize:1232}")
+	protected int maxUDPPayloadSize;
+	
+	// "mina" selects the experimental Apache MINA socket servers
+	@Value("${direct.dns.binding.transport:default}")
+	protected String transport;
+	
+	@Value("${direct.dns.binding.ioProcessorThreads:0}")
+	protected int ioProcessorThreads;
+	
+	@Value("${direct.dns.binding.udpReceiveBatchSize:1}")
+	protected int udpReceiveBatchSize;
+	
+	@Value("${direct.dns.binding.responseCacheSize:0}")
+	protected long responseCacheSize;
+	
+	@Value("${direct.dns.binding.responseCacheMaxTTL:300}")
+	protected int responseCacheMaxTTL;
+	
+	@Value("${direct.dns.binding.requestCoalescing:true}")
+	protected boolean requestCoalescing;
+	
+	@Value("${direct.dns.binding.responseRateLimit:0}")
+	protected int responseRateLimit;
+	
+	@Value("${direct.dns.binding.responseRateLimitSlip:2}")
+	protected int responseRateLimitSlip;
+	
+	@Value("${direct.dns.binding.responseRateLimitTableSize:65536}")
+	protected int responseRateLimitTableSize;
+	
+	@Value("${direct.dns.binding.responseRateLimitIPv4PrefixLength:24}")
+	protected int responseRateLimitIPv4PrefixLength;
+	
+	@Value("${direct.dns.binding.responseRateLimitIPv6PrefixLength:56}")
+	protected int responseRateLimitIPv6PrefixLength;
+	
+	// when empty, no query log file is written and each query is logged at INFO through the application log instead
+	@Value("${direct.dns.queryLog.file:}")
+	protected String queryLogFile;
+	
+	@Value("${direct.dns.queryLog.bufferSize:16384}")
+	protected int queryLogBufferSize;
+	
+	@Value("${direct.dns.queryLog.maxFileSize:104857600}")
+	protected long queryLogMaxFileSize;
+	
+	@Value("${direct.dns.queryLog.maxFiles:5}")
+	protected int queryLogMaxFiles;
+	
 	@Bean
 	@ConditionalOnMissingBean
 	public DNSServerSettings dnsServerSettings()
@@ -27,6 +114,36 @@ public class DNSServerConfig
 		settings.setBindAddress(bindAddress);
 		settings.setPort(port);
 		settings.setMaxReconnectAttempts(maxReconnectAttempts);
+		settings.setNIOUDPEnabled(nioUDPEnabled);
+		if (udpReceiverThreads > 0)
+			settings.setUDPReceiverThreads(udpReceiverThreads);
+		settings.setTCPPersistentConnections(tcpPersistentConnections);
+		settings.setTCPIdleTimeout(tcpIdleTimeout);
+		settings.setTCPMaxConnections(tcpMaxConnections);
+		settings.setTCPMaxPipelinedRequests(tcpMaxPipelinedRequests);
+		settings.setTCPMaxRequestsPerConnection(tcpMaxRequestsPerConnection);
+		settings.setRequestExecutionMode(requestExecutionMode);
+		settings.setMaxQueuedRequests(maxQueuedRequests);
+		settings.setQueueTargetLatency(queueTargetLatency);
+		settings.setQueueLatencyInterval(queueLatencyInterval);
+		settings.setLoadShedResponseCode(Rcode.value(loadShedResponseCode));
+		settings.setMaxUDPPayloadSize(maxUDPPayloadSize);
+		settings.setTransport(transport);
+		if (ioProcessorThreads > 0)
+			settings.setIOProcessorThreads(ioProcessorThreads);
+		settings.setUDPReceiveBatchSize(udpReceiveBatchSize);
+		settings.setResponseCacheSize(responseCacheSize);
+		settings.setResponseCacheMaxTTL(responseCacheMaxTTL);
+		settings.setRequestCoalescing(requestCoalescing);
+		settings.setResponseRateLimit(responseRateLimit);
+		settings.setResponseRateLimitSlip(responseRateLimitSlip);
+		settings.setResponseRateLimitTableSize(responseRateLimitTableSize);
+		settings.setResponseRateLimitIPv4PrefixLength(responseRateLimitIPv4PrefixLength);
+		settings.setResponseRateLimitIPv6PrefixLength(responseRateLimitIPv6PrefixLength);
+		settings.setQueryLogFile(queryLogFile);
+		settings.setQueryLogBufferSize(queryLogBufferSize);
+		settings.setQueryLogMaxFileSize(queryLogMaxFileSize);
+		settings.setQueryLogMaxFiles(queryLogMaxFiles);
 		
 		return settings;
 	}
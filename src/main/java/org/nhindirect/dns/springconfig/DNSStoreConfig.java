@@ -1,10 +1,18 @@
 package org.nhindirect.dns.springconfig;
 
+import java.io.File;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
 import org.nhind.config.rest.CertPolicyService;
 import org.nhind.config.rest.CertificateService;
 import org.nhind.config.rest.DNSService;
+import org.nhindirect.dns.DNSSnapshotFile;
 import org.nhindirect.dns.DNSStore;
 import org.nhindirect.dns.RESTServiceDNSStore;
+import org.nhindirect.dns.SnapshotDNSStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
@@ -17,6 +25,46 @@ public class DNSStoreConfig
 	@Value("${direct.dns.certPolicyName:}")
 	protected String cerlPolicyName;
 	
+	@Value("${direct.dns.negativeCacheSize:0}")
+	protected int negativeCacheSize;
+	
+	@Value("${direct.dns.storeLookupThreads:0}")
+	protected int storeLookupThreads;
+	
+	// lookups waiting for a store lookup thread; once full, requests are answered with SERVFAIL instead of queuing without bound
+	@Value("${direct.dns.storeLookupQueueSize:1000}")
+	protected int storeLookupQueueSize;
+	
+	@Value("${direct.dns.snapshotRefreshInterval:0}")
+	protected int snapshotRefreshInterval;
+	
+	@Value("${direct.dns.certCacheSize:0}")
+	protected int certCacheSize;
+	
+	@Value("${direct.dns.certCacheTTL:300}")
+	protected int certCacheTTL;
+	
+	@Value("${direct.dns.snapshotFile:}")
+	protected String snapshotFile;
+	
+	@Value("${direct.dns.soaRefreshInterval:0}")
+	protected int soaRefreshInterval;
+	
+	// seconds between owner index refreshes... each refresh downloads every certificate, including its certificate data, from the
+	// config service, so large installations should use a long interval.  Snapshot stores build the index from each snapshot instead
+	@Value("${direct.dns.certOwnerIndexRefreshInterval:0}")
+	protected int certOwnerIndexRefreshInterval;
+	
+	@Value("${direct.dns.certOwnerLookupThreads:0}")
+	protected int certOwnerLookupThreads;
+	
+	@Value("${direct.dns.certOwnerLookupFanout:4}")
+	protected int certOwnerLookupFanout;
+	
+	// owner lookups waiting for an owner lookup thread; once full, the lookup thread looks the owner up itself
+	@Value("${direct.dns.certOwnerLookupQueueSize:1000}")
+	protected int certOwnerLookupQueueSize;
+	
 	@Autowired
 	protected DNSService dnsService;
 	
@@ -30,8 +78,55 @@ public class DNSStoreConfig
 	@ConditionalOnMissingBean
 	public DNSStore dnsStore()
 	{
-		final RESTServiceDNSStore dnsStore = 
-				new RESTServiceDNSStore(dnsService, certService, certPolicyService, cerlPolicyName);
+		final RESTServiceDNSStore dnsStore;
+		if (snapshotRefreshInterval > 0)
+		{
+			// queries are answered from memory, and the config service is only called to refresh the snapshot
+			final SnapshotDNSStore snapshotStore = 
+					new SnapshotDNSStore(dnsService, certService, certPolicyService, cerlPolicyName, snapshotRefreshInterval);
+			// the last snapshot is kept on disk so the server can answer queries before the config service is reachable
+			if (!StringUtils.isEmpty(snapshotFile))
+				snapshotStore.setSnapshotFile(new DNSSnapshotFile(new File(snapshotFile)));
+			
+			snapshotStore.start();
+			dnsStore = snapshotStore;
+		}
+		else
+		{
+			dnsStore = new RESTServiceDNSStore(dnsService, certService, certPolicyService, cerlPolicyName);
+			
+			// snapshots carry their own SOA records, otherwise the SOA index is loaded by the first query unless it is refreshed on a schedule
+			if (soaRefreshInterval > 0)
+				dnsStore.startSOAIndex(soaRefreshInterval);
+			
+			// maps CERT query names straight to certificate owners instead of probing the config service for each '@' position...
+			// snapshots carry their own owner index
+			if (certOwnerIndexRefreshInterval > 0)
+				dnsStore.startOwnerIndex(certOwnerIndexRefreshInterval);
+		}
+		
+		dnsStore.setNegativeCacheSize(negativeCacheSize);
+		dnsStore.setCertCache(certCacheSize, certCacheTTL);
+		
+		// without an index, the candidate owners of a CERT query are independent and can be looked up at the same time
+		if (certOwnerLookupThreads > 0)
+		{
+			final ThreadPoolExecutor ownerLookupExecutor = new ThreadPoolExecutor(certOwnerLookupThreads, certOwnerLookupThreads, 
+					120L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(Math.max(1, certOwnerLookupQueueSize)), 
+					new ThreadPoolExecutor.CallerRunsPolicy());
+			ownerLookupExecutor.allowCoreThreadTimeOut(true);
+			dnsStore.setOwnerLookupExecutor(ownerLookupExecutor, certOwnerLookupFanout);
+		}
+		
+		// config service calls block, so asynchronous lookups are handed to their own pool to free up the request workers...
+		// request workers no longer bound the lookups in flight once they are handed off, so the pool's queue has to
+		if (storeLookupThreads > 0)
+		{
+			final ThreadPoolExecutor lookupExecutor = new ThreadPoolExecutor(storeLookupThreads, storeLookupThreads, 
+					120L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(Math.max(1, storeLookupQueueSize)));
+			lookupExecutor.allowCoreThreadTimeOut(true);
+			dnsStore.setLookupExecutor(lookupExecutor);
+		}
 		
 		return dnsStore;
 	}
@@ -0,0 +1,105 @@
+package org.nhindirect.dns.tools;
+
+import java.nio.ByteBuffer;
+
+import org.nhindirect.dns.DNSException;
+import org.nhindirect.dns.DNSResponder;
+import org.nhindirect.dns.DNSServerSettings;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Header;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+/**
+ * Single threaded micro benchmark of building NXDOMAIN responses.  Compares the original error path that cloned the request header 
+ * from a re-serialized request, the current message based error path, and the wire format error path used by the servers.
+ * @since 8.2.0
+ */
+public class DNSErrorResponseBenchmark
+{
+	protected static final int DEFAULT_ITERATIONS = 1000000;
+	
+	protected static final int WARMUP_ROUNDS = 3;
+	
+	protected static volatile int sink;
+	
+    public static void main(String[] args) throws Exception
+    {
+    	final int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+    	
+    	// store that never finds anything
+    	final DNSResponder responder = new DNSResponder(new DNSServerSettings(), (request) -> null)
+    	{
+    		@Override
+    		public void start() throws DNSException {}
+    		
+    		@Override
+    		public void stop() throws DNSException {}
+    	};
+    	
+    	final byte[] query = Message.newQuery(Record.newRecord(Name.fromString("nosuchhost.example.com."), Type.CERT, DClass.IN)).toWire();
+    	
+    	for (int round = 0; round <= WARMUP_ROUNDS; ++round)
+    	{
+    		final boolean report = (round == WARMUP_ROUNDS);
+    		
+    		long start = System.nanoTime();
+    		for (int i = 0; i < iterations; ++i)
+    		{
+    			final Message request = new Message(query);
+    			sink += legacyProcessError(request, Rcode.NXDOMAIN).toWire(512).length;
+    		}
+    		if (report)
+    			printResult("Original message error path", start, iterations);
+    		
+    		start = System.nanoTime();
+    		for (int i = 0; i < iterations; ++i)
+    		{
+    			final Message request = new Message(query);
+    			sink += responder.processRequest(request).toWire(512).length;
+    		}
+    		if (report)
+    			printResult("Current message error path", start, iterations);
+    		
+    		start = System.nanoTime();
+    		for (int i = 0; i < iterations; ++i)
+    			sink += responder.processRequest(ByteBuffer.wrap(query), true).length;
+    		if (report)
+    			printResult("Wire format error path", start, iterations);
+    	}
+    }
+    
+    /*
+     * The error path as it was before responses were written from the request bytes
+     */
+    protected static Message legacyProcessError(Message request, int error) throws Exception
+    {
+		Header respHeader = new Header(request.toWire());
+		Message response = new Message();
+		response.setHeader(respHeader);
+
+		for (int i = 0; i < 4; i++)
+			response.removeAllRecords(i);
+
+		response.addRecord(request.getQuestion(), Section.QUESTION);
+
+        response.getHeader().setFlag(Flags.QR);
+    	if (request.getHeader().getFlag(Flags.RD))
+    		response.getHeader().setFlag(Flags.RD);
+    	
+		respHeader.setRcode(Integer.parseInt(Integer.valueOf(error).toString()));
+		
+		return response;
+    }
+    
+    protected static void printResult(String name, long start, int iterations)
+    {
+    	final long elapsed = System.nanoTime() - start;
+    	System.out.println(name + ": " + (elapsed / iterations) + " ns/request");
+    }
+}
@@ -0,0 +1,64 @@
+package org.nhindirect.dns;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nhind.config.rest.CertificateService;
+import org.nhindirect.common.rest.exceptions.ServiceException;
+import org.nhindirect.config.model.Certificate;
+
+/*
+ * Certificate service that counts owner lookups
+ */
+public class CountingCertificateService implements CertificateService
+{
+	private final CertificateService delegate;
+	private final AtomicInteger ownerLookups = new AtomicInteger();
+	
+	public CountingCertificateService(CertificateService delegate)
+	{
+		this.delegate = delegate;
+	}
+	
+	public int getOwnerLookupCount()
+	{
+		return ownerLookups.get();
+	}
+	
+	@Override
+	public Collection<Certificate> getAllCertificates() throws ServiceException
+	{
+		return delegate.getAllCertificates();
+	}
+
+	@Override
+	public Collection<Certificate> getCertificatesByOwner(String owner) throws ServiceException
+	{
+		ownerLookups.incrementAndGet();
+		return delegate.getCertificatesByOwner(owner);
+	}
+
+	@Override
+	public Certificate getCertificatesByOwnerAndThumbprint(String owner, String thumbprint) throws ServiceException
+	{
+		return delegate.getCertificatesByOwnerAndThumbprint(owner, thumbprint);
+	}
+
+	@Override
+	public void addCertificate(Certificate cert) throws ServiceException
+	{
+		delegate.addCertificate(cert);
+	}
+
+	@Override
+	public void deleteCertificatesByIds(Collection<Long> ids) throws ServiceException
+	{
+		delegate.deleteCertificatesByIds(ids);
+	}
+
+	@Override
+	public void deleteCertificateByOwner(String owner) throws ServiceException
+	{
+		delegate.deleteCertificateByOwner(owner);
+	}
+}
@@ -0,0 +1,52 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class DNSLRUMapTest
+{
+	@Test
+	public void testPut_overWeight_assertLeastRecentlyUsedEvicted()
+	{
+		final DNSLRUMap<String, String> map = new DNSLRUMap<>(10, 10, String::length);
+		map.put("a", "1234");
+		map.put("b", "1234");
+		
+		// touching "a" makes "b" the least recently used entry
+		assertEquals("1234", map.get("a"));
+		map.put("c", "1234");
+		
+		assertNull(map.get("b"));
+		assertEquals("1234", map.get("a"));
+		assertEquals("1234", map.get("c"));
+		assertEquals(8L, map.getWeight());
+		
+		// replacing a value only counts the new weight
+		map.put("a", "12");
+		assertEquals(6L, map.getWeight());
+		
+		// a value heavier than the map is never added
+		map.put("d", "12345678901");
+		assertNull(map.get("d"));
+		assertEquals(2, map.size());
+	}
+	
+	@Test
+	public void testPut_manySegments_assertBounded()
+	{
+		final DNSLRUMap<Integer, Integer> map = new DNSLRUMap<>(1024);
+		for (int i = 0; i < 10000; ++i)
+			map.put(i, i);
+		
+		assertTrue(map.size() <= 1024);
+		assertEquals(map.size(), map.getWeight());
+		
+		assertTrue(map.remove(9999, 9999));
+		map.clear();
+		assertEquals(0, map.size());
+		assertEquals(0L, map.getWeight());
+	}
+}
@@ -0,0 +1,48 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.Name;
+
+public class DNSNameTrieTest
+{
+	@Test
+	public void testGet_manySiblings_assertExactMatches() throws Exception
+	{
+		final DNSNameTrie<Integer> trie = new DNSNameTrie<>();
+		for (int i = 0; i < 1000; ++i)
+			trie.put(Name.fromString("domain" + i + ".com."), i);
+		
+		assertEquals(1000, trie.size());
+		for (int i = 0; i < 1000; ++i)
+			assertEquals(Integer.valueOf(i), trie.get(Name.fromString("DOMAIN" + i + ".Com.")));
+		
+		assertNull(trie.get(Name.fromString("com.")));
+		assertNull(trie.get(Name.fromString("www.domain1.com.")));
+		assertNull(trie.get(Name.fromString("domain1000.com.")));
+	}
+	
+	@Test
+	public void testGetClosestEnclosing_zonesAddedInAnyOrder_assertClosestValue() throws Exception
+	{
+		final DNSNameTrie<String> trie = new DNSNameTrie<>();
+		// the child is added before its parent, so the parent's value must not replace the child's
+		trie.put(Name.fromString("sub.domain.com."), "sub");
+		trie.put(Name.fromString("domain.com."), "domain");
+		
+		assertEquals("domain", trie.getClosestEnclosing(Name.fromString("domain.com.")));
+		assertEquals("domain", trie.getClosestEnclosing(Name.fromString("a.b.domain.com.")));
+		assertEquals("domain", trie.getClosestEnclosing(Name.fromString("other.domain.com.")));
+		assertEquals("sub", trie.getClosestEnclosing(Name.fromString("x.sub.domain.com.")));
+		assertNull(trie.getClosestEnclosing(Name.fromString("domain.org.")));
+		assertNull(trie.getClosestEnclosing(Name.fromString("com.")));
+		
+		// replacing a value keeps the count
+		trie.put(Name.fromString("DOMAIN.com."), "domain2");
+		assertEquals(2, trie.size());
+		assertEquals("domain2", trie.getClosestEnclosing(Name.fromString("www.domain.com.")));
+		assertEquals("sub", trie.getClosestEnclosing(Name.fromString("sub.domain.com.")));
+	}
+}
@@ -0,0 +1,194 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.nhindirect.dns.util.DNSTestUtils;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class DNSNegativeCacheTest
+{
+	/*
+	 * Store that never finds any records and counts the lookups against its medium
+	 */
+	private static class EmptyStore extends AbstractDNSStore
+	{
+		private final AtomicInteger lookups = new AtomicInteger();
+		private final SOARecord soa;
+		private final boolean provesAbsence;
+		
+		public EmptyStore(SOARecord soa)
+		{
+			this(soa, false);
+		}
+		
+		public EmptyStore(SOARecord soa, boolean provesAbsence)
+		{
+			this.soa = soa;
+			this.provesAbsence = provesAbsence;
+		}
+		
+		@Override
+		protected boolean isExistingName(Name name, SOARecord soa)
+		{
+			return !provesAbsence || name.equals(soa.getName());
+		}
+		
+		@Override
+		protected RRset processGenericRecordRequest(String name, int type) throws DNSException
+		{
+			lookups.incrementAndGet();
+			return null;
+		}
+
+		@Override
+		protected RRset processCERTRecordRequest(String name) throws DNSException
+		{
+			lookups.incrementAndGet();
+			return null;
+		}
+
+		@Override
+		protected Collection<Record> processGenericANYRecordRequest(String name) throws DNSException
+		{
+			lookups.incrementAndGet();
+			return null;
+		}
+
+		@Override
+		protected Record checkForSoaRecord(String questionName)
+		{
+			return (soa != null && questionName.endsWith(soa.getName().toString())) ? soa : null;
+		}
+	}
+	
+	private static SOARecord createSOA() throws Exception
+	{
+		return new SOARecord(Name.fromString("domain.com."), DClass.IN, 3600, Name.fromString("ns.domain.com."), 
+				Name.fromString("admin.domain.com."), 1, 3600, 600, 86400, 60);
+	}
+	
+	private static Message createQuery(String name, int type) throws Exception
+	{
+		return Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+	}
+	
+	@Test
+	public void testGet_missingRecord_assertNODATAWithSOACached() throws Exception
+	{
+		final EmptyStore store = new EmptyStore(createSOA());
+		store.setNegativeCacheSize(100);
+		final DNSResponder responder = DNSTestUtils.createResponder(new DNSServerSettings(), store);
+		
+		for (int i = 0; i < 3; ++i)
+		{
+			// the store can't prove the name doesn't exist, so the answer is NODATA rather than NXDOMAIN
+			final Message response = responder.processRequest(createQuery("host.domain.com.", Type.CERT));
+			assertEquals(Rcode.NOERROR, response.getRcode());
+			assertTrue(response.getHeader().getFlag(Flags.AA));
+			assertEquals(0, response.getSection(Section.ANSWER).size());
+			
+			// the SOA TTL is the zone's negative TTL
+			final Record authority = response.getSection(Section.AUTHORITY).get(0);
+			assertEquals(Type.SOA, authority.getType());
+			assertTrue(authority.getTTL() > 0 && authority.getTTL() <= 60);
+		}
+		
+		assertEquals(1, store.lookups.get());
+		assertEquals(2, store.getNegativeCache().getHitCount());
+		
+		// other types are looked up separately
+		responder.processRequest(createQuery("host.domain.com.", Type.A));
+		assertEquals(2, store.lookups.get());
+	}
+	
+	@Test
+	public void testGet_nameProvedAbsent_assertNXDOMAINCached() throws Exception
+	{
+		final EmptyStore store = new EmptyStore(createSOA(), true);
+		store.setNegativeCacheSize(100);
+		final DNSResponder responder = DNSTestUtils.createResponder(new DNSServerSettings(), store);
+		
+		for (int i = 0; i < 2; ++i)
+		{
+			final Message response = responder.processRequest(createQuery("missing.domain.com.", Type.CERT));
+			assertEquals(Rcode.NXDOMAIN, response.getRcode());
+			assertEquals(Type.SOA, response.getSection(Section.AUTHORITY).get(0).getType());
+		}
+		
+		// the cached result keeps the response code that was decided
+		assertEquals(1, store.lookups.get());
+		assertEquals(Rcode.NXDOMAIN, store.getNegativeCache().get(Name.fromString("missing.domain.com."), Type.CERT).getRcode());
+	}
+	
+	@Test
+	public void testGet_zoneApex_assertNODATA() throws Exception
+	{
+		final EmptyStore store = new EmptyStore(createSOA());
+		final DNSResponder responder = DNSTestUtils.createResponder(new DNSServerSettings(), store);
+		
+		final Message response = responder.processRequest(createQuery("domain.com.", Type.MX));
+		assertEquals(Rcode.NOERROR, response.getRcode());
+		assertEquals(0, response.getSection(Section.ANSWER).size());
+		assertEquals(Type.SOA, response.getSection(Section.AUTHORITY).get(0).getType());
+	}
+	
+	@Test
+	public void testGet_noSOA_assertNotCached() throws Exception
+	{
+		final EmptyStore store = new EmptyStore(null);
+		store.setNegativeCacheSize(100);
+		final DNSResponder responder = DNSTestUtils.createResponder(new DNSServerSettings(), store);
+		
+		for (int i = 0; i < 2; ++i)
+		{
+			final Message response = responder.processRequest(createQuery("missing.other.com.", Type.CERT));
+			assertEquals(Rcode.NXDOMAIN, response.getRcode());
+			assertEquals(0, response.getSection(Section.AUTHORITY).size());
+		}
+		
+		assertEquals(2, store.lookups.get());
+		assertEquals(0, store.getNegativeCache().getSize());
+	}
+	
+	@Test
+	public void testPut_overSize_assertEvicted() throws Exception
+	{
+		final DNSNegativeCache cache = new DNSNegativeCache(2);
+		for (int i = 0; i < 5; ++i)
+			cache.put(Name.fromString("host" + i + ".domain.com."), Type.A, createSOA(), Rcode.NOERROR);
+		
+		assertEquals(2, cache.getSize());
+		
+		// the least recently used entry is evicted
+		cache.clear();
+		cache.put(Name.fromString("host0.domain.com."), Type.A, createSOA(), Rcode.NOERROR);
+		cache.put(Name.fromString("host1.domain.com."), Type.A, createSOA(), Rcode.NOERROR);
+		assertNotNull(cache.get(Name.fromString("host0.domain.com."), Type.A));
+		cache.put(Name.fromString("host2.domain.com."), Type.A, createSOA(), Rcode.NOERROR);
+		assertNotNull(cache.get(Name.fromString("host0.domain.com."), Type.A));
+		assertNull(cache.get(Name.fromString("host1.domain.com."), Type.A));
+		
+		// zero negative TTL is never cached
+		cache.clear();
+		final SOARecord noNegativeTTL = new SOARecord(Name.fromString("domain.com."), DClass.IN, 0, Name.fromString("ns.domain.com."), 
+				Name.fromString("admin.domain.com."), 1, 3600, 600, 86400, 60);
+		cache.put(Name.fromString("host.domain.com."), Type.A, noNegativeTTL, Rcode.NOERROR);
+		assertNull(cache.get(Name.fromString("host.domain.com."), Type.A));
+	}
+}
@@ -0,0 +1,91 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nhindirect.dns.util.DNSTestUtils;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+public class DNSQueryLogTest
+{
+	@TempDir
+	File tempDir;
+	
+	private static ByteBuffer createQuery(String name, int type) throws Exception
+	{
+		return ByteBuffer.wrap(Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN)).toWire());
+	}
+	
+	@Test
+	public void testLog_responderQueries_assertWrittenToFile() throws Exception
+	{
+		final File file = new File(tempDir, "query.log");
+		final DNSQueryLog queryLog = new DNSQueryLog(file, 64, 0, 0);
+		final DNSResponder responder = DNSTestUtils.createResponder(new DNSServerSettings());
+		responder.setQueryLog(queryLog);
+		
+		queryLog.start();
+		responder.processRequestAsync(createQuery("Example.Domain.com.", Type.A), true).toCompletableFuture().get();
+		responder.processRequestAsync(createQuery("missing.domain.com.", Type.CERT), false).toCompletableFuture().get();
+		responder.processRequest(Message.newQuery(Record.newRecord(Name.fromString("other.domain.com."), Type.MX, DClass.IN)));
+		queryLog.stop();
+		
+		final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+		assertEquals(3, lines.size());
+		assertTrue(lines.get(0).endsWith(" query: Example.Domain.com. IN A"), lines.get(0));
+		assertTrue(lines.get(1).endsWith(" query: missing.domain.com. IN CERT"), lines.get(1));
+		assertTrue(lines.get(2).endsWith(" query: other.domain.com. IN MX"), lines.get(2));
+		assertEquals(3L, queryLog.getLoggedCount());
+	}
+	
+	@Test
+	public void testLog_bufferFull_assertDropped() throws Exception
+	{
+		final File file = new File(tempDir, "query.log");
+		final DNSQueryLog queryLog = new DNSQueryLog(file, 4, 0, 0);
+		
+		// nothing drains the buffer until the writer is started
+		for (int i = 0; i < 4; ++i)
+			assertTrue(queryLog.log(Name.fromString("host" + i + ".domain.com."), DClass.IN, Type.A));
+		assertFalse(queryLog.log(Name.fromString("host5.domain.com."), DClass.IN, Type.A));
+		assertEquals(1L, queryLog.getDroppedCount());
+		
+		queryLog.start();
+		queryLog.stop();
+		assertEquals(4, Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII).size());
+		
+		// the buffer is reusable once drained
+		assertTrue(queryLog.log(Name.fromString("host6.domain.com."), DClass.IN, Type.A));
+	}
+	
+	@Test
+	public void testLog_maxFileSize_assertRolled() throws Exception
+	{
+		final File file = new File(tempDir, "query.log");
+		final DNSQueryLog queryLog = new DNSQueryLog(file, 64, 200, 2);
+		
+		for (int i = 0; i < 20; ++i)
+			queryLog.log(Name.fromString("host" + i + ".domain.com."), DClass.IN, Type.A);
+		
+		queryLog.start();
+		queryLog.stop();
+		
+		assertTrue(new File(tempDir, "query.log.1").exists());
+		assertTrue(new File(tempDir, "query.log.2").exists());
+		assertFalse(new File(tempDir, "query.log.3").exists());
+		assertTrue(file.length() < 200);
+	}
+}
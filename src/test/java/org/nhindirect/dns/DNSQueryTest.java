@@ -0,0 +1,148 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.nhindirect.dns.util.DNSTestUtils;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.ExtendedFlags;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Opcode;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class DNSQueryTest
+{
+	private static Message createQuery(String name, int type) throws Exception
+	{
+		return Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+	}
+	
+	@Test
+	public void testParse_ednsQuery_assertHeaderQuestionAndOPT() throws Exception
+	{
+		final Message query = createQuery("Example.Domain.com.", Type.CERT);
+		query.getHeader().setID(1234);
+		query.addRecord(new OPTRecord(4096, 0, 0, ExtendedFlags.DO), Section.ADDITIONAL);
+		final byte[] wire = query.toWire();
+		
+		// leave some junk around the message to make sure only the position to limit is used
+		final byte[] padded = new byte[wire.length + 8];
+		System.arraycopy(wire, 0, padded, 4, wire.length);
+		final ByteBuffer request = ByteBuffer.wrap(padded, 4, wire.length);
+		
+		final DNSQuery parsed = new DNSQuery();
+		assertTrue(parsed.parse(request));
+		assertEquals(4, request.position());
+		
+		assertTrue(parsed.isSimple());
+		assertEquals(1234, parsed.getID());
+		assertFalse(parsed.isResponse());
+		assertEquals(Opcode.QUERY, parsed.getOpcode());
+		assertEquals(Type.CERT, parsed.getType());
+		assertEquals(DClass.IN, parsed.getDClass());
+		assertArrayEquals(Name.fromString("example.domain.com.").toWireCanonical(), parsed.getCanonicalName());
+		assertEquals(DNSWireUtils.getQuestionEnd(ByteBuffer.wrap(wire)), parsed.getQuestionEnd());
+		
+		assertTrue(parsed.isEDNS());
+		assertEquals(4096, parsed.getEDNSPayloadSize());
+		assertEquals(0, parsed.getEDNSVersion());
+		assertTrue(parsed.isDNSSECOK());
+	}
+	
+	@Test
+	public void testParse_extraRecords_assertNotSimple() throws Exception
+	{
+		final Message query = createQuery("example.domain.com.", Type.A);
+		query.addRecord(new ARecord(Name.fromString("example.domain.com."), DClass.IN, 3600, InetAddress.getByName("127.0.0.1")), Section.ADDITIONAL);
+		
+		final DNSQuery parsed = new DNSQuery();
+		assertTrue(parsed.parse(ByteBuffer.wrap(query.toWire())));
+		assertFalse(parsed.isSimple());
+		assertFalse(parsed.isEDNS());
+		assertEquals(Type.A, parsed.getType());
+	}
+	
+	@Test
+	public void testParse_malformed_assertFalse() throws Exception
+	{
+		final byte[] wire = createQuery("example.domain.com.", Type.A).toWire();
+		
+		final DNSQuery parsed = new DNSQuery();
+		assertFalse(parsed.parse(ByteBuffer.wrap(wire, 0, wire.length - 2)));
+		assertFalse(parsed.parse(ByteBuffer.wrap(wire, 0, DNSWireUtils.HEADER_LENGTH - 1)));
+		
+		// no question
+		assertFalse(parsed.parse(ByteBuffer.wrap(new Message().toWire())));
+		
+		// label length with the reserved high bits set
+		wire[DNSWireUtils.HEADER_LENGTH] = (byte)0x80;
+		assertFalse(parsed.parse(ByteBuffer.wrap(wire)));
+	}
+	
+	@Test
+	public void testProcessRequest_unsupportedAndMalformedQueries_assertStoreNotCalled() throws Exception
+	{
+		final AtomicInteger calls = new AtomicInteger();
+		final DNSStore store = new DNSStore()
+		{
+			@Override
+			public Message get(Message dnsMsg) throws DNSException
+			{
+				calls.incrementAndGet();
+				return null;
+			}
+			
+			@Override
+			public boolean isSupportedQuery(int opcode, int type, int dclass)
+			{
+				return type == Type.A;
+			}
+		};
+		final DNSResponder responder = DNSTestUtils.createResponder(new DNSServerSettings(), store);
+		
+		final Message query = createQuery("example.domain.com.", Type.AAAA);
+		query.addRecord(new OPTRecord(4096, 0, 0, ExtendedFlags.DO), Section.ADDITIONAL);
+		final Message response = new Message(responder.processRequest(ByteBuffer.wrap(query.toWire()), true));
+		assertEquals(query.getHeader().getID(), response.getHeader().getID());
+		assertTrue(response.getHeader().getFlag(Flags.QR));
+		assertEquals(Rcode.NOTIMP, response.getRcode());
+		assertEquals(query.getQuestion(), response.getQuestion());
+		assertEquals(new DNSServerSettings().getMaxUDPPayloadSize(), response.getOPT().getPayloadSize());
+		assertEquals(ExtendedFlags.DO, response.getOPT().getFlags() & ExtendedFlags.DO);
+		
+		// unsupported EDNS version
+		final Message badVersion = createQuery("example.domain.com.", Type.A);
+		badVersion.addRecord(new OPTRecord(4096, 0, 1), Section.ADDITIONAL);
+		assertEquals(Rcode.BADVERS, new Message(responder.processRequest(ByteBuffer.wrap(badVersion.toWire()), true)).getRcode());
+		
+		// responses are never answered
+		final Message notQuery = createQuery("example.domain.com.", Type.A);
+		notQuery.getHeader().setFlag(Flags.QR);
+		assertNull(responder.processRequest(ByteBuffer.wrap(notQuery.toWire()), true));
+		
+		final byte[] wire = createQuery("example.domain.com.", Type.A).toWire();
+		assertThrows(DNSException.class, () -> responder.processRequest(ByteBuffer.wrap(wire, 0, wire.length - 1), true));
+		
+		assertEquals(0, calls.get());
+		
+		// supported queries still get to the store
+		assertEquals(Rcode.NXDOMAIN, new Message(responder.processRequest(ByteBuffer.wrap(wire), true)).getRcode());
+		assertEquals(1, calls.get());
+	}
+}
@@ -0,0 +1,128 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.jupiter.api.Test;
+import org.nhindirect.dns.util.DNSTestUtils;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class DNSRequestCoalescerTest
+{
+	private static final int NUM_REQUESTS = 8;
+	
+	private static ByteBuffer createQuery(String name, int id) throws Exception
+	{
+		final Message query = Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+		query.getHeader().setID(id);
+		return ByteBuffer.wrap(query.toWire());
+	}
+	
+	private static void waitForState(Thread thread, Thread.State state) throws Exception
+	{
+		final long timeout = System.currentTimeMillis() + 10000;
+		while (thread.getState() != state && System.currentTimeMillis() < timeout)
+			Thread.sleep(5);
+		
+		assertEquals(state, thread.getState());
+	}
+	
+	@Test
+	public void testProcessRequest_identicalConcurrentRequests_assertSingleLookup() throws Exception
+	{
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		
+		final DNSStore store = (request) ->
+		{
+			calls.incrementAndGet();
+			entered.countDown();
+			try
+			{
+				release.await(10, TimeUnit.SECONDS);
+				
+				final Record question = request.getQuestion();
+				final Message response = new Message(request.getHeader().getID());
+				response.getHeader().setFlag(Flags.QR);
+				response.addRecord(question, Section.QUESTION);
+				response.addRecord(new ARecord(question.getName(), DClass.IN, 3600, InetAddress.getByName("127.0.0.1")), Section.ANSWER);
+				return response;
+			}
+			catch (Exception e)
+			{
+				throw new DNSException(DNSError.newError(Rcode.SERVFAIL), e.getMessage(), e);
+			}
+		};
+		final DNSResponder responder = DNSTestUtils.createResponder(new DNSServerSettings(), store);
+		
+		final AtomicReferenceArray<byte[]> responses = new AtomicReferenceArray<byte[]>(NUM_REQUESTS);
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < NUM_REQUESTS; ++i)
+		{
+			final int id = i + 1;
+			final String name = (i % 2 == 0) ? "example.domain.com." : "EXAMPLE.domain.COM.";
+			final Thread thread = new Thread(() ->
+			{
+				try
+				{
+					responses.set(id - 1, responder.processRequest(createQuery(name, id), true));
+				}
+				catch (Exception e)
+				{
+					/* no-op... the response check will fail */
+				}
+			});
+			threads.add(thread);
+		}
+		
+		// the first request does the lookup, and the rest wait for it
+		threads.get(0).start();
+		assertTrue(entered.await(10, TimeUnit.SECONDS));
+		for (Thread thread : threads.subList(1, NUM_REQUESTS))
+		{
+			thread.start();
+			waitForState(thread, Thread.State.WAITING);
+		}
+		
+		release.countDown();
+		for (Thread thread : threads)
+			thread.join(10000);
+		
+		assertEquals(1, calls.get());
+		for (int i = 0; i < NUM_REQUESTS; ++i)
+		{
+			final Message response = new Message(responses.get(i));
+			assertEquals(i + 1, response.getHeader().getID());
+			assertEquals(Rcode.NOERROR, response.getRcode());
+			assertEquals(1, response.getSection(Section.ANSWER).size());
+			assertEquals((i % 2 == 0) ? "example.domain.com." : "EXAMPLE.domain.COM.", response.getQuestion().getName().toString());
+		}
+		
+		final DNSRequestCoalescer coalescer = responder.getRequestCoalescer();
+		assertEquals(NUM_REQUESTS - 1, coalescer.getCoalescedCount());
+		assertEquals(1, coalescer.getLookupCount());
+		assertEquals((double)(NUM_REQUESTS - 1) / NUM_REQUESTS, coalescer.getCoalesceRatio(), 0.0001);
+		
+		// nothing is left in flight, so the next request does its own lookup
+		responder.processRequest(createQuery("example.domain.com.", 100), true);
+		assertEquals(2, calls.get());
+	}
+}
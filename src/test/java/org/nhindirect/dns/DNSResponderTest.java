@@ -0,0 +1,169 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.nhindirect.dns.util.DNSTestUtils;
+import org.xbill.DNS.CERTRecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.ExtendedFlags;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class DNSResponderTest
+{
+	private static final int CERT_SIZE = 400;
+	
+	/*
+	 * Store that answers every request with the requested number of large CERT records
+	 */
+	private static DNSStore createCertStore(int numCerts)
+	{
+		return (request) ->
+		{
+			final Record question = request.getQuestion();
+			final Message response = new Message(request.getHeader().getID());
+			response.getHeader().setFlag(Flags.QR);
+			response.addRecord(question, Section.QUESTION);
+			for (int i = 0; i < numCerts; ++i)
+			{
+				final byte[] cert = new byte[CERT_SIZE];
+				cert[0] = (byte)i;
+				response.addRecord(new CERTRecord(question.getName(), DClass.IN, 3600, CERTRecord.PKIX, 0, 0, cert), Section.ANSWER);
+			}
+			return response;
+		};
+	}
+	
+	private static Message createQuery(OPTRecord opt) throws Exception
+	{
+		final Message query = Message.newQuery(Record.newRecord(Name.fromString("example.domain.com."), Type.CERT, DClass.IN));
+		if (opt != null)
+			query.addRecord(opt, Section.ADDITIONAL);
+		
+		return query;
+	}
+	
+	@Test
+	public void testProcessRequest_noEDNS_assertTruncatedTo512() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, createCertStore(5));
+		
+		final Message query = createQuery(null);
+		final Message response = responder.processRequest(query);
+		assertNull(response.getOPT());
+		
+		final int maxSize = responder.getMaxUDPResponseSize(query);
+		assertEquals(512, maxSize);
+		
+		final byte[] wire = response.toWire(maxSize);
+		assertTrue(wire.length <= 512);
+		assertTrue(new Message(wire).getHeader().getFlag(Flags.TC));
+	}
+	
+	@Test
+	public void testProcessRequest_EDNS_assertPayloadCappedAndTruncated() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, createCertStore(5));
+		
+		final Message query = createQuery(new OPTRecord(4096, 0, 0));
+		final Message response = responder.processRequest(query);
+		
+		final int maxSize = responder.getMaxUDPResponseSize(query);
+		assertEquals(DNSServerSettings.DEFAULT_MAX_UDP_PAYLOAD_SIZE, maxSize);
+		
+		final byte[] wire = response.toWire(maxSize);
+		assertTrue(wire.length <= maxSize);
+		
+		final Message parsed = new Message(wire);
+		assertTrue(parsed.getHeader().getFlag(Flags.TC));
+		assertNotNull(parsed.getOPT());
+		assertEquals(DNSServerSettings.DEFAULT_MAX_UDP_PAYLOAD_SIZE, parsed.getOPT().getPayloadSize());
+	}
+	
+	@Test
+	public void testProcessRequest_EDNS_answerFits_assertNotTruncated() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, createCertStore(2));
+		
+		final Message query = createQuery(new OPTRecord(4096, 0, 0));
+		final Message response = responder.processRequest(query);
+		
+		// too big for a classic 512 byte response
+		final byte[] wire = response.toWire(responder.getMaxUDPResponseSize(query));
+		assertTrue(wire.length > 512);
+		
+		final Message parsed = new Message(wire);
+		assertFalse(parsed.getHeader().getFlag(Flags.TC));
+		assertEquals(2, parsed.getSection(Section.ANSWER).size());
+		assertNotNull(parsed.getOPT());
+	}
+	
+	@Test
+	public void testProcessRequest_EDNS_smallClientBuffer_assertClientSizeHonored() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, createCertStore(2));
+		
+		assertEquals(800, responder.getMaxUDPResponseSize(createQuery(new OPTRecord(800, 0, 0))));
+		// advertised sizes under 512 are treated as 512
+		assertEquals(512, responder.getMaxUDPResponseSize(createQuery(new OPTRecord(100, 0, 0))));
+	}
+	
+	@Test
+	public void testProcessRequest_unsupportedEDNSVersion_assertBADVERS() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, createCertStore(1));
+		
+		final Message response = new Message(responder.processRequest(createQuery(new OPTRecord(4096, 0, 1))).toWire());
+		assertEquals(Rcode.BADVERS, response.getRcode());
+		assertEquals(0, response.getSection(Section.ANSWER).size());
+		assertEquals(0, response.getOPT().getVersion());
+	}
+	
+	@Test
+	public void testProcessRequest_errors_assertWireAndMessagePathsMatch() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		final DNSStore nxStore = (request) -> null;
+		final DNSStore failingStore = (request) -> {throw new DNSException(DNSError.newError(Rcode.SERVFAIL), "Store failure");};
+		
+		for (DNSStore store : new DNSStore[] {nxStore, failingStore})
+		{
+			final DNSResponder responder = DNSTestUtils.createResponder(settings, store);
+			for (OPTRecord opt : new OPTRecord[] {null, new OPTRecord(4096, 0, 0, ExtendedFlags.DO)})
+			{
+				final Message query = createQuery(opt);
+				query.getHeader().setID(4321);
+				
+				final Message fromMessage = new Message(responder.processRequest(query).toWire());
+				final Message fromWire = new Message(responder.processRequest(ByteBuffer.wrap(query.toWire()), true));
+				
+				assertEquals(4321, fromWire.getHeader().getID());
+				assertEquals(fromMessage.getHeader().toString(), fromWire.getHeader().toString());
+				assertEquals(fromMessage.getQuestion(), fromWire.getQuestion());
+				assertEquals(0, fromWire.getSection(Section.ANSWER).size());
+				if (opt == null)
+					assertNull(fromWire.getOPT());
+				else
+					assertEquals(fromMessage.getOPT(), fromWire.getOPT());
+			}
+		}
+	}
+}
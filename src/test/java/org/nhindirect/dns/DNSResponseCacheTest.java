@@ -0,0 +1,159 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.nhindirect.dns.util.DNSTestUtils;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class DNSResponseCacheTest
+{
+	/*
+	 * Store that answers every A request and counts how many times it is called
+	 */
+	private static DNSStore createCountingStore(AtomicInteger calls, long ttl)
+	{
+		return (request) ->
+		{
+			calls.incrementAndGet();
+			
+			final Record question = request.getQuestion();
+			final Message response = new Message(request.getHeader().getID());
+			response.getHeader().setFlag(Flags.QR);
+			response.addRecord(question, Section.QUESTION);
+			try
+			{
+				response.addRecord(new ARecord(question.getName(), DClass.IN, ttl, InetAddress.getByName("127.0.0.1")), Section.ANSWER);
+			}
+			catch (Exception e)
+			{
+				throw new DNSException(DNSError.newError(Rcode.SERVFAIL), e.getMessage(), e);
+			}
+			return response;
+		};
+	}
+	
+	private static ByteBuffer createQuery(String name, int id, boolean rd, OPTRecord opt) throws Exception
+	{
+		final Message query = Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+		query.getHeader().setID(id);
+		if (!rd)
+			query.getHeader().unsetFlag(Flags.RD);
+		if (opt != null)
+			query.addRecord(opt, Section.ADDITIONAL);
+		
+		return ByteBuffer.wrap(query.toWire());
+	}
+	
+	@Test
+	public void testProcessRequest_repeatedQuery_assertAnsweredFromCacheAndPatched() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setResponseCacheSize(1024 * 1024);
+		
+		final AtomicInteger calls = new AtomicInteger();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, createCountingStore(calls, 3600));
+		
+		final Message first = new Message(responder.processRequest(createQuery("example.domain.com.", 100, true, null), true));
+		assertEquals(100, first.getHeader().getID());
+		
+		// different ID, RD, and name case
+		final Message second = new Message(responder.processRequest(createQuery("EXAMPLE.Domain.com.", 200, false, null), true));
+		assertEquals(1, calls.get());
+		assertEquals(200, second.getHeader().getID());
+		assertFalse(second.getHeader().getFlag(Flags.RD));
+		assertTrue(second.getHeader().getFlag(Flags.QR));
+		assertEquals("EXAMPLE.Domain.com.", second.getQuestion().getName().toString());
+		assertEquals(1, second.getSection(Section.ANSWER).size());
+		
+		assertEquals(1, responder.getResponseCache().getHitCount());
+		assertEquals(1, responder.getResponseCache().getMissCount());
+	}
+	
+	@Test
+	public void testProcessRequest_differentEDNSState_assertSeparateEntries() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setResponseCacheSize(1024 * 1024);
+		
+		final AtomicInteger calls = new AtomicInteger();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, createCountingStore(calls, 3600));
+		
+		responder.processRequest(createQuery("example.domain.com.", 1, true, null), true);
+		final Message ednsResponse = new Message(responder.processRequest(createQuery("example.domain.com.", 2, true, new OPTRecord(4096, 0, 0)), true));
+		assertEquals(2, calls.get());
+		assertTrue(ednsResponse.getOPT() != null);
+		
+		// TCP responses are not size limited, so they are cached separately as well
+		responder.processRequest(createQuery("example.domain.com.", 3, true, null), false);
+		assertEquals(3, calls.get());
+		
+		responder.processRequest(createQuery("example.domain.com.", 4, true, new OPTRecord(4096, 0, 0)), true);
+		assertEquals(3, calls.get());
+	}
+	
+	@Test
+	public void testProcessRequest_expiredTTL_assertStoreCalledAgain() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setResponseCacheSize(1024 * 1024);
+		
+		final AtomicInteger calls = new AtomicInteger();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, createCountingStore(calls, 1));
+		
+		responder.processRequest(createQuery("example.domain.com.", 1, true, null), true);
+		responder.processRequest(createQuery("example.domain.com.", 2, true, null), true);
+		assertEquals(1, calls.get());
+		
+		Thread.sleep(1100);
+		
+		responder.processRequest(createQuery("example.domain.com.", 3, true, null), true);
+		assertEquals(2, calls.get());
+	}
+	
+	@Test
+	public void testProcessRequest_sizeLimit_assertCacheBounded() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setResponseCacheSize(1024);
+		
+		final AtomicInteger calls = new AtomicInteger();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, createCountingStore(calls, 3600));
+		
+		for (int i = 0; i < 50; ++i)
+			responder.processRequest(createQuery("host" + i + ".domain.com.", i, true, null), true);
+		
+		assertEquals(50, calls.get());
+		assertTrue(responder.getResponseCache().getSize() <= 1024);
+		assertTrue(responder.getResponseCache().getSize() > 0);
+	}
+	
+	@Test
+	public void testProcessRequest_cacheDisabled_assertStoreAlwaysCalled() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		
+		final AtomicInteger calls = new AtomicInteger();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, createCountingStore(calls, 3600));
+		
+		responder.processRequest(createQuery("example.domain.com.", 1, true, null), true);
+		responder.processRequest(createQuery("example.domain.com.", 2, true, null), true);
+		assertEquals(2, calls.get());
+		assertTrue(responder.getResponseCache() == null);
+	}
+}
@@ -0,0 +1,134 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class DNSResponseRateLimiterTest
+{
+	/*
+	 * Limiter with a clock controlled by the test
+	 */
+	private static class ManualClockLimiter extends DNSResponseRateLimiter
+	{
+		private long now = 1000;
+		
+		public ManualClockLimiter(int responsesPerSecond, int slip)
+		{
+			super(responsesPerSecond, slip, 1024, 24, 56);
+		}
+		
+		@Override
+		protected long getCurrentTime()
+		{
+			return now;
+		}
+	}
+	
+	private static byte[] createAnswer(String name) throws Exception
+	{
+		final Message response = Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+		response.getHeader().setFlag(Flags.QR);
+		response.addRecord(new ARecord(Name.fromString(name), DClass.IN, 3600, InetAddress.getByName("10.1.1.1")), Section.ANSWER);
+		return response.toWire();
+	}
+	
+	private static byte[] createNXDOMAIN(String name) throws Exception
+	{
+		final Message response = Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+		response.getHeader().setFlag(Flags.QR);
+		response.getHeader().setRcode(Rcode.NXDOMAIN);
+		response.addRecord(new SOARecord(Name.fromString("domain.com."), DClass.IN, 3600, Name.fromString("ns.domain.com."), 
+				Name.fromString("admin.domain.com."), 1, 3600, 600, 86400, 60), Section.AUTHORITY);
+		return response.toWire();
+	}
+	
+	@Test
+	public void testCheck_overLimit_assertDroppedAndSlipped() throws Exception
+	{
+		final ManualClockLimiter limiter = new ManualClockLimiter(5, 2);
+		final InetAddress client = InetAddress.getByName("192.168.10.20");
+		final byte[] response = createAnswer("cert.domain.com.");
+		
+		for (int i = 0; i < 5; ++i)
+			assertEquals(DNSResponseRateLimiter.Action.SEND, limiter.check(client, response));
+		
+		// every other limited response is slipped
+		for (int i = 0; i < 3; ++i)
+		{
+			assertEquals(DNSResponseRateLimiter.Action.DROP, limiter.check(client, response));
+			assertEquals(DNSResponseRateLimiter.Action.SLIP, limiter.check(client, response));
+		}
+		assertEquals(3L, limiter.getDroppedCount());
+		assertEquals(3L, limiter.getSlippedCount());
+		
+		// the same /24 shares the bucket, but other networks and other questions do not
+		assertEquals(DNSResponseRateLimiter.Action.DROP, limiter.check(InetAddress.getByName("192.168.10.99"), response));
+		assertEquals(DNSResponseRateLimiter.Action.SEND, limiter.check(InetAddress.getByName("192.168.11.20"), response));
+		assertEquals(DNSResponseRateLimiter.Action.SEND, limiter.check(client, createAnswer("other.domain.com.")));
+		
+		// 200 milliseconds refills a single response at 5 per second
+		limiter.now += 200;
+		assertEquals(DNSResponseRateLimiter.Action.SEND, limiter.check(client, response));
+		assertEquals(DNSResponseRateLimiter.Action.SLIP, limiter.check(client, response));
+	}
+	
+	@Test
+	public void testCheck_randomSubdomainNXDOMAIN_assertZoneSharesBucket() throws Exception
+	{
+		final ManualClockLimiter limiter = new ManualClockLimiter(3, 0);
+		final InetAddress client = InetAddress.getByName("2001:db8:1:2::5");
+		
+		for (int i = 0; i < 3; ++i)
+			assertEquals(DNSResponseRateLimiter.Action.SEND, limiter.check(client, createNXDOMAIN("random" + i + ".domain.com.")));
+		
+		assertEquals(DNSResponseRateLimiter.Action.DROP, limiter.check(client, createNXDOMAIN("random99.domain.com.")));
+		// same /56
+		assertEquals(DNSResponseRateLimiter.Action.DROP, limiter.check(InetAddress.getByName("2001:db8:1:ff::1"), createNXDOMAIN("other.domain.com.")));
+		// different /56
+		assertEquals(DNSResponseRateLimiter.Action.SEND, limiter.check(InetAddress.getByName("2001:db8:1:100::1"), createNXDOMAIN("other.domain.com.")));
+	}
+	
+	@Test
+	public void testCheck_tableChurn_assertActiveBucketNotReset() throws Exception
+	{
+		final ManualClockLimiter limiter = new ManualClockLimiter(2, 0);
+		final InetAddress client = InetAddress.getByName("192.168.10.20");
+		final byte[] response = createAnswer("cert.domain.com.");
+		
+		assertEquals(DNSResponseRateLimiter.Action.SEND, limiter.check(client, response));
+		assertEquals(DNSResponseRateLimiter.Action.SEND, limiter.check(client, response));
+		
+		// far more keys than buckets pass through the table, but the active bucket stays in its set and stays empty
+		for (int i = 0; i < 5000; ++i)
+		{
+			limiter.check(InetAddress.getByName("10." + (i >> 8 & 0xFF) + "." + (i & 0xFF) + ".1"), response);
+			assertEquals(DNSResponseRateLimiter.Action.DROP, limiter.check(client, response));
+		}
+	}
+	
+	@Test
+	public void testCreateTruncatedResponse_assertTCAndQuestionOnly() throws Exception
+	{
+		final byte[] truncated = DNSWireUtils.createTruncatedResponse(createAnswer("cert.domain.com."));
+		
+		final Message msg = new Message(truncated);
+		assertTrue(msg.getHeader().getFlag(Flags.TC));
+		assertTrue(msg.getHeader().getFlag(Flags.QR));
+		assertEquals(0, msg.getSection(Section.ANSWER).size());
+		assertEquals(Name.fromString("cert.domain.com."), msg.getQuestion().getName());
+	}
+}
@@ -0,0 +1,47 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+
+public class DNSSOAIndexTest
+{
+	private static Record createSOA(String zone) throws Exception
+	{
+		return new SOARecord(Name.fromString(zone), DClass.IN, 3600L, Name.fromString("ns." + zone), 
+				Name.fromString("admin." + zone), 1L, 3600L, 600L, 86400L, 3600L);
+	}
+	
+	@Test
+	public void testGetClosestEnclosing_nestedZones_assertClosestZoneReturned() throws Exception
+	{
+		final Record parent = createSOA("domain.com.");
+		final Record child = createSOA("sub.domain.com.");
+		final DNSSOAIndex index = new DNSSOAIndex(Arrays.asList(parent, child));
+		
+		assertEquals(2, index.getSize());
+		assertSame(parent, index.getClosestEnclosing(Name.fromString("domain.com.")));
+		assertSame(parent, index.getClosestEnclosing(Name.fromString("www.domain.com.")));
+		assertSame(child, index.getClosestEnclosing(Name.fromString("a.b.c.SUB.Domain.com.")));
+		assertNull(index.getClosestEnclosing(Name.fromString("other.com.")));
+		assertNull(index.getClosestEnclosing(Name.fromString("com.")));
+	}
+	
+	@Test
+	public void testGetClosestEnclosing_emptyIndex_assertNull() throws Exception
+	{
+		final DNSSOAIndex index = new DNSSOAIndex(Collections.emptyList());
+		
+		assertEquals(0, index.getSize());
+		assertNull(index.getClosestEnclosing(Name.fromString("www.domain.com.")));
+	}
+}
@@ -0,0 +1,278 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.nhindirect.dns.util.DNSTestUtils;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CERTRecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class DNSStoreAsyncTest
+{
+	/*
+	 * Store whose lookups stay pending until the test completes them
+	 */
+	private static class PendingStore implements DNSStore
+	{
+		private final DNSStore delegate = DNSTestUtils.createStore();
+		private final List<CompletableFuture<Message>> pending = new ArrayList<>();
+		private final List<Message> requests = new ArrayList<>();
+		
+		@Override
+		public Message get(Message request) throws DNSException
+		{
+			return delegate.get(request);
+		}
+		
+		@Override
+		public synchronized CompletionStage<Message> getAsync(Message request)
+		{
+			final CompletableFuture<Message> future = new CompletableFuture<>();
+			pending.add(future);
+			requests.add(request);
+			return future;
+		}
+		
+		public synchronized void completeAll() throws DNSException
+		{
+			for (int i = 0; i < pending.size(); ++i)
+				pending.get(i).complete(delegate.get(requests.get(i)));
+		}
+	}
+	
+	private static ByteBuffer createQuery(String name, int type) throws Exception
+	{
+		return ByteBuffer.wrap(Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN)).toWire());
+	}
+	
+	@Test
+	public void testProcessRequestAsync_pendingLookups_assertCompletedFromCallback() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setRequestCoalescing(false);
+		final PendingStore store = new PendingStore();
+		final DNSResponder responder = DNSTestUtils.createResponder(settings, store);
+		
+		// many lookups are in flight without a thread parked on any of them
+		final List<CompletableFuture<byte[]>> responses = new ArrayList<>();
+		for (int i = 0; i < 10; ++i)
+			responses.add(responder.processRequestAsync(createQuery(DNSTestUtils.TEST_RECORD_NAME, Type.A), true).toCompletableFuture());
+		
+		for (CompletableFuture<byte[]> response : responses)
+			assertFalse(response.isDone());
+		
+		store.completeAll();
+		
+		for (CompletableFuture<byte[]> response : responses)
+		{
+			assertTrue(response.isDone());
+			final Message msg = new Message(response.get());
+			assertEquals(Rcode.NOERROR, msg.getRcode());
+			assertEquals(1, msg.getSection(Section.ANSWER).size());
+		}
+	}
+	
+	@Test
+	public void testProcessRequestAsync_failedLookup_assertSERVFAIL() throws Exception
+	{
+		final DNSStore store = new DNSStore()
+		{
+			@Override
+			public Message get(Message request) throws DNSException
+			{
+				throw new IllegalStateException("medium unavailable");
+			}
+		};
+		final DNSResponder responder = DNSTestUtils.createResponder(new DNSServerSettings(), store);
+		
+		final byte[] response = responder.processRequestAsync(createQuery(DNSTestUtils.TEST_RECORD_NAME, Type.A), true)
+				.toCompletableFuture().get(5, TimeUnit.SECONDS);
+		assertEquals(Rcode.SERVFAIL, new Message(response).getRcode());
+	}
+	
+	@Test
+	public void testGetAsync_lookupExecutor_assertRunsOffCallerThread() throws Exception
+	{
+		final Thread caller = Thread.currentThread();
+		final Thread[] lookupThread = new Thread[1];
+		final AbstractDNSStore store = new AbstractDNSStore()
+		{
+			@Override
+			protected RRset processGenericRecordRequest(String name, int type) throws DNSException
+			{
+				lookupThread[0] = Thread.currentThread();
+				return null;
+			}
+
+			@Override
+			protected RRset processCERTRecordRequest(String name) throws DNSException
+			{
+				return null;
+			}
+
+			@Override
+			protected Collection<Record> processGenericANYRecordRequest(String name) throws DNSException
+			{
+				return null;
+			}
+
+			@Override
+			protected Record checkForSoaRecord(String questionName)
+			{
+				return null;
+			}
+		};
+		
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			store.setLookupExecutor(executor);
+			final Message response = store.getAsync(Message.newQuery(Record.newRecord(Name.fromString("missing.domain.com."), Type.A, DClass.IN)))
+					.toCompletableFuture().get(5, TimeUnit.SECONDS);
+			
+			// no records and no SOA is reported as no answer
+			assertNull(response);
+			assertTrue(lookupThread[0] != null && lookupThread[0] != caller);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testGetAsync_ANYQuery_saturatedExecutor_assertRecordsMerged() throws Exception
+	{
+		final Name name = Name.fromString("example.domain.com.");
+		final Record aRecord = new ARecord(name, DClass.IN, 3600L, InetAddress.getByAddress(new byte[] {10, 0, 0, 1}));
+		final AbstractDNSStore store = new AbstractDNSStore()
+		{
+			@Override
+			protected RRset processGenericRecordRequest(String name, int type) throws DNSException
+			{
+				return null;
+			}
+
+			@Override
+			protected RRset processCERTRecordRequest(String lookupName) throws DNSException
+			{
+				return new RRset(new CERTRecord(name, DClass.IN, 3600L, CERTRecord.PKIX, 0, 0, new byte[] {1}));
+			}
+
+			@Override
+			protected Collection<Record> processGenericANYRecordRequest(String lookupName) throws DNSException
+			{
+				return Arrays.asList(aRecord);
+			}
+
+			@Override
+			protected Record checkForSoaRecord(String questionName)
+			{
+				return null;
+			}
+		};
+		
+		// the only executor thread runs the lookup itself, so the CERT half can't be picked up by another thread
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			store.setLookupExecutor(executor);
+			final Message response = store.getAsync(Message.newQuery(Record.newRecord(name, Type.ANY, DClass.IN)))
+					.toCompletableFuture().get(5, TimeUnit.SECONDS);
+			
+			final List<Record> answers = response.getSection(Section.ANSWER);
+			assertEquals(2, answers.size());
+			assertTrue(answers.stream().anyMatch(rec -> rec.getType() == Type.A));
+			assertTrue(answers.stream().anyMatch(rec -> rec.getType() == Type.CERT));
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testGetAsync_lookupQueueFull_assertRejectedWithSERVFAIL() throws Exception
+	{
+		final AbstractDNSStore store = new AbstractDNSStore()
+		{
+			@Override
+			protected RRset processGenericRecordRequest(String name, int type) throws DNSException
+			{
+				return null;
+			}
+
+			@Override
+			protected RRset processCERTRecordRequest(String name) throws DNSException
+			{
+				return null;
+			}
+
+			@Override
+			protected Collection<Record> processGenericANYRecordRequest(String name) throws DNSException
+			{
+				return null;
+			}
+
+			@Override
+			protected Record checkForSoaRecord(String questionName)
+			{
+				return null;
+			}
+		};
+		final CountDownLatch release = new CountDownLatch(1);
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1));
+		try
+		{
+			// occupy the only lookup thread and the only queue slot
+			executor.execute(() -> 
+			{
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e) {/* no-op */}
+			});
+			executor.execute(() -> {});
+			
+			store.setLookupExecutor(executor);
+			final DNSResponder responder = DNSTestUtils.createResponder(new DNSServerSettings(), store);
+			final byte[] response = responder.processRequestAsync(createQuery(DNSTestUtils.TEST_RECORD_NAME, Type.A), true)
+					.toCompletableFuture().get(5, TimeUnit.SECONDS);
+			
+			assertEquals(Rcode.SERVFAIL, new Message(response).getRcode());
+			assertEquals(1L, store.getRejectedLookupCount());
+		}
+		finally
+		{
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class DNSWireUtilsTest
+{
+	@Test
+	public void testCreateErrorResponse_assertHeaderAndQuestion() throws Exception
+	{
+		final Message query = Message.newQuery(Record.newRecord(Name.fromString("example.domain.com."), Type.CERT, DClass.IN));
+		final byte[] wire = query.toWire();
+		
+		// leave some junk around the message to make sure only the position to limit is used
+		final byte[] padded = new byte[wire.length + 8];
+		System.arraycopy(wire, 0, padded, 4, wire.length);
+		final ByteBuffer request = ByteBuffer.wrap(padded, 4, wire.length);
+		
+		final byte[] responseBytes = DNSWireUtils.createErrorResponse(request, Rcode.REFUSED);
+		assertEquals(4, request.position());
+		
+		final Message response = new Message(responseBytes);
+		assertEquals(query.getHeader().getID(), response.getHeader().getID());
+		assertTrue(response.getHeader().getFlag(Flags.QR));
+		assertTrue(response.getHeader().getFlag(Flags.RD));
+		assertFalse(response.getHeader().getFlag(Flags.AA));
+		assertEquals(Rcode.REFUSED, response.getRcode());
+		assertEquals(query.getQuestion(), response.getQuestion());
+		assertEquals(0, response.getSection(Section.ANSWER).size());
+	}
+	
+	@Test
+	public void testCreateErrorResponse_requestIsResponse_assertNull() throws Exception
+	{
+		final Message query = Message.newQuery(Record.newRecord(Name.fromString("example.domain.com."), Type.A, DClass.IN));
+		query.getHeader().setFlag(Flags.QR);
+		
+		assertNull(DNSWireUtils.createErrorResponse(ByteBuffer.wrap(query.toWire()), Rcode.REFUSED));
+	}
+	
+	@Test
+	public void testCreateErrorResponse_truncatedRequest_assertNull() throws Exception
+	{
+		final Message query = Message.newQuery(Record.newRecord(Name.fromString("example.domain.com."), Type.A, DClass.IN));
+		final byte[] wire = query.toWire();
+		
+		assertNull(DNSWireUtils.createErrorResponse(ByteBuffer.wrap(wire, 0, wire.length - 3), Rcode.REFUSED));
+		assertNull(DNSWireUtils.createErrorResponse(ByteBuffer.wrap(wire, 0, 6), Rcode.REFUSED));
+	}
+}
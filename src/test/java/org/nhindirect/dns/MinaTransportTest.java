@@ -0,0 +1,178 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.mina.util.AvailablePortFinder;
+import org.junit.jupiter.api.Test;
+import org.nhindirect.dns.util.DNSTestUtils;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+
+public class MinaTransportTest
+{
+	private static void writeQuery(DataOutputStream out, int id, String name) throws Exception
+	{
+		final Message query = Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+		query.getHeader().setID(id);
+		final byte[] wire = query.toWire();
+		out.writeShort(wire.length);
+		out.write(wire);
+	}
+	
+	private static Message readResponse(DataInputStream in) throws Exception
+	{
+		final byte[] wire = new byte[in.readUnsignedShort()];
+		in.readFully(wire);
+		return new Message(wire);
+	}
+	
+	private static DNSServerSettings createSettings()
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setBindAddress("127.0.0.1");
+		settings.setPort(AvailablePortFinder.getNextAvailable(1024));
+		settings.setTransport(MinaDNSTransportProvider.NAME);
+		return settings;
+	}
+	
+	@Test
+	public void testGetProvider_assertBuiltInProviders() throws Exception
+	{
+		assertTrue(DNSTransportProviders.getProvider(null) instanceof DefaultDNSTransportProvider);
+		assertTrue(DNSTransportProviders.getProvider("default") instanceof DefaultDNSTransportProvider);
+		assertTrue(DNSTransportProviders.getProvider("MINA") instanceof MinaDNSTransportProvider);
+		assertThrows(DNSException.class, () -> DNSTransportProviders.getProvider("bogus"));
+	}
+	
+	@Test
+	public void testQuery_UDPAndTCP_assertAnswered() throws Exception
+	{
+		final DNSServerSettings settings = createSettings();
+		
+		final DNSStore store = DNSTestUtils.createStore();
+		final DNSResponderUDP udpResponder = new DNSResponderUDP(settings, store);
+		final DNSResponderTCP tcpResponder = new DNSResponderTCP(settings, store);
+		udpResponder.start();
+		tcpResponder.start();
+		try
+		{
+			for (int i = 0; i < 5; ++i)
+				assertEquals(Rcode.NOERROR, DNSTestUtils.query(settings.getPort(), DNSTestUtils.TEST_RECORD_NAME).getRcode());
+			
+			assertEquals(Rcode.NXDOMAIN, DNSTestUtils.query(settings.getPort(), "missing.domain.com.").getRcode());
+			
+			final SimpleResolver resolver = new SimpleResolver("127.0.0.1");
+			resolver.setPort(settings.getPort());
+			resolver.setTCP(true);
+			resolver.setTimeout(Duration.ofSeconds(5));
+			final Message response = resolver.send(Message.newQuery(Record.newRecord(Name.fromString(DNSTestUtils.TEST_RECORD_NAME), Type.A, DClass.IN)));
+			assertEquals(Rcode.NOERROR, response.getRcode());
+		}
+		finally
+		{
+			udpResponder.stop();
+			tcpResponder.stop();
+		}
+	}
+	
+	@Test
+	public void testTCP_persistentConnection_pipelinedQueries_assertAllAnswered() throws Exception
+	{
+		final DNSServerSettings settings = createSettings();
+		settings.setTCPPersistentConnections(true);
+		settings.setTCPMaxPipelinedRequests(2);
+		
+		final MinaTCPServer server = new MinaTCPServer(settings, DNSTestUtils.createResponder(settings), "127.0.0.1");
+		server.start();
+		try (Socket s = new Socket("127.0.0.1", settings.getPort()))
+		{
+			s.setSoTimeout(5000);
+			final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			final DataInputStream in = new DataInputStream(s.getInputStream());
+			
+			for (int i = 1; i <= 5; ++i)
+				writeQuery(out, i, DNSTestUtils.TEST_RECORD_NAME);
+			
+			final Set<Integer> ids = new HashSet<>();
+			for (int i = 1; i <= 5; ++i)
+			{
+				final Message response = readResponse(in);
+				assertEquals(Rcode.NOERROR, response.getRcode());
+				ids.add(response.getHeader().getID());
+			}
+			assertEquals(5, ids.size());
+			assertEquals(5L, server.getResourceRequestCount().longValue());
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	@Test
+	public void testTCP_nonPersistentConnection_assertClosedAfterResponse() throws Exception
+	{
+		final DNSServerSettings settings = createSettings();
+		
+		final MinaTCPServer server = new MinaTCPServer(settings, DNSTestUtils.createResponder(settings), "127.0.0.1");
+		server.start();
+		try (Socket s = new Socket("127.0.0.1", settings.getPort()))
+		{
+			s.setSoTimeout(5000);
+			final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			final DataInputStream in = new DataInputStream(s.getInputStream());
+			
+			writeQuery(out, 1, DNSTestUtils.TEST_RECORD_NAME);
+			assertEquals(1, readResponse(in).getHeader().getID());
+			
+			assertTrue(in.read() < 0);
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	@Test
+	public void testTCP_nonPersistentConnection_maxConnections_assertExtraConnectionClosed() throws Exception
+	{
+		final DNSServerSettings settings = createSettings();
+		settings.setTCPMaxConnections(1);
+		
+		final MinaTCPServer server = new MinaTCPServer(settings, DNSTestUtils.createResponder(settings), "127.0.0.1");
+		server.start();
+		try (Socket s = new Socket("127.0.0.1", settings.getPort()))
+		{
+			// the first connection holds the only slot until it sends its query
+			try (Socket extra = new Socket("127.0.0.1", settings.getPort()))
+			{
+				extra.setSoTimeout(5000);
+				assertTrue(extra.getInputStream().read() < 0);
+			}
+			
+			s.setSoTimeout(5000);
+			final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			final DataInputStream in = new DataInputStream(s.getInputStream());
+			writeQuery(out, 1, DNSTestUtils.TEST_RECORD_NAME);
+			assertEquals(1, readResponse(in).getHeader().getID());
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.util.AvailablePortFinder;
+import org.junit.jupiter.api.Test;
+import org.nhindirect.dns.util.DNSTestUtils;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class NIOUDPServerTest
+{
+	@Test
+	public void testQuery_multipleReceivers_assertAnswered() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setBindAddress("127.0.0.1");
+		settings.setPort(AvailablePortFinder.getNextAvailable(1024));
+		settings.setNIOUDPEnabled(true);
+		settings.setUDPReceiverThreads(4);
+		
+		final NIOUDPServer server = new NIOUDPServer(settings, DNSTestUtils.createResponder(settings));
+		server.start();
+		try
+		{
+			for (int i = 0; i < 20; ++i)
+			{
+				final Message response = DNSTestUtils.query(settings.getPort(), DNSTestUtils.TEST_RECORD_NAME);
+				assertNotNull(response);
+				assertEquals(Rcode.NOERROR, response.getRcode());
+				assertEquals(1, response.getSection(Section.ANSWER).size());
+			}
+			
+			final Message response = DNSTestUtils.query(settings.getPort(), "missing.domain.com.");
+			assertEquals(Rcode.NXDOMAIN, response.getRcode());
+			
+			assertEquals(21L, server.getResourceRequestCount().longValue());
+			assertEquals(21L, server.getSuccessfulRequestCount().longValue());
+			assertEquals(1L, server.getMissedRequestCount().longValue());
+			
+			// receive buffers are recycled once the responses have been sent
+			assertTrue(server.getReceiveBufferPoolHitCount() > 0);
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	@Test
+	public void testQuery_virtualThreadExecutionMode_assertAnswered() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setBindAddress("127.0.0.1");
+		settings.setPort(AvailablePortFinder.getNextAvailable(1024));
+		settings.setNIOUDPEnabled(true);
+		settings.setUDPReceiverThreads(2);
+		// falls back to the thread pool on runtimes without virtual threads
+		settings.setRequestExecutionMode(DNSServerSettings.RequestExecutionMode.VIRTUAL_THREAD);
+		
+		final NIOUDPServer server = new NIOUDPServer(settings, DNSTestUtils.createResponder(settings));
+		server.start();
+		try
+		{
+			for (int i = 0; i < 5; ++i)
+			{
+				final Message response = DNSTestUtils.query(settings.getPort(), DNSTestUtils.TEST_RECORD_NAME);
+				assertEquals(Rcode.NOERROR, response.getRcode());
+			}
+			assertEquals(0L, server.getRejectedRequestCount().longValue());
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	@Test
+	public void testQuery_queueFull_assertShedResponse() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setBindAddress("127.0.0.1");
+		settings.setPort(AvailablePortFinder.getNextAvailable(1024));
+		settings.setNIOUDPEnabled(true);
+		settings.setUDPReceiverThreads(1);
+		settings.setMaxActiveRequests(1);
+		settings.setMaxQueuedRequests(1);
+		// keep the latency controller out of the way
+		settings.setQueueTargetLatency(60000);
+		settings.setQueueLatencyInterval(60000);
+		
+		final CountDownLatch release = new CountDownLatch(1);
+		final DNSStore store = DNSTestUtils.createStore();
+		final DNSStore blockingStore = (request) ->
+		{
+			try
+			{
+				release.await(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {/* no-op */}
+			return store.get(request);
+		};
+		
+		final NIOUDPServer server = new NIOUDPServer(settings, DNSTestUtils.createResponder(settings, blockingStore));
+		server.start();
+		try (DatagramSocket client = new DatagramSocket())
+		{
+			client.setSoTimeout(5000);
+			
+			// one request runs, one request waits in the queue, and the last one is shed
+			for (int id = 1; id <= 3; ++id)
+			{
+				final Message query = Message.newQuery(Record.newRecord(Name.fromString(DNSTestUtils.TEST_RECORD_NAME), Type.A, DClass.IN));
+				query.getHeader().setID(id);
+				final byte[] wire = query.toWire();
+				client.send(new DatagramPacket(wire, wire.length, InetAddress.getByName("127.0.0.1"), settings.getPort()));
+				Thread.sleep(100);
+			}
+			
+			final DatagramPacket inPacket = new DatagramPacket(new byte[512], 512);
+			client.receive(inPacket);
+			final Message shed = new Message(Arrays.copyOf(inPacket.getData(), inPacket.getLength()));
+			assertEquals(3, shed.getHeader().getID());
+			assertEquals(Rcode.REFUSED, shed.getRcode());
+			assertEquals(1L, server.getQueueFullShedCount().longValue());
+			assertEquals(1L, server.getRejectedRequestCount().longValue());
+			
+			release.countDown();
+			
+			for (int i = 0; i < 2; ++i)
+			{
+				client.receive(inPacket);
+				final Message response = new Message(Arrays.copyOf(inPacket.getData(), inPacket.getLength()));
+				assertEquals(Rcode.NOERROR, response.getRcode());
+			}
+		}
+		finally
+		{
+			release.countDown();
+			server.stop();
+		}
+	}
+	
+	@Test
+	public void testQuery_multipleBindAddresses_assertAnsweredOnEach() throws Exception
+	{
+		assumeTrue(isIPv6LoopbackAvailable(), "IPv6 loopback is not available");
+		
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setBindAddress("127.0.0.1, ::1");
+		settings.setPort(AvailablePortFinder.getNextAvailable(1024));
+		settings.setNIOUDPEnabled(true);
+		settings.setUDPReceiverThreads(1);
+		
+		final DNSResponderUDP responder = new DNSResponderUDP(settings, DNSTestUtils.createStore());
+		responder.start();
+		try
+		{
+			assertEquals(Rcode.NOERROR, DNSTestUtils.query("127.0.0.1", settings.getPort(), DNSTestUtils.TEST_RECORD_NAME).getRcode());
+			assertEquals(Rcode.NOERROR, DNSTestUtils.query("::1", settings.getPort(), DNSTestUtils.TEST_RECORD_NAME).getRcode());
+		}
+		finally
+		{
+			responder.stop();
+		}
+	}
+	
+	private static boolean isIPv6LoopbackAvailable()
+	{
+		try (DatagramSocket sock = new DatagramSocket(new InetSocketAddress(InetAddress.getByName("::1"), 0)))
+		{
+			return true;
+		}
+		catch (Exception e)
+		{
+			return false;
+		}
+	}
+	
+	@Test
+	public void testQuery_batchReceive_assertAllAnswered() throws Exception
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setBindAddress("127.0.0.1");
+		settings.setPort(AvailablePortFinder.getNextAvailable(1024));
+		settings.setNIOUDPEnabled(true);
+		settings.setUDPReceiverThreads(2);
+		settings.setUDPReceiveBatchSize(8);
+		
+		final NIOUDPServer server = new NIOUDPServer(settings, DNSTestUtils.createResponder(settings));
+		server.start();
+		try (DatagramSocket client = new DatagramSocket())
+		{
+			client.setSoTimeout(5000);
+			
+			// send a burst without waiting for responses
+			for (int id = 1; id <= 20; ++id)
+			{
+				final Message query = Message.newQuery(Record.newRecord(Name.fromString(DNSTestUtils.TEST_RECORD_NAME), Type.A, DClass.IN));
+				query.getHeader().setID(id);
+				final byte[] wire = query.toWire();
+				client.send(new DatagramPacket(wire, wire.length, InetAddress.getByName("127.0.0.1"), settings.getPort()));
+			}
+			
+			final Set<Integer> ids = new HashSet<>();
+			final DatagramPacket inPacket = new DatagramPacket(new byte[512], 512);
+			for (int i = 0; i < 20; ++i)
+			{
+				client.receive(inPacket);
+				final Message response = new Message(Arrays.copyOf(inPacket.getData(), inPacket.getLength()));
+				assertEquals(Rcode.NOERROR, response.getRcode());
+				ids.add(response.getHeader().getID());
+			}
+			assertEquals(20, ids.size());
+			
+			assertEquals(20L, server.getResourceRequestCount().longValue());
+			assertTrue(server.getReceiveBatchCount() >= 1);
+			assertTrue(server.getReceiveBatchCount() <= 20);
+			assertTrue(!server.getReceiveBatchSizeDistribution().isEmpty());
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.security.cert.X509Certificate;
+
+import org.junit.jupiter.api.Test;
+import org.nhindirect.common.crypto.CryptoExtensions;
+import org.nhindirect.config.model.Certificate;
+import org.nhindirect.dns.util.DNSRecordUtil;
+import org.xbill.DNS.RRset;
+
+public class RESTServiceDNSStore_certCacheTest extends SpringBaseTest
+{
+	@Test
+	public void testProcessCERTRecordRequest_cacheEnabled_assertServiceCalledOnce() throws Exception
+	{
+		final X509Certificate xCert = DNSRecordUtil.loadCertificate("gm2552.der");
+		final Certificate cert = new Certificate();
+		cert.setOwner(CryptoExtensions.getSubjectAddress(xCert));
+		cert.setData(xCert.getEncoded());
+		certService.addCertificate(cert);
+		
+		final CountingCertificateService countingService = new CountingCertificateService(certService);
+		final RESTServiceDNSStore store = new RESTServiceDNSStore(dnsService, countingService, certPolService, "");
+		store.setCertCache(100, 300);
+		
+		final RRset first = store.processCERTRecordRequest("gm2552.securehealthemail.com.");
+		assertNotNull(first);
+		assertEquals(1, first.size());
+		final int lookups = countingService.getOwnerLookupCount();
+		
+		// case differences share the cached record set
+		assertSame(first, store.processCERTRecordRequest("GM2552.securehealthemail.com."));
+		assertEquals(lookups, countingService.getOwnerLookupCount());
+		assertEquals(1L, store.getCertCache().getHitCount());
+		
+		// invalidating the owner goes back to the config service
+		store.getCertCache().invalidate("gm2552@securehealthemail.com");
+		assertNotNull(store.processCERTRecordRequest("gm2552.securehealthemail.com."));
+		assertEquals(lookups * 2, countingService.getOwnerLookupCount());
+	}
+}
@@ -0,0 +1,100 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.nhindirect.common.crypto.CryptoExtensions;
+import org.nhindirect.config.model.Certificate;
+import org.nhindirect.dns.util.DNSRecordUtil;
+import org.xbill.DNS.RRset;
+
+public class RESTServiceDNSStore_ownerIndexTest extends SpringBaseTest
+{
+	@Test
+	public void testProcessCERTRecordRequest_indexEnabled_assertSingleServiceCall() throws Exception
+	{
+		final X509Certificate xCert = DNSRecordUtil.loadCertificate("gm2552.der");
+		final Certificate cert = new Certificate();
+		cert.setOwner(CryptoExtensions.getSubjectAddress(xCert));
+		cert.setData(xCert.getEncoded());
+		certService.addCertificate(cert);
+		
+		final CountingCertificateService countingService = new CountingCertificateService(certService);
+		final RESTServiceDNSStore store = new RESTServiceDNSStore(dnsService, countingService, certPolService, "");
+		try
+		{
+			store.startOwnerIndex(0);
+			assertNotNull(store.getOwnerIndex());
+			
+			final RRset rrset = store.processCERTRecordRequest("gm2552.securehealthemail.com.");
+			assertNotNull(rrset);
+			assertEquals(1, rrset.size());
+			assertEquals(1, countingService.getOwnerLookupCount());
+			
+			// names with no certificates never reach the certificate service
+			assertNull(store.processCERTRecordRequest("nobody.securehealthemail.com."));
+			assertEquals(1, countingService.getOwnerLookupCount());
+		}
+		finally
+		{
+			store.shutdown();
+		}
+	}
+	
+	@Test
+	public void testProcessCERTRecordRequest_parallelOwnerLookups_assertCertFound() throws Exception
+	{
+		final X509Certificate xCert = DNSRecordUtil.loadCertificate("gm2552.der");
+		final Certificate cert = new Certificate();
+		cert.setOwner(CryptoExtensions.getSubjectAddress(xCert));
+		cert.setData(xCert.getEncoded());
+		certService.addCertificate(cert);
+		
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try
+		{
+			final CountingCertificateService countingService = new CountingCertificateService(certService);
+			final RESTServiceDNSStore store = new RESTServiceDNSStore(dnsService, countingService, certPolService, "");
+			store.setOwnerLookupExecutor(executor, 2);
+			
+			final RRset rrset = store.processCERTRecordRequest("gm2552.securehealthemail.com.");
+			assertNotNull(rrset);
+			assertEquals(1, rrset.size());
+			
+			// every candidate of a name with no certificates is tried
+			assertNull(store.processCERTRecordRequest("nobody.at.securehealthemail.com."));
+			assertTrue(countingService.getOwnerLookupCount() >= 5);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testGetOwner_collidingOwners_assertProbeOrderPreferred() throws Exception
+	{
+		final Certificate domainCert = new Certificate();
+		domainCert.setOwner("a.b.com");
+		final Certificate laterAt = new Certificate();
+		laterAt.setOwner("a.b@com");
+		final Certificate earlierAt = new Certificate();
+		earlierAt.setOwner("a@b.com");
+		
+		DNSCertOwnerIndex index = new DNSCertOwnerIndex(Arrays.asList(laterAt, earlierAt));
+		assertEquals("a@b.com", index.getOwner("A.B.COM."));
+		
+		index = new DNSCertOwnerIndex(Arrays.asList(laterAt, earlierAt, domainCert));
+		assertEquals("a.b.com", index.getOwner("a.b.com"));
+		assertEquals(1, index.getSize());
+		assertNull(index.getOwner("c.b.com"));
+	}
+}
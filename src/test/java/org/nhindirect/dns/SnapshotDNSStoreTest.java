@@ -0,0 +1,219 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nhind.config.rest.CertificateService;
+import org.nhindirect.common.crypto.CryptoExtensions;
+import org.nhindirect.config.model.Certificate;
+import org.nhindirect.dns.util.DNSRecordUtil;
+import org.xbill.DNS.CERTRecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.Type;
+
+public class SnapshotDNSStoreTest extends SpringBaseTest
+{
+	private static Message createQuery(String name, int type) throws Exception
+	{
+		return Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+	}
+	
+	@Test
+	public void testGet_answeredFromSnapshot_assertChangesVisibleAfterRefresh() throws Exception
+	{
+		dnsService.addDNSRecord(DNSRecordUtil.createARecord("example.domain.com", "127.0.0.1"));
+		dnsService.addDNSRecord(DNSRecordUtil.createSOARecord("domain.com", "nsserver.domain.com", "master.domain.com"));
+		
+		final X509Certificate xCert = DNSRecordUtil.loadCertificate("gm2552.der");
+		final Certificate cert = new Certificate();
+		cert.setOwner(CryptoExtensions.getSubjectAddress(xCert));
+		cert.setData(xCert.getEncoded());
+		certService.addCertificate(cert);
+		
+		final SnapshotDNSStore store = new SnapshotDNSStore(dnsService, certService, certPolService, "", 0);
+		store.refresh();
+		assertTrue(store.getSnapshotTime() > 0);
+		
+		Message response = store.get(createQuery("Example.Domain.com.", Type.A));
+		assertEquals(1, response.getSection(Section.ANSWER).size());
+		assertEquals(Type.SOA, response.getSection(Section.AUTHORITY).get(0).getType());
+		
+		// the owner is stored with an "@"
+		response = store.get(createQuery("gm2552.securehealthemail.com.", Type.CERT));
+		assertEquals(1, response.getSection(Section.ANSWER).size());
+		assertTrue(response.getSection(Section.ANSWER).get(0) instanceof CERTRecord);
+		
+		// the owner index comes from the snapshot rather than a separate certificate download
+		assertEquals("gm2552@securehealthemail.com", store.getOwnerIndex().getOwner("gm2552.securehealthemail.com."));
+		
+		// names in the snapshot without records of the queried type are NODATA, including certificate owners
+		response = store.get(createQuery("example.domain.com.", Type.TXT));
+		assertEquals(Rcode.NOERROR, response.getRcode());
+		assertEquals(0, response.getSection(Section.ANSWER).size());
+		assertTrue(store.isExistingName(Name.fromString("gm2552.securehealthemail.com."), null));
+		assertTrue(store.isExistingName(Name.fromString("securehealthemail.com."), null));
+		assertFalse(store.isExistingName(Name.fromString("missing.securehealthemail.com."), null));
+		
+		// new records are not visible until the next refresh
+		dnsService.addDNSRecord(DNSRecordUtil.createARecord("example2.domain.com", "127.0.0.2"));
+		response = store.get(createQuery("example2.domain.com.", Type.A));
+		assertEquals(Rcode.NXDOMAIN, response.getRcode());
+		
+		store.refresh();
+		response = store.get(createQuery("example2.domain.com.", Type.A));
+		assertEquals(Rcode.NOERROR, response.getRcode());
+		assertEquals(1, response.getSection(Section.ANSWER).size());
+		
+		// names outside of any zone have no answer
+		assertNull(store.get(createQuery("missing.other.com.", Type.A)));
+	}
+	
+	@Test
+	public void testStart_configServiceUnavailable_assertAnsweredFromSnapshotFile(@TempDir File tempDir) throws Exception
+	{
+		dnsService.addDNSRecord(DNSRecordUtil.createARecord("example.domain.com", "127.0.0.1"));
+		dnsService.addDNSRecord(DNSRecordUtil.createSOARecord("domain.com", "nsserver.domain.com", "master.domain.com"));
+		
+		final X509Certificate xCert = DNSRecordUtil.loadCertificate("gm2552.der");
+		final Certificate cert = new Certificate();
+		cert.setOwner(CryptoExtensions.getSubjectAddress(xCert));
+		cert.setData(xCert.getEncoded());
+		certService.addCertificate(cert);
+		
+		final File file = new File(tempDir, "dns.snapshot");
+		final SnapshotDNSStore store = new SnapshotDNSStore(dnsService, certService, certPolService, "", 0);
+		store.setSnapshotFile(new DNSSnapshotFile(file));
+		store.refresh();
+		assertTrue(file.exists());
+		
+		// unchanged contents are not written again
+		final DNSSnapshotFile snapshotFile = new DNSSnapshotFile(file);
+		final DNSSnapshotFile.Contents contents = snapshotFile.read();
+		assertEquals(2, contents.getRecords().size());
+		assertFalse(snapshotFile.write(contents.getRecords(), contents.getCerts()));
+		
+		// a restarted server whose config service is down answers from the file
+		final CertificateService failingService = new CountingCertificateService(certService)
+		{
+			@Override
+			public Collection<Certificate> getAllCertificates()
+			{
+				throw new IllegalStateException("config service unavailable");
+			}
+		};
+		final SnapshotDNSStore restarted = new SnapshotDNSStore(dnsService, failingService, certPolService, "", 0);
+		restarted.setSnapshotFile(new DNSSnapshotFile(file));
+		try
+		{
+			restarted.start();
+			
+			Message response = restarted.get(createQuery("example.domain.com.", Type.A));
+			assertEquals(1, response.getSection(Section.ANSWER).size());
+			assertEquals(Type.SOA, response.getSection(Section.AUTHORITY).get(0).getType());
+			
+			response = restarted.get(createQuery("gm2552.securehealthemail.com.", Type.CERT));
+			assertEquals(1, response.getSection(Section.ANSWER).size());
+		}
+		finally
+		{
+			restarted.shutdown();
+		}
+	}
+	
+	@Test
+	public void testStart_configServiceBlocked_assertStartReturnsAndAnswersFromSnapshotFile(@TempDir File tempDir) throws Exception
+	{
+		dnsService.addDNSRecord(DNSRecordUtil.createARecord("example.domain.com", "127.0.0.1"));
+		dnsService.addDNSRecord(DNSRecordUtil.createSOARecord("domain.com", "nsserver.domain.com", "master.domain.com"));
+		
+		final File file = new File(tempDir, "dns.snapshot");
+		final SnapshotDNSStore store = new SnapshotDNSStore(dnsService, certService, certPolService, "", 0);
+		store.setSnapshotFile(new DNSSnapshotFile(file));
+		store.refresh();
+		
+		// the config service hangs until the test releases it
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch called = new CountDownLatch(1);
+		final CertificateService blockingService = new CountingCertificateService(certService)
+		{
+			@Override
+			public Collection<Certificate> getAllCertificates()
+			{
+				called.countDown();
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				throw new IllegalStateException("config service unavailable");
+			}
+		};
+		final SnapshotDNSStore restarted = new SnapshotDNSStore(dnsService, blockingService, certPolService, "", 0);
+		restarted.setSnapshotFile(new DNSSnapshotFile(file));
+		try
+		{
+			assertTimeoutPreemptively(Duration.ofSeconds(5), restarted::start);
+			
+			// the first refresh is running in the background while the file answers queries
+			assertTrue(called.await(5, TimeUnit.SECONDS));
+			final Message response = restarted.get(createQuery("example.domain.com.", Type.A));
+			assertEquals(1, response.getSection(Section.ANSWER).size());
+		}
+		finally
+		{
+			release.countDown();
+			restarted.shutdown();
+		}
+	}
+	
+	@Test
+	public void testWrite_recordLongerThan65535Bytes_assertReadBack(@TempDir File tempDir) throws Exception
+	{
+		// a long owner name plus nearly 64K of rdata puts the record's wire format over 65535 bytes
+		final StringBuilder label = new StringBuilder();
+		for (int i = 0; i < 63; ++i)
+			label.append('a');
+		final Name name = Name.fromString(label + "." + label + "." + label + ".domain.com.");
+		
+		final List<String> strings = new ArrayList<>();
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 255; ++i)
+			text.append('t');
+		for (int i = 0; i < 255; ++i)
+			strings.add(text.toString());
+		strings.add(text.substring(0, 200));
+		final TXTRecord big = new TXTRecord(name, DClass.IN, 3600, strings);
+		assertTrue(big.toWire(Section.ANSWER).length > 65535);
+		
+		final DNSSnapshotFile file = new DNSSnapshotFile(new File(tempDir, "dns.snapshot"));
+		assertTrue(file.write(Collections.singletonList(big), Collections.emptyMap()));
+		
+		final DNSSnapshotFile.Contents contents = new DNSSnapshotFile(file.getFile()).read();
+		assertEquals(1, contents.getRecords().size());
+		assertEquals(big, contents.getRecords().get(0));
+	}
+}
@@ -0,0 +1,173 @@
+package org.nhindirect.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.mina.util.AvailablePortFinder;
+import org.junit.jupiter.api.Test;
+import org.nhindirect.dns.util.DNSTestUtils;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+public class TCPServerTest
+{
+	private static void writeQuery(DataOutputStream out, int id, String name) throws Exception
+	{
+		final Message query = Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+		query.getHeader().setID(id);
+		final byte[] wire = query.toWire();
+		out.writeShort(wire.length);
+		out.write(wire);
+	}
+	
+	private static Message readResponse(DataInputStream in) throws Exception
+	{
+		final byte[] wire = new byte[in.readUnsignedShort()];
+		in.readFully(wire);
+		return new Message(wire);
+	}
+	
+	private static DNSServerSettings createSettings()
+	{
+		final DNSServerSettings settings = new DNSServerSettings();
+		settings.setBindAddress("127.0.0.1");
+		settings.setPort(AvailablePortFinder.getNextAvailable(1024));
+		settings.setTCPPersistentConnections(true);
+		return settings;
+	}
+	
+	@Test
+	public void testPersistentConnection_pipelinedQueries_assertAllAnswered() throws Exception
+	{
+		final DNSServerSettings settings = createSettings();
+		
+		final TCPServer server = new TCPServer(settings, DNSTestUtils.createResponder(settings));
+		server.start();
+		try (Socket s = new Socket("127.0.0.1", settings.getPort()))
+		{
+			final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			final DataInputStream in = new DataInputStream(s.getInputStream());
+			
+			for (int i = 1; i <= 3; ++i)
+				writeQuery(out, i, DNSTestUtils.TEST_RECORD_NAME);
+			
+			final Set<Integer> ids = new HashSet<>();
+			for (int i = 1; i <= 3; ++i)
+			{
+				final Message response = readResponse(in);
+				assertEquals(Rcode.NOERROR, response.getRcode());
+				ids.add(response.getHeader().getID());
+			}
+			assertEquals(3, ids.size());
+			
+			// the connection is still open for more queries
+			writeQuery(out, 4, "missing.domain.com.");
+			final Message response = readResponse(in);
+			assertEquals(4, response.getHeader().getID());
+			assertEquals(Rcode.NXDOMAIN, response.getRcode());
+			
+			assertEquals(4L, server.getResourceRequestCount().longValue());
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	@Test
+	public void testPersistentConnection_idle_assertClosed() throws Exception
+	{
+		final DNSServerSettings settings = createSettings();
+		settings.setTCPIdleTimeout(500);
+		
+		final TCPServer server = new TCPServer(settings, DNSTestUtils.createResponder(settings));
+		server.start();
+		try (Socket s = new Socket("127.0.0.1", settings.getPort()))
+		{
+			s.setSoTimeout(5000);
+			final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			final DataInputStream in = new DataInputStream(s.getInputStream());
+			
+			writeQuery(out, 1, DNSTestUtils.TEST_RECORD_NAME);
+			assertEquals(1, readResponse(in).getHeader().getID());
+			
+			// server closes the connection after the idle timeout
+			assertTrue(in.read() < 0);
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	@Test
+	public void testPersistentConnection_maxRequestsPerConnection_assertClosed() throws Exception
+	{
+		final DNSServerSettings settings = createSettings();
+		settings.setTCPMaxRequestsPerConnection(2);
+		
+		final TCPServer server = new TCPServer(settings, DNSTestUtils.createResponder(settings));
+		server.start();
+		try (Socket s = new Socket("127.0.0.1", settings.getPort()))
+		{
+			s.setSoTimeout(5000);
+			final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			final DataInputStream in = new DataInputStream(s.getInputStream());
+			
+			writeQuery(out, 1, DNSTestUtils.TEST_RECORD_NAME);
+			writeQuery(out, 2, DNSTestUtils.TEST_RECORD_NAME);
+			readResponse(in);
+			readResponse(in);
+			
+			assertTrue(in.read() < 0);
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	@Test
+	public void testPersistentConnection_maxConnections_assertExtraConnectionClosed() throws Exception
+	{
+		final DNSServerSettings settings = createSettings();
+		settings.setTCPMaxConnections(1);
+		
+		final TCPServer server = new TCPServer(settings, DNSTestUtils.createResponder(settings));
+		server.start();
+		try (Socket s = new Socket("127.0.0.1", settings.getPort()))
+		{
+			s.setSoTimeout(5000);
+			final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			final DataInputStream in = new DataInputStream(s.getInputStream());
+			
+			writeQuery(out, 1, DNSTestUtils.TEST_RECORD_NAME);
+			assertEquals(1, readResponse(in).getHeader().getID());
+			
+			// the only connection slot is taken, so the server closes the next connection right away
+			try (Socket extra = new Socket("127.0.0.1", settings.getPort()))
+			{
+				extra.setSoTimeout(5000);
+				assertTrue(extra.getInputStream().read() < 0);
+			}
+			
+			// the open connection is unaffected
+			writeQuery(out, 2, DNSTestUtils.TEST_RECORD_NAME);
+			assertEquals(2, readResponse(in).getHeader().getID());
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.nhindirect.dns.util;
+
+import java.net.InetAddress;
+import java.time.Duration;
+
+import org.nhindirect.dns.DNSError;
+import org.nhindirect.dns.DNSException;
+import org.nhindirect.dns.DNSResponder;
+import org.nhindirect.dns.DNSServerSettings;
+import org.nhindirect.dns.DNSStore;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+
+public class DNSTestUtils
+{
+	public static final String TEST_RECORD_NAME = "example.domain.com.";
+	
+	/*
+	 * Store that only knows an A record for example.domain.com
+	 */
+	public static DNSStore createStore()
+	{
+		return (request) ->
+		{
+			final Record question = request.getQuestion();
+			if (!question.getName().toString().equals(TEST_RECORD_NAME))
+				return null;
+			
+			final Message response = new Message(request.getHeader().getID());
+			response.getHeader().setFlag(Flags.QR);
+			response.addRecord(question, Section.QUESTION);
+			try
+			{
+				response.addRecord(new ARecord(question.getName(), DClass.IN, 3600, InetAddress.getByName("127.0.0.1")), Section.ANSWER);
+			}
+			catch (Exception e)
+			{
+				throw new DNSException(DNSError.newError(Rcode.SERVFAIL), e.getMessage(), e);
+			}
+			return response;
+		};
+	}
+	
+	public static DNSResponder createResponder(DNSServerSettings settings) throws Exception
+	{
+		return createResponder(settings, createStore());
+	}
+	
+	public static DNSResponder createResponder(DNSServerSettings settings, DNSStore store) throws Exception
+	{
+		return new DNSResponder(settings, store)
+		{
+			@Override
+			public void start() {}
+
+			@Override
+			public void stop() {}
+		};
+	}
+	
+	public static Message query(int port, String name) throws Exception
+	{
+		return query("127.0.0.1", port, name);
+	}
+	
+	public static Message query(String host, int port, String name) throws Exception
+	{
+		final SimpleResolver resolver = new SimpleResolver(host);
+		resolver.setPort(port);
+		resolver.setTimeout(Duration.ofSeconds(5));
+		
+		return resolver.send(Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN)));
+	}
+}